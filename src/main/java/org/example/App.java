@@ -16,6 +16,10 @@ import java.util.UUID;
 public class App 
 {
     public static void main( String[] args ) throws Exception {
+        if (args.length > 0) {
+            BatchRunner.main(args);
+            return;
+        }
         TimeManager timeManager = new TimeManager(LocalDateTime.now());
         CentralBank centralBank = new CentralBank();
         boolean flag = true;
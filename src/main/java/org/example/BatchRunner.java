@@ -0,0 +1,672 @@
+package org.example;
+
+import org.example.entities.Bank;
+import org.example.entities.ICard;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.BatchRunnerException;
+import org.example.service.CentralBank;
+import org.example.service.TimeManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Пакетный (неинтерактивный) режим работы приложения.
+ * Читает файл сценария построчно через буферизированный поток и выполняет те же операции, что и меню App,
+ * но без консольного ввода. Подряд идущие однотипные операции группируются и выполняются одним проходом,
+ * а в конце печатается сводка по количеству операций и пропускной способности.
+ * <p>
+ * Формат строк сценария (разделитель - пробелы, строки с '#' в начале игнорируются):
+ * <pre>
+ * bank     title firstPercent secondPercent thirdPercent firstStepSum secondStepSum percentDebitCard creditLimit
+ *          commission untrustedUserLimit
+ * user     bank userAlias name surname balance [address [passportId]]
+ * credit   bank userAlias cardAlias balance
+ * debit    bank userAlias cardAlias balance
+ * deposit  bank userAlias cardAlias balance yyyy-mm-dd
+ * day      [count]
+ * month    [count]
+ * transfer fromCardAlias toCardAlias money
+ * cancel   cardAlias transactionNumber
+ * withdraw cardAlias money
+ * topup    cardAlias money
+ * </pre>
+ * Псевдонимы пользователей и карт задаются в самом сценарии, так как идентификаторы карт заранее неизвестны.
+ * Если тик дня прервался ошибкой, следующая операция day или month сначала завершает прерванный день
+ * с места остановки, а затем прокручивает свои дни.
+ * <p>
+ * Выполняемые операции можно записать в двоичную трассу (OperationTrace) и затем воспроизвести её без разбора
+ * текста на любом движке - центральном банке с другой реализацией индексов, шардирования или начислений.
+ * После воспроизведения печатаются время и контрольная сумма итогового состояния, по которым сравниваются
+ * скорость и корректность реализаций.
+ */
+public class BatchRunner {
+    private static final int MAX_GROUP_SIZE = 4096;
+
+    private final CentralBank centralBank;
+    private final TimeManager timeManager;
+    private final PrintStream out;
+    private final Map<String, User> users = new HashMap<>();
+    private final Map<String, ICard> cards = new HashMap<>();
+    private final long[] operationCounts = new long[Operation.values().length];
+    private final String[] groupLines = new String[MAX_GROUP_SIZE];
+    private final long[] groupLineNumbers = new long[MAX_GROUP_SIZE];
+    private final Tokenizer tokenizer = new Tokenizer();
+    private OperationTrace.Writer recorder;
+    private Operation groupOperation;
+    private int groupSize;
+    private long groups;
+    private long failures;
+
+    /**
+     * Операции, поддерживаемые сценарием.
+     */
+    enum Operation {
+        BANK("bank"),
+        USER("user"),
+        CREDIT("credit"),
+        DEBIT("debit"),
+        DEPOSIT("deposit"),
+        DAY("day"),
+        MONTH("month"),
+        TRANSFER("transfer"),
+        CANCEL("cancel"),
+        WITHDRAW("withdraw"),
+        TOP_UP("topup");
+
+        private final String command;
+
+        Operation(String command) {
+            this.command = command;
+        }
+
+        static Operation of(String line, int start, int end) {
+            for (Operation operation : values()) {
+                if (operation.command.length() == end - start
+                        && line.regionMatches(start, operation.command, 0, end - start)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Создает обработчик сценариев, работающий поверх указанных центрального банка и менеджера времени.
+     *
+     * @param centralBank центральный банк, над которым выполняются операции
+     * @param timeManager менеджер времени, которому передаются операции day и month
+     * @param out         поток для вывода ошибок и итоговой сводки
+     */
+    public BatchRunner(CentralBank centralBank, TimeManager timeManager, PrintStream out) {
+        this.centralBank = centralBank;
+        this.timeManager = timeManager;
+        this.out = out;
+    }
+
+    /**
+     * Точка входа для запуска сценария из командной строки.
+     * <pre>
+     * BatchRunner script [--record trace]   выполнить сценарий, при необходимости записав трассу
+     * BatchRunner --replay trace            воспроизвести трассу
+     * </pre>
+     *
+     * @param args путь к файлу сценария и ключи
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args.length == 2 || args.length > 3) {
+            System.out.println("Usage: BatchRunner <script> [--record <trace>] | BatchRunner --replay <trace>");
+            return;
+        }
+        if ("--replay".equals(args[0])) {
+            try (OperationTrace.Reader trace = new OperationTrace.Reader(Files.newInputStream(Paths.get(args[1])))) {
+                new BatchRunner(new CentralBank(), new TimeManager(trace.getStart()), System.out).replay(trace);
+            }
+            return;
+        }
+        BatchRunner runner = new BatchRunner(new CentralBank(), new TimeManager(LocalDateTime.now()), System.out);
+        if (args.length == 3) {
+            try (OutputStream trace = Files.newOutputStream(Paths.get(args[2]))) {
+                runner.startRecording(trace);
+                runner.run(args[0]);
+                runner.stopRecording();
+            }
+            return;
+        }
+        runner.run(args[0]);
+    }
+
+    /**
+     * Начинает запись выполняемых операций в двоичную трассу.
+     * Записываются текущее время менеджера времени и все операции с разобранными аргументами, в том числе
+     * завершившиеся ошибкой, чтобы воспроизведение с того же времени повторило их с тем же результатом.
+     *
+     * @param target поток для трассы
+     * @throws IOException если заголовок трассы не удалось записать
+     */
+    public void startRecording(OutputStream target) throws IOException {
+        recorder = new OperationTrace.Writer(target, timeManager.getTimeStamp());
+    }
+
+    /**
+     * Завершает запись трассы и сбрасывает её в поток.
+     *
+     * @throws IOException если трассу не удалось записать
+     */
+    public void stopRecording() throws IOException {
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+    }
+
+    /**
+     * Воспроизводит трассу с полной скоростью и печатает время и контрольную сумму итогового состояния.
+     * Менеджер времени должен стоять на времени начала записи трассы.
+     *
+     * @param source поток с трассой
+     * @return контрольная сумма итогового состояния
+     * @throws BatchRunnerException если поток не является трассой или менеджер времени стоит не на времени
+     *                              начала записи
+     * @throws IOException          если трасса повреждена или не читается
+     */
+    public long replay(InputStream source) throws Exception {
+        try (OperationTrace.Reader trace = new OperationTrace.Reader(source)) {
+            if (!trace.getStart().equals(timeManager.getTimeStamp())) {
+                throw new BatchRunnerException("Trace starts at " + trace.getStart()
+                        + " but time manager is at " + timeManager.getTimeStamp());
+            }
+            return replay(trace);
+        }
+    }
+
+    private long replay(OperationTrace.Reader trace) throws Exception {
+        long started = System.nanoTime();
+        long records = 0;
+        Operation operation;
+        while ((operation = trace.operation()) != null) {
+            records++;
+            try {
+                operationCounts[operation.ordinal()] += execute(operation, trace);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                failures++;
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        long checksum = checksum();
+        printSummary(records, elapsed);
+        out.printf("  checksum %016x%n", checksum);
+        return checksum;
+    }
+
+    /**
+     * Считает контрольную сумму итогового состояния: текущей даты, банков, балансов и количества транзакций
+     * всех карт в порядке их открытия.
+     *
+     * @return контрольная сумма
+     */
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8];
+        update(crc, buffer, timeManager.getTimeStamp().toLocalDate().toEpochDay());
+        for (Bank bank : centralBank.getListBanks()) {
+            update(crc, buffer, bank.getTitle().hashCode());
+            for (ICard card : bank.getListCards()) {
+                update(crc, buffer, Double.doubleToLongBits(card.getBalance()));
+                update(crc, buffer, card.getTransactionHistory().size());
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, byte[] buffer, long value) {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (i * 8));
+        }
+        crc.update(buffer, 0, 8);
+    }
+
+    /**
+     * Выполняет сценарий из файла.
+     *
+     * @param path путь к файлу сценария
+     * @throws IOException если файл не удалось прочитать
+     */
+    public void run(String path) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)), StandardCharsets.UTF_8)) {
+            run(reader);
+        }
+    }
+
+    /**
+     * Выполняет сценарий из произвольного источника и печатает сводку.
+     *
+     * @param source источник строк сценария
+     * @throws IOException если источник не удалось прочитать
+     */
+    public void run(Reader source) throws IOException {
+        BufferedReader reader = new BufferedReader(source, 1 << 16);
+        long started = System.nanoTime();
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int start = skipSpaces(line, 0);
+            if (start == line.length() || line.charAt(start) == '#') {
+                continue;
+            }
+            int end = skipToken(line, start);
+            Operation operation = Operation.of(line, start, end);
+            if (operation == null) {
+                failures++;
+                out.printf("line %d: unknown command%n", lineNumber);
+                continue;
+            }
+            if (operation != groupOperation || groupSize == MAX_GROUP_SIZE) {
+                flushGroup();
+                groupOperation = operation;
+            }
+            groupLines[groupSize] = line;
+            groupLineNumbers[groupSize] = lineNumber;
+            groupSize++;
+        }
+        flushGroup();
+        printSummary(lineNumber, System.nanoTime() - started);
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getOperationCount() {
+        long total = 0;
+        for (long count : operationCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Выполняет накопленную группу однотипных операций.
+     * Операции day и month суммируются и прокручиваются одним циклом по дням на всю группу.
+     */
+    private void flushGroup() {
+        if (groupSize == 0) {
+            return;
+        }
+        groups++;
+        if (groupOperation == Operation.DAY || groupOperation == Operation.MONTH) {
+            flushTimeGroup();
+        } else {
+            for (int i = 0; i < groupSize; i++) {
+                try {
+                    tokenizer.reset(groupLines[i]);
+                    execute(groupOperation);
+                    operationCounts[groupOperation.ordinal()]++;
+                } catch (Exception e) {
+                    failures++;
+                    out.printf("line %d: %s%n", groupLineNumbers[i], e.getMessage());
+                }
+            }
+        }
+        for (int i = 0; i < groupSize; i++) {
+            groupLines[i] = null;
+        }
+        groupSize = 0;
+    }
+
+    private void flushTimeGroup() {
+        long days = 0;
+        for (int i = 0; i < groupSize; i++) {
+            try {
+                tokenizer.reset(groupLines[i]);
+                int count = tokenizer.size() > 1 ? tokenizer.intAt(1) : 1;
+                days += groupOperation == Operation.MONTH ? 30L * count : count;
+                operationCounts[groupOperation.ordinal()] += count;
+            } catch (Exception e) {
+                failures++;
+                out.printf("line %d: %s%n", groupLineNumbers[i], e.getMessage());
+            }
+        }
+        try {
+            advanceDays(days);
+        } catch (Exception e) {
+            failures++;
+            out.printf("line %d: %s%n", groupLineNumbers[groupSize - 1], e.getMessage());
+        }
+    }
+
+    private void execute(Operation operation) throws Exception {
+        Tokenizer t = tokenizer;
+        switch (operation) {
+            case BANK:
+                openBank(t.at(1), new double[]{t.doubleAt(2), t.doubleAt(3), t.doubleAt(4), t.doubleAt(5),
+                        t.doubleAt(6), t.doubleAt(7), t.doubleAt(8), t.doubleAt(9), t.doubleAt(10)});
+                break;
+            case USER:
+                addUser(t.at(1), t.at(2), t.at(3), t.at(4), t.doubleAt(5), t.size() > 6 ? t.at(6) : null,
+                        t.size() > 7, t.size() > 7 ? t.intAt(7) : 0);
+                break;
+            case CREDIT:
+            case DEBIT:
+                openCard(operation, t.at(1), t.at(2), t.at(3), t.doubleAt(4), null);
+                break;
+            case DEPOSIT:
+                openCard(operation, t.at(1), t.at(2), t.at(3), t.doubleAt(4), LocalDate.parse(t.at(5)));
+                break;
+            case TRANSFER:
+                transfer(t.at(1), t.at(2), t.doubleAt(3));
+                break;
+            case CANCEL:
+                cancel(t.at(1), t.intAt(2));
+                break;
+            case WITHDRAW:
+            case TOP_UP:
+                changeBalance(operation, t.at(1), t.doubleAt(2));
+                break;
+            default:
+                throw new BatchRunnerException("Unexpected operation " + operation);
+        }
+    }
+
+    /**
+     * Выполняет операцию, прочитанную из трассы.
+     *
+     * @param operation код операции
+     * @param trace     трасса, из которой читаются аргументы
+     * @return количество учтенных операций (для day - количество дней)
+     * @throws Exception если операция завершилась ошибкой
+     */
+    private long execute(Operation operation, OperationTrace.Reader trace) throws Exception {
+        switch (operation) {
+            case BANK:
+                String title = trace.string();
+                double[] parameters = new double[9];
+                for (int i = 0; i < parameters.length; i++) {
+                    parameters[i] = trace.number();
+                }
+                openBank(title, parameters);
+                return 1;
+            case USER:
+                String bank = trace.string();
+                String alias = trace.string();
+                String name = trace.string();
+                String surname = trace.string();
+                double balance = trace.number();
+                long flags = trace.varLong();
+                String address = (flags & 1) != 0 ? trace.string() : null;
+                int passportId = (flags & 2) != 0 ? (int) trace.varLong() : 0;
+                addUser(bank, alias, name, surname, balance, address, (flags & 2) != 0, passportId);
+                return 1;
+            case CREDIT:
+            case DEBIT:
+            case DEPOSIT:
+                String cardBank = trace.string();
+                String userAlias = trace.string();
+                String cardAlias = trace.string();
+                double startBalance = trace.number();
+                LocalDate dateEnd = operation == Operation.DEPOSIT ? LocalDate.ofEpochDay(trace.varLong()) : null;
+                openCard(operation, cardBank, userAlias, cardAlias, startBalance, dateEnd);
+                return 1;
+            case DAY:
+                long days = trace.varLong();
+                advanceDays(days);
+                return days;
+            case TRANSFER:
+                String from = trace.string();
+                transfer(from, trace.string(), trace.number());
+                return 1;
+            case CANCEL:
+                String card = trace.string();
+                cancel(card, (int) trace.varLong());
+                return 1;
+            case WITHDRAW:
+            case TOP_UP:
+                String target = trace.string();
+                changeBalance(operation, target, trace.number());
+                return 1;
+            default:
+                throw new IOException("Corrupted trace: unexpected operation " + operation);
+        }
+    }
+
+    private void openBank(String title, double[] p) throws Exception {
+        if (recorder != null) {
+            recorder.operation(Operation.BANK);
+            recorder.string(title);
+            for (double value : p) {
+                recorder.number(value);
+            }
+        }
+        Bank bank = new Bank(title, p[0], p[1], p[2], p[3], p[4], p[5], p[6], p[7], p[8]);
+        centralBank.addBank(bank);
+        timeManager.addObserver(bank);
+    }
+
+    private void addUser(String bank, String alias, String name, String surname, double balance, String address,
+                         boolean hasPassport, int passportId) throws Exception {
+        if (recorder != null) {
+            recorder.operation(Operation.USER);
+            recorder.string(bank);
+            recorder.string(alias);
+            recorder.string(name);
+            recorder.string(surname);
+            recorder.number(balance);
+            recorder.varLong((address != null ? 1 : 0) | (hasPassport ? 2 : 0));
+            if (address != null) {
+                recorder.string(address);
+            }
+            if (hasPassport) {
+                recorder.varLong(passportId & 0xFFFFFFFFL);
+            }
+        }
+        UserBuilder builder = new UserBuilder(name, surname, balance);
+        if (address != null) {
+            builder.withAddress(address);
+        }
+        if (hasPassport) {
+            builder.withPassportId(passportId);
+        }
+        User user = builder.build();
+        centralBank.getBank(bank).addUser(user);
+        users.put(alias, user);
+    }
+
+    private void openCard(Operation type, String bankTitle, String userAlias, String cardAlias, double balance,
+                          LocalDate dateEnd) throws Exception {
+        if (recorder != null) {
+            recorder.operation(type);
+            recorder.string(bankTitle);
+            recorder.string(userAlias);
+            recorder.string(cardAlias);
+            recorder.number(balance);
+            if (type == Operation.DEPOSIT) {
+                recorder.varLong(dateEnd.toEpochDay());
+            }
+        }
+        Bank bank = centralBank.getBank(bankTitle);
+        if (type == Operation.CREDIT) {
+            bank.addCreditCard(timeManager.getTimeStamp(), balance, user(userAlias).getUserId());
+        } else if (type == Operation.DEBIT) {
+            bank.addDebitCard(timeManager.getTimeStamp(), balance, user(userAlias).getUserId());
+        } else {
+            bank.addDepositCard(timeManager.getTimeStamp(), dateEnd.atStartOfDay(), balance,
+                    user(userAlias).getUserId());
+        }
+        cards.put(cardAlias, bank.getListCards().get(bank.getListCards().size() - 1));
+    }
+
+    private void advanceDays(long days) throws Exception {
+        if (recorder != null) {
+            recorder.operation(Operation.DAY);
+            recorder.varLong(days);
+        }
+        timeManager.resume();
+        for (long day = 0; day < days; day++) {
+            timeManager.addDay();
+        }
+    }
+
+    private void transfer(String from, String to, double money) throws Exception {
+        if (recorder != null) {
+            recorder.operation(Operation.TRANSFER);
+            recorder.string(from);
+            recorder.string(to);
+            recorder.number(money);
+        }
+        centralBank.transferMoney(money, card(from).getId(), card(to).getId());
+    }
+
+    private void cancel(String cardAlias, int number) throws Exception {
+        if (recorder != null) {
+            recorder.operation(Operation.CANCEL);
+            recorder.string(cardAlias);
+            recorder.varLong(number & 0xFFFFFFFFL);
+        }
+        centralBank.transactionCancellation(card(cardAlias).getId(), number);
+    }
+
+    private void changeBalance(Operation type, String cardAlias, double money) throws Exception {
+        if (recorder != null) {
+            recorder.operation(type);
+            recorder.string(cardAlias);
+            recorder.number(money);
+        }
+        if (type == Operation.WITHDRAW) {
+            centralBank.withdrawMoney(card(cardAlias).getId(), money);
+        } else {
+            centralBank.topUpCard(card(cardAlias).getId(), money);
+        }
+    }
+
+    private User user(String alias) throws Exception {
+        User user = users.get(alias);
+        if (user == null) {
+            throw new BatchRunnerException("Unknown user alias " + alias);
+        }
+        return user;
+    }
+
+    private ICard card(String alias) throws Exception {
+        ICard card = cards.get(alias);
+        if (card == null) {
+            throw new BatchRunnerException("Unknown card alias " + alias);
+        }
+        return card;
+    }
+
+    private void printSummary(long lines, long elapsedNanos) {
+        long operations = getOperationCount();
+        double seconds = elapsedNanos / 1e9;
+        out.println("Batch summary:");
+        for (Operation operation : Operation.values()) {
+            if (operationCounts[operation.ordinal()] > 0) {
+                out.printf("  %-9s %d%n", operation.command, operationCounts[operation.ordinal()]);
+            }
+        }
+        out.printf("  lines %d, operations %d, groups %d, failures %d%n", lines, operations, groups, failures);
+        out.printf("  elapsed %.3f s, %.0f ops/s%n", seconds, seconds > 0 ? operations / seconds : 0);
+    }
+
+    private static int skipSpaces(String line, int from) {
+        while (from < line.length() && Character.isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int skipToken(String line, int from) {
+        while (from < line.length() && !Character.isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Переиспользуемый разборщик строки на токены: хранит только границы токенов,
+     * строки создаются лишь для тех токенов, которые действительно запрошены.
+     */
+    private static final class Tokenizer {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private String line;
+        private int size;
+
+        void reset(String line) {
+            this.line = line;
+            size = 0;
+            int position = skipSpaces(line, 0);
+            while (position < line.length()) {
+                if (size == starts.length) {
+                    int[] newStarts = new int[size * 2];
+                    int[] newEnds = new int[size * 2];
+                    System.arraycopy(starts, 0, newStarts, 0, size);
+                    System.arraycopy(ends, 0, newEnds, 0, size);
+                    starts = newStarts;
+                    ends = newEnds;
+                }
+                int end = skipToken(line, position);
+                starts[size] = position;
+                ends[size] = end;
+                size++;
+                position = skipSpaces(line, end);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        String at(int index) throws Exception {
+            check(index);
+            return line.substring(starts[index], ends[index]);
+        }
+
+        double doubleAt(int index) throws Exception {
+            return Double.parseDouble(at(index));
+        }
+
+        int intAt(int index) throws Exception {
+            check(index);
+            int position = starts[index];
+            boolean negative = line.charAt(position) == '-';
+            if (negative) {
+                position++;
+            }
+            if (position == ends[index]) {
+                throw new BatchRunnerException("Incorrect number in argument " + index);
+            }
+            int value = 0;
+            for (; position < ends[index]; position++) {
+                int digit = line.charAt(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new BatchRunnerException("Incorrect number in argument " + index);
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        private void check(int index) throws Exception {
+            if (index >= size) {
+                throw new BatchRunnerException("Missing argument " + index);
+            }
+        }
+    }
+}
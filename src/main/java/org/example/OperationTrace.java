@@ -0,0 +1,160 @@
+package org.example;
+
+import org.example.exception.BatchRunnerException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Компактная двоичная трасса операций BatchRunner для записи и воспроизведения нагрузки.
+ * Трасса начинается с сигнатуры и времени менеджера времени на начало записи, с которого начинается
+ * воспроизведение, затем идут записи: байт кода операции и её аргументы.
+ * Строки (названия банков, псевдонимы, имена) пишутся один раз и далее передаются номером в таблице строк,
+ * целые числа - переменной длиной, суммы - восемью байтами double без потерь.
+ */
+final class OperationTrace {
+    static final int MAGIC = 0x42525432;
+
+    private OperationTrace() {
+    }
+
+    /**
+     * Запись трассы.
+     */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(OutputStream target, LocalDateTime start) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(start.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(start.getNano());
+        }
+
+        void operation(BatchRunner.Operation operation) throws IOException {
+            out.writeByte(operation.ordinal());
+        }
+
+        void string(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                varLong(index);
+                return;
+            }
+            varLong(strings.size());
+            strings.put(value, strings.size());
+            out.writeUTF(value);
+        }
+
+        void number(double value) throws IOException {
+            out.writeDouble(value);
+        }
+
+        void varLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Чтение трассы.
+     */
+    static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final LocalDateTime start;
+
+        Reader(InputStream source) throws Exception {
+            in = new DataInputStream(new BufferedInputStream(source, 1 << 16));
+            if (in.readInt() != MAGIC) {
+                throw new BatchRunnerException("Not an operation trace");
+            }
+            start = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        }
+
+        /**
+         * Возвращает время менеджера времени на начало записи трассы.
+         *
+         * @return время, с которого воспроизводится трасса
+         */
+        LocalDateTime getStart() {
+            return start;
+        }
+
+        /**
+         * Читает код следующей операции.
+         *
+         * @return операция или null, если трасса закончилась
+         * @throws IOException если код операции неизвестен
+         */
+        BatchRunner.Operation operation() throws IOException {
+            int code = in.read();
+            if (code < 0) {
+                return null;
+            }
+            if (code >= BatchRunner.Operation.values().length) {
+                throw new IOException("Corrupted trace: unknown operation " + code);
+            }
+            return BatchRunner.Operation.values()[code];
+        }
+
+        String string() throws IOException {
+            int index = (int) varLong();
+            if (index < strings.size()) {
+                return strings.get(index);
+            }
+            if (index != strings.size()) {
+                throw new IOException("Corrupted trace: unknown string " + index);
+            }
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+
+        double number() throws IOException {
+            return in.readDouble();
+        }
+
+        long varLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Truncated trace");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
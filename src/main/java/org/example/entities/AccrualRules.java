@@ -0,0 +1,164 @@
+package org.example.entities;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Правила ежедневного начисления банка: комиссия по кредитным картам, процент по дебетовым картам
+ * и ступенчатая шкала процентов по депозитам.
+ * Одни и те же правила применяют тик банка и карты, а также расчеты по портфелю вне банка,
+ * поэтому результаты таких расчетов совпадают с тем, что банк начислил бы на самом деле.
+ */
+public final class AccrualRules {
+    private final double firstStepPercent;
+    private final double secondStepPercent;
+    private final double thirdStepPercent;
+    private final double firstStepSum;
+    private final double secondStepSum;
+    private final double percentDebitCard;
+    private final double creditLimit;
+    private final double commission;
+
+    AccrualRules(double firstStepPercent, double secondStepPercent, double thirdStepPercent, double firstStepSum,
+                 double secondStepSum, double percentDebitCard, double creditLimit, double commission) {
+        this.firstStepPercent = firstStepPercent;
+        this.secondStepPercent = secondStepPercent;
+        this.thirdStepPercent = thirdStepPercent;
+        this.firstStepSum = firstStepSum;
+        this.secondStepSum = secondStepSum;
+        this.percentDebitCard = percentDebitCard;
+        this.creditLimit = creditLimit;
+        this.commission = commission;
+    }
+
+    /**
+     * Добавляет к накопленной сумме процентов дневное начисление на текущий баланс.
+     *
+     * @param percentSum накопленная сумма процентов
+     * @param balance    текущий баланс карты
+     * @param percent    процентная ставка
+     * @return новая накопленная сумма процентов
+     */
+    public static double accrue(double percentSum, double balance, double percent) {
+        return percentSum + balance * percent / 100;
+    }
+
+    /**
+     * Возвращает дневную комиссию кредитной карты: комиссия списывается только при отрицательном балансе.
+     *
+     * @param balance    текущий баланс карты
+     * @param commission ставка комиссии
+     * @return сумма к списанию, ноль при неотрицательном балансе
+     */
+    public static double dailyCommission(double balance, double commission) {
+        return balance < 0 ? commission : 0;
+    }
+
+    /**
+     * Возвращает дневную комиссию кредитной карты по ставке банка.
+     *
+     * @param balance текущий баланс карты
+     * @return сумма к списанию, ноль при неотрицательном балансе
+     */
+    public double dailyCommission(double balance) {
+        return dailyCommission(balance, commission);
+    }
+
+    /**
+     * Возвращает процентную ставку депозита по ступени шкалы, в которую попадает его начальный баланс.
+     *
+     * @param startBalance начальный баланс депозита
+     * @return процентная ставка депозита
+     */
+    public double depositPercent(double startBalance) {
+        if (startBalance <= firstStepSum) {
+            return firstStepPercent;
+        }
+        if (startBalance <= secondStepSum) {
+            return secondStepPercent;
+        }
+        return thirdStepPercent;
+    }
+
+    public double getPercentDebitCard() {
+        return percentDebitCard;
+    }
+
+    public double getCreditLimit() {
+        return creditLimit;
+    }
+
+    public double getCommission() {
+        return commission;
+    }
+
+    /**
+     * Прогнозирует баланс дебетовой карты на указанную дату, если по карте не будет операций.
+     *
+     * @param balance           текущий баланс
+     * @param percentSum        накопленная, но еще не начисленная сумма процентов
+     * @param capitalizationDay день месяца, в который проценты зачисляются на баланс
+     * @param today             дата последнего тика карты
+     * @param date              дата прогноза, не раньше даты последнего тика
+     * @return баланс карты после тика указанной даты
+     */
+    public double projectDebitBalance(double balance, double percentSum, int capitalizationDay, LocalDate today,
+                                      LocalDate date) {
+        return project(balance, percentSum, percentDebitCard, capitalizationDay, Long.MAX_VALUE, today, date);
+    }
+
+    /**
+     * Прогнозирует баланс депозита на указанную дату, если по депозиту не будет операций.
+     * В день окончания срока накопленные проценты зачисляются досрочно, как при обработке окончания срока банком.
+     *
+     * @param balance           текущий баланс
+     * @param percentSum        накопленная, но еще не начисленная сумма процентов
+     * @param startBalance      начальный баланс, определяющий ступень шкалы процентов
+     * @param capitalizationDay день месяца, в который проценты зачисляются на баланс
+     * @param dateEnd           дата окончания срока депозита
+     * @param matured           обработано ли уже окончание срока
+     * @param today             дата последнего тика депозита
+     * @param date              дата прогноза, не раньше даты последнего тика
+     * @return баланс депозита после тика указанной даты
+     */
+    public double projectDepositBalance(double balance, double percentSum, double startBalance,
+                                        int capitalizationDay, LocalDate dateEnd, boolean matured,
+                                        LocalDate today, LocalDate date) {
+        long maturityDay = matured ? Long.MAX_VALUE : Math.max(dateEnd.toEpochDay(), today.toEpochDay() + 1);
+        return project(balance, percentSum, depositPercent(startBalance), capitalizationDay, maturityDay, today,
+                date);
+    }
+
+    /**
+     * Между событиями баланс не меняется, поэтому проценты за промежуток начисляются одним умножением,
+     * а расчет идет по датам зачисления и окончания срока, а не по дням.
+     */
+    private static double project(double balance, double percentSum, double percent, int capitalizationDay,
+                                  long maturityDay, LocalDate today, LocalDate date) {
+        long current = today.toEpochDay();
+        long last = date.toEpochDay();
+        YearMonth month = YearMonth.from(today);
+        while (current < last) {
+            if (!month.isValidDay(capitalizationDay) || month.atDay(capitalizationDay).toEpochDay() <= current) {
+                month = month.plusMonths(1);
+                continue;
+            }
+            long capitalization = month.atDay(capitalizationDay).toEpochDay();
+            long next = Math.min(Math.min(capitalization, maturityDay), last);
+            percentSum = accrue(percentSum, balance, percent * (next - current - 1));
+            if (next == maturityDay) {
+                balance += percentSum;
+                percentSum = 0;
+                maturityDay = Long.MAX_VALUE;
+            }
+            percentSum = accrue(percentSum, balance, percent);
+            if (next == capitalization) {
+                balance += percentSum;
+                percentSum = 0;
+                month = month.plusMonths(1);
+            }
+            current = next;
+        }
+        return balance;
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.entities;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Распределенная по ячейкам часть баланса горячей карты.
+ * Зачисления добавляются в ячейку своего потока, а при конфликте переходят в другую случайную ячейку,
+ * поэтому параллельные зачисления на одну карту почти не мешают друг другу.
+ * Ячейки разнесены на 64 байта, чтобы соседние ячейки не попадали в одну строку кэша.
+ * В отличие от DoubleAdder.sumThenReset слияние забирает каждую ячейку атомарно и не теряет зачислений,
+ * пришедших во время слияния.
+ */
+final class BalanceCells {
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Создает ячейки.
+     *
+     * @param stripes количество ячеек, округляется вверх до степени двойки
+     */
+    BalanceCells(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.mask = size - 1;
+        this.cells = new AtomicLongArray(size * PADDING);
+    }
+
+    int getStripes() {
+        return mask + 1;
+    }
+
+    void add(double money) {
+        int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & mask;
+        while (true) {
+            int index = stripe * PADDING;
+            long bits = cells.get(index);
+            if (cells.compareAndSet(index, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + money))) {
+                return;
+            }
+            stripe = ThreadLocalRandom.current().nextInt() & mask;
+        }
+    }
+
+    double sum() {
+        double sum = 0;
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            sum += Double.longBitsToDouble(cells.get(stripe * PADDING));
+        }
+        return sum;
+    }
+
+    /**
+     * Забирает содержимое всех ячеек, обнуляя их.
+     *
+     * @return сумма забранных зачислений
+     */
+    double drain() {
+        double sum = 0;
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            sum += Double.longBitsToDouble(cells.getAndSet(stripe * PADDING, 0));
+        }
+        return sum;
+    }
+}
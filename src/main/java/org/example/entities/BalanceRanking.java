@@ -0,0 +1,72 @@
+package org.example.entities;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Упорядоченный по балансу индекс карт, обновляемый при каждом изменении баланса.
+ * Карты хранятся в списке с пропусками, отсортированные по возрастанию баланса (при равенстве - по внутреннему
+ * идентификатору), поэтому изменение баланса стоит O(log n), а первые или последние N карт читаются
+ * за O(N) без блокировок и без сортировки всего портфеля.
+ */
+class BalanceRanking {
+    private final ConcurrentSkipListSet<Key> keys = new ConcurrentSkipListSet<>();
+
+    void update(ICard card, double oldBalance, double newBalance) {
+        keys.remove(new Key(oldBalance, card.getIndex(), card));
+        keys.add(new Key(newBalance, card.getIndex(), card));
+    }
+
+    /**
+     * Возвращает не более n карт с наименьшим балансом, который меньше указанной границы.
+     *
+     * @param n     количество карт
+     * @param below граница баланса
+     * @return карты по возрастанию баланса
+     */
+    List<ICard> lowest(int n, double below) {
+        List<ICard> result = new ArrayList<>(Math.min(n, 64));
+        for (Key key : keys) {
+            if (result.size() == n || key.balance >= below) {
+                break;
+            }
+            result.add(key.card);
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает не более n карт с наибольшим балансом.
+     *
+     * @param n количество карт
+     * @return карты по убыванию баланса
+     */
+    List<ICard> highest(int n) {
+        List<ICard> result = new ArrayList<>(Math.min(n, 64));
+        Iterator<Key> iterator = keys.descendingIterator();
+        while (result.size() < n && iterator.hasNext()) {
+            result.add(iterator.next().card);
+        }
+        return result;
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private final double balance;
+        private final int cardIndex;
+        private final ICard card;
+
+        private Key(double balance, int cardIndex, ICard card) {
+            this.balance = balance;
+            this.cardIndex = cardIndex;
+            this.card = card;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int compare = Double.compare(balance, other.balance);
+            return compare != 0 ? compare : Integer.compare(cardIndex, other.cardIndex);
+        }
+    }
+}
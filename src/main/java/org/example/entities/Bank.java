@@ -2,28 +2,57 @@ package org.example.entities;
 
 import org.example.exception.BankException;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Этот класс содержит реализацию системы управления банком.
  * Он включает в себя списки, определяющие различные типы банковских карт (кредитные, дебетовые, депозитные),
  * User-ов.
- * Класс Bank также реализует интерфейс IObserver для получения обновлений о состоянии карт.
+ * Класс Bank также реализует интерфейс IResumableObserver для получения обновлений о состоянии карт
+ * и IIdentificationObserver для снятия ограничений с карт пользователя, указавшего свои данные.
  * Класс Bank предоставляет методы для добавления пользователей и карт, поиска пользователей и карт по ID,
  * и обновление состояния карты. Он также предоставляет методы для получения списков пользователей и карт,
  * и методы расчета сборов и процентных ставок в зависимости от типа карты и баланса.
  * Этот пакет также включает класс BankException, который используется для индикации ошибок в конструкторе класса Bank.
  */
-public class Bank implements IObserver {
-    private final List<ICard> listCards = new ArrayList<>();
-    private final List<CreditCard> listCreditCards = new ArrayList<>();
-    private final List<DebitCard> listDebitCards = new ArrayList<>();
-    private final List<DepositCard> listDepositCards = new ArrayList<>();
-    private final List<User> users = new ArrayList<>();
+public class Bank implements IResumableObserver, IIdentificationObserver {
+    /**
+     * Количество карт тика, после которого позиция тика передается в прогресс.
+     * Меньшее значение уменьшает отставание сохраненной позиции при падении процесса ценой частой записи отметки.
+     */
+    public static final int TICK_PARTITION = 4096;
+
+    private List<ICard> listCards = new ArrayList<>();
+    private List<CreditCard> listCreditCards = new ArrayList<>();
+    private List<DebitCard> listDebitCards = new ArrayList<>();
+    private List<DepositCard> listDepositCards = new ArrayList<>();
+    private List<User> users = new ArrayList<>();
+    private final List<IBankListener> listeners = new ArrayList<>();
+    private final ConcurrentLinkedQueue<DebitCard> cellCards = new ConcurrentLinkedQueue<>();
+    private volatile TreeMap<LocalDate, List<DepositCard>> maturities = new TreeMap<>();
+    private final Object cardsLock = new Object();
+    private final ForkPoints forkPoints = new ForkPoints();
+    private final BitSet cardIndexes = new BitSet();
+    private final BitSet userIndexes = new BitSet();
+    private final DoubleAdder creditCardsBalance = new DoubleAdder();
+    private final DoubleAdder debitCardsBalance = new DoubleAdder();
+    private final DoubleAdder depositCardsBalance = new DoubleAdder();
+    private final DoubleAdder creditExposure = new DoubleAdder();
+    private final BalanceRanking creditRanking = new BalanceRanking();
+    private final BalanceRanking depositRanking = new BalanceRanking();
     private final double firstStepPercent;
     private final double secondStepPercent;
     private final double thirdStepPercent;
@@ -34,6 +63,19 @@ public class Bank implements IObserver {
     private final double commission;
     private final String title;
     private final double untrustedUserLimit;
+    private final AccrualRules accrualRules;
+    private VelocityLimiter velocityLimiter;
+    private CardStateTable cardStateTable = CardStateTable.heap();
+    private volatile IdSpace ids = new IdSpace();
+    private TransactionArchive transactionArchive;
+    private int retentionDays;
+    private long indexesPreserved;
+    private Bank origin;
+    private ForkPoints.Point originPoint;
+    private Map<Integer, ICard> forkedCards;
+    private volatile boolean rankingsBuilt = true;
+    private Lock updateLock;
+    private IClock clock;
 
     /**
      * Создает новый объект Bank с указанными параметрами.
@@ -84,12 +126,148 @@ public class Bank implements IObserver {
         this.creditLimit = creditLimit;
         this.commission = commission;
         this.untrustedUserLimit = untrustedUserLimit;
+        this.accrualRules = new AccrualRules(firstStepPercent, secondStepPercent, thirdStepPercent, firstStepSum,
+                secondStepSum, percentDebitCard, creditLimit, commission);
+    }
+
+    /**
+     * Создает ответвление банка с теми же условиями.
+     *
+     * @return ответвленный банк
+     * @throws Exception если банк не удалось ответвить
+     * @see #fork(double, double, double, double)
+     */
+    public Bank fork() throws Exception {
+        return fork(firstStepPercent, secondStepPercent, thirdStepPercent, percentDebitCard);
+    }
+
+    /**
+     * Создает ответвление банка для сценария "что если" с другими процентными ставками.
+     * Ответвление закрепляет состояние банка и стоит O(страниц таблицы состояния): страницы таблицы
+     * разделяются с исходным банком и копируются при первой записи, агрегаты балансов копируются,
+     * а списки карт запоминают только свою длину. Копия карты создается при первом обращении к ней
+     * в ответвлении и получает историю транзакций на момент закрепления: если исходная карта успела
+     * измениться, её история перед изменением сохранила свой прообраз для ответвления.
+     * Поэтому память ответвления растет с числом прочитанных карт и измененных страниц, а рейтинги
+     * и календарь сроков депозитов строятся при первом запросе или тике и стоят O(карт).
+     * Ответвленный банк тикает независимо от исходного, разные ответвления можно продвигать параллельно.
+     * Пользователи не ответвляются: они общие с исходным банком, и агрегат баланса пользователя
+     * отражает только исходный банк. Во время ответвления исходный банк не должен изменяться,
+     * а после него может работать дальше.
+     *
+     * @param firstStepPercent  процентная ставка для первой ступени шкалы баланса
+     * @param secondStepPercent процентная ставка для второй ступени шкалы баланса
+     * @param thirdStepPercent  процентная ставка для третьей ступени шкалы баланса
+     * @param percentDebitCard  процентная ставка по дебетовым картам
+     * @return ответвленный банк
+     * @throws BankException если какая-либо из ставок недопустима
+     */
+    public Bank fork(double firstStepPercent, double secondStepPercent, double thirdStepPercent,
+                     double percentDebitCard) throws Exception {
+        Bank fork = new Bank(title, firstStepPercent, secondStepPercent, thirdStepPercent, firstStepSum,
+                secondStepSum, percentDebitCard, creditLimit, commission, untrustedUserLimit);
+        fork.ids = ids;
+        fork.transactionArchive = transactionArchive;
+        fork.retentionDays = retentionDays;
+        fork.velocityLimiter = velocityLimiter == null ? null : velocityLimiter.fork();
+        fork.origin = this;
+        fork.forkedCards = new ConcurrentHashMap<>();
+        fork.maturities = null;
+        fork.rankingsBuilt = false;
+        synchronized (cardsLock) {
+            for (DebitCard card : cellCards) {
+                card.foldBalanceCells();
+            }
+            fork.cardStateTable = cardStateTable.fork();
+            fork.originPoint = forkPoints.pin();
+            fork.listCards = new ForkedList<>(listCards, cardsLock, fork::copy);
+            fork.listCreditCards = new ForkedList<>(listCreditCards, cardsLock, fork::copy);
+            fork.listDebitCards = new ForkedList<>(listDebitCards, cardsLock, fork::copy);
+            fork.listDepositCards = new ForkedList<>(listDepositCards, cardsLock, fork::copy);
+            fork.users = new ForkedList<>(users, cardsLock, user -> user);
+            fork.creditCardsBalance.add(creditCardsBalance.sum());
+            fork.debitCardsBalance.add(debitCardsBalance.sum());
+            fork.depositCardsBalance.add(depositCardsBalance.sum());
+            fork.creditExposure.add(creditExposure.sum());
+        }
+        return fork;
+    }
+
+    /**
+     * Возвращает количество копий карт исходного банка, созданных в ответвлении.
+     *
+     * @return количество копий или 0, если банк не является ответвлением
+     */
+    int getCopiedCardCount() {
+        return forkedCards == null ? 0 : forkedCards.size() - cardIndexes.cardinality();
+    }
+
+    /**
+     * Возвращает копию карты исходного банка в этом ответвлении, создавая её при первом обращении.
+     *
+     * @param card карта исходного банка
+     * @return копия карты
+     */
+    @SuppressWarnings("unchecked")
+    private <C extends ICard> C copy(C card) {
+        return (C) forkedCards.computeIfAbsent(card.getIndex(), cardIndex -> copyCard(card));
+    }
+
+    private ICard copyCard(ICard card) {
+        TransactionHistory history = originPoint.history(card.getIndex(), card.getTransactionHistory());
+        ICard copy;
+        DoubleAdder typeBalance;
+        if (card instanceof CreditCard) {
+            copy = new CreditCard((CreditCard) card, cardStateTable, history);
+            typeBalance = creditCardsBalance;
+        } else if (card instanceof DebitCard) {
+            DebitCard debitCard = new DebitCard((DebitCard) card, cardStateTable, history);
+            if (debitCard.isUsingBalanceCells()) {
+                cellCards.add(debitCard);
+            }
+            copy = debitCard;
+            typeBalance = debitCardsBalance;
+        } else {
+            copy = new DepositCard((DepositCard) card, cardStateTable, history);
+            typeBalance = depositCardsBalance;
+        }
+        history.attach(forkPoints, card.getIndex(), 0);
+        subscribeBalance(null, copy, typeBalance);
+        copy.setVelocityLimiter(velocityLimiter);
+        return copy;
     }
 
     public String getTitle() {
         return title;
     }
 
+    public IdSpace getIdSpace() {
+        return ids;
+    }
+
+    /**
+     * Переводит банк в пространство идентификаторов центрального банка. Перейти может только банк,
+     * который еще не принял ни одного пользователя и не открыл ни одной карты.
+     *
+     * @param target пространство идентификаторов центрального банка
+     * @return true, если банк теперь использует указанное пространство
+     */
+    public boolean joinIdSpace(IdSpace target) {
+        synchronized (cardsLock) {
+            if (ids != target) {
+                if (origin != null || !users.isEmpty() || !listCards.isEmpty()) {
+                    return false;
+                }
+                ids = target;
+            }
+            return true;
+        }
+    }
+
+    public AccrualRules getAccrualRules() {
+        return accrualRules;
+    }
+
     public List<User> getListUsers() {
         return Collections.unmodifiableList(users);
     }
@@ -110,13 +288,289 @@ public class Bank implements IObserver {
         return Collections.unmodifiableList(listDepositCards);
     }
 
+    public double getTotalCreditCardsBalance() {
+        return creditCardsBalance.sum();
+    }
+
+    public double getTotalDebitCardsBalance() {
+        return debitCardsBalance.sum();
+    }
+
+    public double getTotalDepositCardsBalance() {
+        return depositCardsBalance.sum();
+    }
+
+    public double getTotalBalance() {
+        return creditCardsBalance.sum() + debitCardsBalance.sum() + depositCardsBalance.sum();
+    }
+
+    /**
+     * Возвращает суммарную задолженность по кредитным картам банка (сумму отрицательных балансов, взятую по модулю).
+     *
+     * @return кредитная задолженность
+     */
+    public double getCreditExposure() {
+        return creditExposure.sum();
+    }
+
+    /**
+     * Возвращает кредитные карты с наибольшей задолженностью (самым отрицательным балансом).
+     * Рейтинг поддерживается при каждом изменении баланса, поэтому запрос стоит O(n).
+     *
+     * @param n максимальное количество карт
+     * @return карты с отрицательным балансом по убыванию задолженности
+     */
+    public List<CreditCard> getMostOverdrawnCreditCards(int n) {
+        buildRankings();
+        List<CreditCard> result = new ArrayList<>();
+        for (ICard card : creditRanking.lowest(n, 0)) {
+            result.add((CreditCard) card);
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает депозиты с наибольшим балансом. Запрос стоит O(n).
+     *
+     * @param n максимальное количество карт
+     * @return депозитные карты по убыванию баланса
+     */
+    public List<DepositCard> getLargestDeposits(int n) {
+        buildRankings();
+        List<DepositCard> result = new ArrayList<>();
+        for (ICard card : depositRanking.highest(n)) {
+            result.add((DepositCard) card);
+        }
+        return result;
+    }
+
+    /**
+     * Прогнозирует баланс дебетовой или депозитной карты на указанную дату, если по карте не будет операций.
+     * Прогноз считается по датам зачисления процентов, а не по дням, и не изменяет состояние банка.
+     *
+     * @param cardId UUID карты
+     * @param date   дата прогноза
+     * @return баланс карты после тика указанной даты
+     * @throws BankException если карта не найдена, не является дебетовой или депозитной
+     *                       или дата прогноза раньше последнего тика карты
+     */
+    public double projectBalance(UUID cardId, LocalDate date) throws Exception {
+        ICard card = findCard(cardId);
+        if (card instanceof DebitCard) {
+            return projectBalance((DebitCard) card, date);
+        }
+        if (card instanceof DepositCard) {
+            return projectBalance((DepositCard) card, date);
+        }
+        throw new BankException("Only debit and deposit cards of this bank can be projected");
+    }
+
+    /**
+     * Прогнозирует балансы всех дебетовых и депозитных карт банка на указанную дату.
+     *
+     * @param date дата прогноза
+     * @return прогнозные балансы по UUID карты
+     * @throws BankException если дата прогноза раньше последнего тика какой-либо карты
+     */
+    public Map<UUID, Double> projectBalances(LocalDate date) throws Exception {
+        Map<UUID, Double> result = new HashMap<>();
+        for (DebitCard card : listDebitCards) {
+            result.put(card.getCardId(), projectBalance(card, date));
+        }
+        for (DepositCard card : listDepositCards) {
+            result.put(card.getCardId(), projectBalance(card, date));
+        }
+        return result;
+    }
+
+    private double projectBalance(DebitCard card, LocalDate date) throws Exception {
+        LocalDate today = projectionStart(card.getDateNow(), date);
+        return accrualRules.projectDebitBalance(card.getBalance(), card.getPercentSum(),
+                card.getDateCreate().getDayOfMonth(), today, date);
+    }
+
+    private double projectBalance(DepositCard card, LocalDate date) throws Exception {
+        LocalDate today = projectionStart(card.getDateNow(), date);
+        return accrualRules.projectDepositBalance(card.getBalance(), card.getPercentSum(), card.getStartBalance(),
+                card.getDateCreate().getDayOfMonth(), card.getDateEnd().toLocalDate(), card.isMatured(), today,
+                date);
+    }
+
+    private LocalDate projectionStart(LocalDateTime dateNow, LocalDate date) throws Exception {
+        LocalDate today = dateNow.toLocalDate();
+        if (date.isBefore(today)) {
+            throw new BankException("Projection date is before the last update");
+        }
+        return today;
+    }
+
+    public CardStateTable getCardStateTable() {
+        return cardStateTable;
+    }
+
+    /**
+     * Переносит хранение состояния карт банка (балансы, начисления, лимиты, даты) вне кучи.
+     * Должен вызываться до открытия первой карты.
+     *
+     * @throws BankException если в банке уже есть карты
+     */
+    public void useOffHeapCardState() throws Exception {
+        if (!listCards.isEmpty()) {
+            throw new BankException("Card state storage can only be changed before cards are opened");
+        }
+        cardStateTable = CardStateTable.offHeap();
+    }
+
+    /**
+     * Включает скользящие лимиты по сумме и количеству снятий и переводов для карт неидентифицированных
+     * пользователей, чтобы лимит на одну операцию нельзя было обойти серией мелких операций.
+     *
+     * @param window      длина скользящего окна в миллисекундах
+     * @param bucketCount количество корзин, на которые делится окно
+     * @param maxAmount   максимальная сумма операций по карте за окно, 0 - без ограничения
+     * @param maxCount    максимальное количество операций по карте за окно, 0 - без ограничения
+     * @throws BankException если параметры окна или лимитов недопустимы
+     */
+    public void setVelocityLimits(long window, int bucketCount, double maxAmount, int maxCount) throws Exception {
+        if (bucketCount <= 0 || bucketCount > 4096 || window < bucketCount) {
+            throw new BankException("Incorrect velocity window");
+        }
+        if (maxAmount < 0 || maxCount < 0 || maxCount > 4095) {
+            throw new BankException("Velocity limits must be positive");
+        }
+        velocityLimiter = new VelocityLimiter(window / bucketCount, bucketCount, maxAmount, maxCount);
+        for (ICard card : listCards) {
+            card.setVelocityLimiter(velocityLimiter);
+        }
+    }
+
+    /**
+     * Переводит дебетовую карту с большим потоком входящих переводов (карта магазина, зарплатный счет)
+     * на зачисления через ячейки баланса, чтобы параллельные зачисления не выстраивались в очередь
+     * на одной строке состояния. Списания и начисление процентов сначала сливают ячейки в баланс.
+     *
+     * @param cardId  UUID дебетовой карты банка
+     * @param stripes количество ячеек, обычно порядка числа ядер
+     * @throws BankException если карта не является дебетовой картой банка или количество ячеек не положительное
+     */
+    public void useBalanceCells(UUID cardId, int stripes) throws Exception {
+        if (stripes <= 0) {
+            throw new BankException("Number of balance cells must be positive");
+        }
+        ICard card = findCard(cardId);
+        if (!(card instanceof DebitCard)) {
+            throw new BankException("Balance cells are supported only for debit cards of this bank");
+        }
+        DebitCard debitCard = (DebitCard) card;
+        if (!debitCard.isUsingBalanceCells()) {
+            debitCard.useBalanceCells(stripes);
+            cellCards.add(debitCard);
+        }
+    }
+
+    /**
+     * Устанавливает блокировку, которую банк удерживает на время тика. Центральный банк передает сюда
+     * разделяемую сторону своей блокировки эпох, чтобы снимок не застал тик выполненным наполовину.
+     *
+     * @param updateLock блокировка тика или null
+     */
+    public void setUpdateLock(Lock updateLock) {
+        this.updateLock = updateLock;
+    }
+
+    /**
+     * Устанавливает часы, по которым датируются операции по картам банка, обычно часы TimeManager.
+     *
+     * @param clock часы или null, чтобы датировать операции временем последнего тика
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+        for (ICard card : listCards) {
+            card.setClock(clock);
+        }
+    }
+
+    /**
+     * Включает политику хранения истории: транзакции старше retentionDays дней при каждом тике
+     * выгружаются из памяти в архив и читаются из него по запросу.
+     *
+     * @param archive       архив транзакций банка
+     * @param retentionDays сколько дней транзакции хранятся в памяти
+     * @throws BankException если срок хранения отрицательный
+     */
+    public void setTransactionRetention(TransactionArchive archive, int retentionDays) throws Exception {
+        if (retentionDays < 0) {
+            throw new BankException("Retention period cannot be negative");
+        }
+        this.transactionArchive = archive;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Выгружает в архив транзакции карт банка, вышедшие за срок хранения в памяти.
+     *
+     * @param timeStamp текущая отметка времени
+     * @return количество выгруженных транзакций
+     * @throws Exception если архив не удалось записать
+     */
+    public int archiveTransactions(LocalDateTime timeStamp) throws Exception {
+        if (transactionArchive == null) {
+            return 0;
+        }
+        LocalDateTime before = timeStamp.minusDays(retentionDays);
+        int count = 0;
+        for (ICard card : listCards) {
+            count += card.getTransactionHistory().archiveBefore(transactionArchive, before);
+        }
+        return count;
+    }
+
     /**
      * Добавляет объект User в список пользователей.
      *
      * @param user Добавляемый объект пользователя
+     * @throws BankException если пользователь уже состоит в банках другого центрального банка
+     */
+    public void addUser(User user) throws Exception {
+        synchronized (cardsLock) {
+            int userIndex = user.bind(ids);
+            preserveIndexes();
+            users.add(user);
+            userIndexes.set(userIndex);
+        }
+        user.addIdentificationObserver(this);
+        for (IBankListener listener : listeners) {
+            listener.userAdded(this, user);
+        }
+    }
+
+    /**
+     * Подписывает слушателя на добавление пользователей и открытие карт в банке.
+     *
+     * @param listener слушатель
      */
-    public void addUser(User user) {
-        users.add(user);
+    public void addBankListener(IBankListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Обновляет флаг идентификации на картах этого банка, принадлежащих пользователю,
+     * после изменения его персональных данных.
+     *
+     * @param user пользователь, изменивший персональные данные
+     */
+    @Override
+    public void identificationChanged(User user) {
+        boolean verified = user.verificationPersonalData();
+        for (int i = 0; i < user.getCardCount(); i++) {
+            ICard card = findCard(user.getCardIndex(i));
+            if (card != null && verified != card.getIdentification()) {
+                card.setIdentificationFlag();
+            }
+        }
+        for (IBankListener listener : listeners) {
+            listener.userIdentified(this, user);
+        }
     }
 
     /**
@@ -126,7 +580,59 @@ public class Bank implements IObserver {
      * @return объект User с указанным UUID или null, если такой User не найден
      */
     public User findUser(UUID userId) {
-        return users.stream().filter(u -> u.getUserId() == userId).findFirst().orElse(null);
+        IdDictionary<User> userIds = ids.getUsers();
+        int userIndex = userIds.indexOf(userId);
+        return userIndex != IdDictionary.NONE && hasUser(userIndex) ? userIds.get(userIndex) : null;
+    }
+
+    private boolean hasUser(int userIndex) {
+        if (origin == null) {
+            return userIndexes.get(userIndex);
+        }
+        synchronized (cardsLock) {
+            if (userIndexes.get(userIndex)) {
+                return true;
+            }
+        }
+        return origin.hadUser(originPoint, userIndex);
+    }
+
+    /**
+     * Проверяет, был ли пользователь в банке на момент закрепления точки ответвления.
+     */
+    private boolean hadUser(ForkPoints.Point point, int userIndex) {
+        synchronized (cardsLock) {
+            if (point.userIndexes(userIndexes).get(userIndex)) {
+                return true;
+            }
+        }
+        return origin != null && origin.hadUser(originPoint, userIndex);
+    }
+
+    /**
+     * Проверяет, была ли карта в банке на момент закрепления точки ответвления.
+     */
+    private boolean hadCard(ForkPoints.Point point, int cardIndex) {
+        synchronized (cardsLock) {
+            if (point.cardIndexes(cardIndexes).get(cardIndex)) {
+                return true;
+            }
+        }
+        return origin != null && origin.hadCard(originPoint, cardIndex);
+    }
+
+    /**
+     * Сохраняет множества карт и пользователей для ответвлений, закрепленных после последнего сохранения,
+     * перед их первым изменением. Вызывается под блокировкой карт.
+     */
+    private void preserveIndexes() {
+        long generation = forkPoints.generation();
+        if (indexesPreserved != generation) {
+            for (ForkPoints.Point point : forkPoints.after(indexesPreserved)) {
+                point.preserveIndexes(cardIndexes, userIndexes);
+            }
+            indexesPreserved = generation;
+        }
     }
 
     /**
@@ -138,9 +644,9 @@ public class Bank implements IObserver {
      * @throws Exception если пользователь с указанным UUID не найден
      */
     public void addCreditCard(LocalDateTime dateTime, double startBalance, UUID userId) throws Exception {
-        listCreditCards.add(new CreditCard(dateTime, startBalance, findUser(userId).verificationPersonalData()));
-        listCards.add(listCreditCards.get(listCreditCards.size() - 1));
-        findUser(userId).addCard(listCards.get(listCards.size() - 1).getId());
+        User user = findUser(userId);
+        addCard(user, new CreditCard(cardStateTable, ids.getCards(), dateTime, startBalance,
+                user.verificationPersonalData()));
     }
 
     /**
@@ -152,9 +658,9 @@ public class Bank implements IObserver {
      * @throws Exception если пользователь с указанным UUID не найден
      */
     public void addDebitCard(LocalDateTime dateTime, double startBalance, UUID userId) throws Exception {
-        listDebitCards.add(new DebitCard(dateTime, startBalance, findUser(userId).verificationPersonalData()));
-        listCards.add(listDebitCards.get(listDebitCards.size() - 1));
-        findUser(userId).addCard(listCards.get(listCards.size() - 1).getId());
+        User user = findUser(userId);
+        addCard(user, new DebitCard(cardStateTable, ids.getCards(), dateTime, startBalance,
+                user.verificationPersonalData()));
     }
 
     /**
@@ -171,10 +677,208 @@ public class Bank implements IObserver {
             LocalDateTime dataEnd,
             double startBalance,
             UUID userId) throws Exception {
-        listDepositCards.add(new DepositCard(startBalance, dataEnd, dateStart,
-                findUser(userId).verificationPersonalData()));
-        listCards.add(listDepositCards.get(listDepositCards.size() - 1));
-        findUser(userId).addCard(listCards.get(listCards.size() - 1).getId());
+        User user = findUser(userId);
+        addCard(user, new DepositCard(cardStateTable, ids.getCards(), startBalance, dataEnd, dateStart,
+                user.verificationPersonalData()));
+    }
+
+    /**
+     * Резервирует место под указанное количество новых пользователей и карт, чтобы массовая загрузка
+     * не расширяла списки и словари идентификаторов многократно.
+     *
+     * @param userCount количество новых пользователей
+     * @param cardCount количество новых карт
+     */
+    void ensureCapacity(int userCount, int cardCount) {
+        if (origin == null) {
+            ((ArrayList<User>) users).ensureCapacity(users.size() + userCount);
+            ((ArrayList<ICard>) listCards).ensureCapacity(listCards.size() + cardCount);
+        }
+        ids.getUsers().ensureCapacity(ids.getUsers().size() + userCount);
+        ids.getCards().ensureCapacity(ids.getCards().size() + cardCount);
+    }
+
+    /**
+     * Регистрирует уже созданную на таблице состояния банка кредитную карту.
+     *
+     * @param user владелец карты, добавленный в банк
+     * @param card новая карта
+     */
+    void addCard(User user, CreditCard card) {
+        synchronized (cardsLock) {
+            listCreditCards.add(card);
+            registerCard(user, card, creditCardsBalance);
+        }
+    }
+
+    void addCard(User user, DebitCard card) {
+        synchronized (cardsLock) {
+            listDebitCards.add(card);
+            registerCard(user, card, debitCardsBalance);
+        }
+    }
+
+    void addCard(User user, DepositCard card) {
+        TreeMap<LocalDate, List<DepositCard>> calendar = maturities();
+        synchronized (cardsLock) {
+            listDepositCards.add(card);
+            registerCard(user, card, depositCardsBalance);
+        }
+        calendar.computeIfAbsent(card.getDateEnd().toLocalDate(), date -> new ArrayList<>()).add(card);
+    }
+
+    /**
+     * Возвращает количество депозитов, срок которых ещё не обработан.
+     *
+     * @return количество депозитов в календаре окончания сроков
+     */
+    public int getPendingMaturitiesCount() {
+        int count = 0;
+        for (List<DepositCard> bucket : maturities().values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    /**
+     * Обрабатывает депозиты, срок которых наступил к указанной дате. Календарь упорядочен по дате окончания,
+     * поэтому затрагиваются только депозиты с наступившим сроком, а не все депозиты банка.
+     *
+     * @param timeStamp текущая отметка времени
+     */
+    private void processMaturities(LocalDateTime timeStamp) {
+        TreeMap<LocalDate, List<DepositCard>> maturities = maturities();
+        LocalDate today = timeStamp.toLocalDate();
+        Map.Entry<LocalDate, List<DepositCard>> bucket = maturities.firstEntry();
+        while (bucket != null && !bucket.getKey().isAfter(today)) {
+            for (DepositCard card : bucket.getValue()) {
+                card.mature(timeStamp);
+            }
+            maturities.pollFirstEntry();
+            bucket = maturities.firstEntry();
+        }
+    }
+
+    /**
+     * Возвращает календарь окончания сроков депозитов. В ответвлении календарь строится при первом
+     * обращении по депозитам, срок которых ещё не обработан.
+     *
+     * @return календарь окончания сроков
+     */
+    private TreeMap<LocalDate, List<DepositCard>> maturities() {
+        TreeMap<LocalDate, List<DepositCard>> current = maturities;
+        if (current != null) {
+            return current;
+        }
+        synchronized (cardsLock) {
+            if (maturities == null) {
+                TreeMap<LocalDate, List<DepositCard>> calendar = new TreeMap<>();
+                for (DepositCard card : listDepositCards) {
+                    if (!card.isMatured()) {
+                        calendar.computeIfAbsent(card.getDateEnd().toLocalDate(), date -> new ArrayList<>()).add(card);
+                    }
+                }
+                maturities = calendar;
+            }
+            return maturities;
+        }
+    }
+
+    /**
+     * Заполняет рейтинги ответвления текущими балансами его карт при первом запросе.
+     */
+    private void buildRankings() {
+        if (rankingsBuilt) {
+            return;
+        }
+        synchronized (cardsLock) {
+            if (!rankingsBuilt) {
+                for (CreditCard card : listCreditCards) {
+                    creditRanking.update(card, card.getBalance(), card.getBalance());
+                }
+                for (DepositCard card : listDepositCards) {
+                    depositRanking.update(card, card.getBalance(), card.getBalance());
+                }
+                rankingsBuilt = true;
+            }
+        }
+    }
+
+    /**
+     * Регистрирует карту в банке и подписывает агрегаты баланса на её изменения.
+     * В ответвленном банке общий с исходным банком пользователь не изменяется.
+     * Вызывается под блокировкой карт.
+     *
+     * @param user        владелец карты
+     * @param card        новая карта
+     * @param typeBalance агрегат баланса по типу карты
+     */
+    private void registerCard(User user, ICard card, DoubleAdder typeBalance) {
+        preserveIndexes();
+        listCards.add(card);
+        cardIndexes.set(card.getIndex());
+        card.getTransactionHistory().attach(forkPoints, card.getIndex(), forkPoints.generation());
+        if (origin != null) {
+            forkedCards.put(card.getIndex(), card);
+            observeBalance(null, card, typeBalance);
+            card.setVelocityLimiter(velocityLimiter);
+        } else {
+            user.addCard(card.getIndex());
+            observeBalance(user, card, typeBalance);
+            card.setVelocityLimiter(velocityLimiter);
+            card.setClock(clock);
+        }
+        for (IBankListener listener : listeners) {
+            listener.cardOpened(this, user, card);
+        }
+    }
+
+    /**
+     * Подписывает агрегаты баланса банка и пользователя, а для кредитных и депозитных карт - рейтинги балансов,
+     * на изменения баланса карты и учитывает в них текущий баланс карты.
+     *
+     * @param user        владелец карты или null, если агрегат пользователя не ведется
+     * @param card        карта
+     * @param typeBalance агрегат баланса по типу карты
+     */
+    private void observeBalance(User user, ICard card, DoubleAdder typeBalance) {
+        subscribeBalance(user, card, typeBalance).balanceChanged(card, 0, card.getBalance());
+    }
+
+    /**
+     * Подписывает агрегаты на изменения баланса карты, не учитывая в них текущий баланс.
+     *
+     * @return наблюдатель за балансом карты
+     */
+    private IBalanceObserver subscribeBalance(User user, ICard card, DoubleAdder typeBalance) {
+        boolean credit = typeBalance == creditCardsBalance;
+        BalanceRanking ranking = credit ? creditRanking : typeBalance == depositCardsBalance ? depositRanking : null;
+        IBalanceObserver observer = (changed, oldBalance, newBalance) -> {
+            double delta = newBalance - oldBalance;
+            typeBalance.add(delta);
+            if (user != null) {
+                user.addCardsBalance(delta);
+            }
+            if (credit) {
+                creditExposure.add(Math.min(oldBalance, 0) - Math.min(newBalance, 0));
+            }
+            if (ranking != null) {
+                updateRanking(ranking, changed, oldBalance, newBalance);
+            }
+        };
+        card.setBalanceObserver(observer);
+        return observer;
+    }
+
+    private void updateRanking(BalanceRanking ranking, ICard card, double oldBalance, double newBalance) {
+        if (!rankingsBuilt) {
+            synchronized (cardsLock) {
+                if (!rankingsBuilt) {
+                    return;
+                }
+            }
+        }
+        ranking.update(card, oldBalance, newBalance);
     }
 
     /**
@@ -184,67 +888,184 @@ public class Bank implements IObserver {
      * @return карта с указанным UUID или null, если такая карта не найдена
      */
     public ICard findCard(UUID cardId) {
-        return listCards.stream()
-                .filter(c -> c.getId().equals(cardId))
-                .findFirst()
-                .orElse(null);
+        return findCard(ids.getCards().indexOf(cardId));
+    }
+
+    /**
+     * Находит карту этого банка по внутреннему идентификатору.
+     *
+     * @param cardIndex внутренний идентификатор карты
+     * @return карта или null, если карта с таким идентификатором не принадлежит банку
+     */
+    public ICard findCard(int cardIndex) {
+        if (cardIndex == IdDictionary.NONE) {
+            return null;
+        }
+        if (origin == null) {
+            return cardIndexes.get(cardIndex) ? ids.getCards().get(cardIndex) : null;
+        }
+        ICard card = forkedCards.get(cardIndex);
+        if (card != null || !origin.hadCard(originPoint, cardIndex)) {
+            return card;
+        }
+        return copy(origin.findCard(cardIndex));
     }
 
     /**
      * Обновляет состояние банковской системы на основе текущей отметки времени. Этот метод выполняет следующие
      * действия:
-     * Проверяет статус проверки персональных данных для карт каждого пользователя
-     * и устанавливает флаг идентификации на любой карте, не прошедшей проверку.
      * Обновляет комиссию, кредитный лимит и лимит недоверенных пользователей для каждой кредитной карты в системе
      * и добавляет день в историю платежей карты.
      * Добавляет день в историю платежей и рассчитывает проценты по каждой дебетовой карте в системе
      * на основе текущей отметки времени.
+     * Завершает депозиты, срок которых наступил, по календарю окончания сроков.
      * Обновляет лимит ненадежных пользователей и рассчитывает проценты для каждой депозитной карты в системе
      * на основе текущей отметки времени и начального баланса карты.
+     * Тик выполняется под блокировкой тика, если она установлена.
      *
      * @param timeStamp текущая отметка времени
      * @throws Exception если в процессе обновления возникает ошибка
      */
     public void update(LocalDateTime timeStamp) throws Exception {
-        for (User user : users) {
-            for (int j = 0; j < user.getListCardId().size(); j++) {
-                if (user.verificationPersonalData() != (findCard(user.getListCardId().get(j)).getIdentification())) {
-                    findCard(user.getListCardId().get(j)).setIdentificationFlag();
+        update(timeStamp, null);
+    }
+
+    /**
+     * Выполняет тик, продолжая прерванный день с сохраненной позиции.
+     * Тик разбит на этапы: кредитные карты, дебетовые карты, сроки депозитов, депозитные карты и архив
+     * транзакций; позиция состоит из номера этапа и номера карты в этапе. Карты до сохраненной позиции
+     * пропускаются, поэтому проценты и комиссии не начисляются повторно.
+     * Позиция передается в прогресс после каждой части из TICK_PARTITION карт, в конце этапа
+     * и перед выбросом ошибки - тогда она указывает на карту, на которой тик прервался. Поэтому продолжение
+     * точно только после исключения; если процесс упал, сохраненная позиция может отставать от обработанных
+     * карт до TICK_PARTITION карт.
+     *
+     * @param timeStamp текущая отметка времени
+     * @param progress  прогресс тика за этот день или null, если тик выполняется целиком
+     * @throws Exception если в процессе обновления возникает ошибка
+     */
+    @Override
+    public void update(LocalDateTime timeStamp, ITickProgress progress) throws Exception {
+        Lock lock = updateLock;
+        if (lock == null) {
+            tick(timeStamp, new TickCursor(progress));
+            return;
+        }
+        lock.lock();
+        try {
+            tick(timeStamp, new TickCursor(progress));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void tick(LocalDateTime timeStamp, TickCursor cursor) throws Exception {
+        try {
+            cursor.phase(0);
+            for (CreditCard listCreditCard : listCreditCards) {
+                if (cursor.skip()) {
+                    continue;
+                }
+                listCreditCard.setCommission(commission);
+                listCreditCard.setCreditLimit(creditLimit);
+                listCreditCard.setUntrustedUserLimit(untrustedUserLimit);
+                listCreditCard.addDay(timeStamp);
+                cursor.done();
+            }
+
+            cursor.phase(1);
+            for (DebitCard listDebitCard : listDebitCards) {
+                if (cursor.skip()) {
+                    continue;
+                }
+                listDebitCard.addDay(timeStamp);
+                listDebitCard.addPercentSum(percentDebitCard);
+                if (timeStamp.getDayOfMonth() == listDebitCard.getDateCreate().getDayOfMonth()) {
+                    listDebitCard.interestCalculation();
+                }
+                listDebitCard.setUntrustedUserLimit(untrustedUserLimit);
+                cursor.done();
+            }
+
+            cursor.phase(2);
+            if (!cursor.skip()) {
+                processMaturities(timeStamp);
+                cursor.done();
+            }
+
+            cursor.phase(3);
+            for (DepositCard listDepositCard : listDepositCards) {
+                if (cursor.skip()) {
+                    continue;
+                }
+                listDepositCard.addDay(timeStamp);
+                listDepositCard.setUntrustedUserLimit(untrustedUserLimit);
+                listDepositCard.addPercentSum(accrualRules.depositPercent(listDepositCard.getStartBalance()));
+                if (timeStamp.getDayOfMonth() == listDepositCard.getDateCreate().getDayOfMonth()) {
+                    listDepositCard.interestCalculation();
                 }
+                cursor.done();
             }
+
+            cursor.phase(4);
+            if (!cursor.skip()) {
+                archiveTransactions(timeStamp);
+                cursor.done();
+            }
+            cursor.phase(5);
+        } catch (Exception e) {
+            cursor.save();
+            throw e;
         }
+    }
+
+    /**
+     * Позиция тика банка: номер этапа в старших 32 битах и номер карты этапа в младших.
+     * Номера карт не сдвигаются картами, открытыми после прерывания, потому что карты дописываются в конец
+     * списков, а этапы считаются независимо.
+     */
+    private static final class TickCursor {
+        private final ITickProgress progress;
+        private final long resumeFrom;
+        private int phase;
+        private int step;
 
-        for (CreditCard listCreditCard : listCreditCards) {
-            listCreditCard.setCommission(commission);
-            listCreditCard.setCreditLimit(creditLimit);
-            listCreditCard.setUntrustedUserLimit(untrustedUserLimit);
-            listCreditCard.addDay(timeStamp);
+        private TickCursor(ITickProgress progress) {
+            this.progress = progress;
+            this.resumeFrom = progress == null ? 0 : progress.getPosition();
         }
 
-        for (DebitCard listDebitCard : listDebitCards) {
-            listDebitCard.addDay(timeStamp);
-            listDebitCard.addPercentSum(percentDebitCard);
-            if (timeStamp.getDayOfMonth() == listDebitCard.getDateCreate().getDayOfMonth()) {
-                listDebitCard.interestCalculation();
+        private void phase(int phase) throws Exception {
+            if (this.phase != phase) {
+                save();
             }
-            listDebitCard.setUntrustedUserLimit(untrustedUserLimit);
+            this.phase = phase;
+            this.step = 0;
         }
 
-        for (DepositCard listDepositCard : listDepositCards) {
-            listDepositCard.addDay(timeStamp);
-            listDepositCard.setUntrustedUserLimit(untrustedUserLimit);
-            if (listDepositCard.getStartBalance() <= firstStepSum) {
-                listDepositCard.addPercentSum(firstStepPercent);
-            }
-            if (listDepositCard.getStartBalance() > firstStepSum && listDepositCard.getStartBalance() <= secondStepSum) {
-                listDepositCard.addPercentSum(secondStepPercent);
+        private boolean skip() {
+            if (position() < resumeFrom) {
+                step++;
+                return true;
             }
-            if (listDepositCard.getStartBalance() > secondStepSum) {
-                listDepositCard.addPercentSum(thirdStepPercent);
+            return false;
+        }
+
+        private void done() throws Exception {
+            step++;
+            if (step % TICK_PARTITION == 0) {
+                save();
             }
-            if (timeStamp.getDayOfMonth() == listDepositCard.getDateCreate().getDayOfMonth()) {
-                listDepositCard.interestCalculation();
+        }
+
+        private void save() throws Exception {
+            if (progress != null && position() > resumeFrom) {
+                progress.advance(position());
             }
         }
+
+        private long position() {
+            return (long) phase << 32 | step;
+        }
     }
 }
@@ -0,0 +1,386 @@
+package org.example.entities;
+
+import org.example.exception.BulkLoaderException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Массовая загрузка пользователей и карт в банк из CSV.
+ * Формат строк (без кавычек, поля не содержат запятых, даты в виде yyyy-MM-dd):
+ * <pre>
+ * user,ключ,имя,фамилия,баланс,адрес,паспорт
+ * credit,ключ пользователя,баланс,дата открытия
+ * debit,ключ пользователя,баланс,дата открытия
+ * deposit,ключ пользователя,баланс,дата открытия,дата окончания
+ * </pre>
+ * Адрес и паспорт могут быть пустыми, пустые строки и строки с # пропускаются.
+ * Ключ пользователя - внешний номер клиента, по которому строки карт ссылаются на пользователя.
+ * Строки читаются порциями, группа порций разбирается и проверяется параллельно (пользователи создаются
+ * через UserBuilder, карты - своими конструкторами, то есть по тем же правилам, что и при обычном открытии),
+ * а затем вставляется в банк одним проходом в порядке строк с заранее зарезервированными списками.
+ * Некорректные строки пропускаются и учитываются в числе ошибок.
+ */
+public class BulkLoader {
+    private static final int DEFAULT_CHUNK_LINES = 65536;
+    private static final int MAX_ERRORS = 100;
+    private static final byte USER = 0;
+    private static final byte CREDIT = 1;
+    private static final byte DEBIT = 2;
+    private static final byte DEPOSIT = 3;
+
+    private final Bank bank;
+    private final ForkJoinPool pool;
+    private final int chunkLines;
+    private final Map<String, User> usersByKey = new HashMap<>();
+    private final List<String> errors = new ArrayList<>();
+    private long loadedUsers;
+    private long loadedCards;
+    private long failures;
+
+    /**
+     * Создает загрузчик на общем пуле fork-join.
+     *
+     * @param bank банк, в который загружаются пользователи и карты
+     */
+    public BulkLoader(Bank bank) {
+        this.bank = bank;
+        this.pool = ForkJoinPool.commonPool();
+        this.chunkLines = DEFAULT_CHUNK_LINES;
+    }
+
+    /**
+     * Создает загрузчик.
+     *
+     * @param bank       банк, в который загружаются пользователи и карты
+     * @param pool       пул fork-join для разбора порций
+     * @param chunkLines количество строк в одной порции
+     * @throws BulkLoaderException если размер порции не положительный
+     */
+    public BulkLoader(Bank bank, ForkJoinPool pool, int chunkLines) throws Exception {
+        if (chunkLines <= 0) {
+            throw new BulkLoaderException("Chunk size must be positive");
+        }
+        this.bank = bank;
+        this.pool = pool;
+        this.chunkLines = chunkLines;
+    }
+
+    /**
+     * Загружает файл CSV.
+     *
+     * @param path путь к файлу
+     * @throws IOException если файл не удалось прочитать
+     */
+    public void load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            load(reader);
+        }
+    }
+
+    /**
+     * Загружает строки CSV из указанного источника.
+     *
+     * @param source источник строк
+     * @throws IOException если источник не удалось прочитать
+     */
+    public void load(Reader source) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader
+                ? (BufferedReader) source : new BufferedReader(source);
+        int groupChunks = Math.max(1, pool.getParallelism() * 2);
+        List<Chunk> group = new ArrayList<>(groupChunks);
+        Chunk chunk = new Chunk(chunkLines);
+        long lineNumber = 0;
+        int userLines = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            if (line.startsWith("user,")) {
+                userLines++;
+            }
+            chunk.add(line, lineNumber);
+            if (chunk.size == chunkLines) {
+                group.add(chunk);
+                chunk = new Chunk(chunkLines);
+                if (group.size() == groupChunks) {
+                    process(group, userLines);
+                    group.clear();
+                    userLines = 0;
+                }
+            }
+        }
+        if (chunk.size > 0) {
+            group.add(chunk);
+        }
+        if (!group.isEmpty()) {
+            process(group, userLines);
+        }
+    }
+
+    public long getLoadedUsers() {
+        return loadedUsers;
+    }
+
+    public long getLoadedCards() {
+        return loadedCards;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Возвращает сообщения о первых ошибках загрузки с номерами строк.
+     *
+     * @return не более ста сообщений об ошибках
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Обрабатывает группу порций: параллельный разбор, регистрация пользователей, параллельное создание карт
+     * и вставка карт в банк в порядке строк.
+     */
+    private void process(List<Chunk> group, int userLines) {
+        int total = 0;
+        for (Chunk chunk : group) {
+            total += chunk.size;
+        }
+        bank.ensureCapacity(userLines, total - userLines);
+        pool.invoke(new ChunkTask(group, 0, group.size(), false));
+        for (Chunk chunk : group) {
+            for (int i = 0; i < chunk.size; i++) {
+                if (chunk.errors[i] != null) {
+                    continue;
+                }
+                if (chunk.kinds[i] == USER) {
+                    if (usersByKey.putIfAbsent(chunk.keys[i], chunk.users[i]) != null) {
+                        chunk.errors[i] = "Duplicate user key";
+                        continue;
+                    }
+                    try {
+                        bank.addUser(chunk.users[i]);
+                    } catch (Exception e) {
+                        usersByKey.remove(chunk.keys[i]);
+                        chunk.errors[i] = e.getMessage() != null ? e.getMessage() : e.toString();
+                    }
+                } else {
+                    chunk.users[i] = usersByKey.get(chunk.keys[i]);
+                    if (chunk.users[i] == null) {
+                        chunk.errors[i] = "Unknown user key";
+                    }
+                }
+            }
+        }
+        pool.invoke(new ChunkTask(group, 0, group.size(), true));
+        for (Chunk chunk : group) {
+            for (int i = 0; i < chunk.size; i++) {
+                if (chunk.errors[i] != null) {
+                    failures++;
+                    if (errors.size() < MAX_ERRORS) {
+                        errors.add("line " + chunk.lineNumbers[i] + ": " + chunk.errors[i]);
+                    }
+                    continue;
+                }
+                switch (chunk.kinds[i]) {
+                    case USER:
+                        loadedUsers++;
+                        continue;
+                    case CREDIT:
+                        bank.addCard(chunk.users[i], (CreditCard) chunk.cards[i]);
+                        break;
+                    case DEBIT:
+                        bank.addCard(chunk.users[i], (DebitCard) chunk.cards[i]);
+                        break;
+                    default:
+                        bank.addCard(chunk.users[i], (DepositCard) chunk.cards[i]);
+                        break;
+                }
+                loadedCards++;
+            }
+        }
+    }
+
+    private static String[] split(String line) {
+        int count = 1;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == ',') {
+                count++;
+            }
+        }
+        String[] fields = new String[count];
+        int start = 0;
+        for (int field = 0; field < count - 1; field++) {
+            int comma = line.indexOf(',', start);
+            fields[field] = line.substring(start, comma);
+            start = comma + 1;
+        }
+        fields[count - 1] = line.substring(start);
+        return fields;
+    }
+
+    private static LocalDateTime parseDate(String text) throws Exception {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            throw new BulkLoaderException("Incorrect date format");
+        }
+        return LocalDate.of(Integer.parseInt(text.substring(0, 4)), Integer.parseInt(text.substring(5, 7)),
+                Integer.parseInt(text.substring(8, 10))).atStartOfDay();
+    }
+
+    /**
+     * Порция строк и результаты их разбора в параллельных массивах.
+     */
+    private static final class Chunk {
+        private final String[] lines;
+        private final long[] lineNumbers;
+        private final byte[] kinds;
+        private final String[] keys;
+        private final double[] balances;
+        private final LocalDateTime[] datesCreate;
+        private final LocalDateTime[] datesEnd;
+        private final User[] users;
+        private final ICard[] cards;
+        private final String[] errors;
+        private int size;
+
+        private Chunk(int capacity) {
+            lines = new String[capacity];
+            lineNumbers = new long[capacity];
+            kinds = new byte[capacity];
+            keys = new String[capacity];
+            balances = new double[capacity];
+            datesCreate = new LocalDateTime[capacity];
+            datesEnd = new LocalDateTime[capacity];
+            users = new User[capacity];
+            cards = new ICard[capacity];
+            errors = new String[capacity];
+        }
+
+        private void add(String line, long lineNumber) {
+            lines[size] = line;
+            lineNumbers[size] = lineNumber;
+            size++;
+        }
+
+        private void parse(int i) throws Exception {
+            String[] fields = split(lines[i]);
+            lines[i] = null;
+            switch (fields[0]) {
+                case "user":
+                    checkFields(fields, 7);
+                    kinds[i] = USER;
+                    keys[i] = fields[1];
+                    UserBuilder builder = new UserBuilder(fields[2], fields[3], Double.parseDouble(fields[4]));
+                    if (!fields[5].isEmpty()) {
+                        builder.withAddress(fields[5]);
+                    }
+                    if (!fields[6].isEmpty()) {
+                        builder.withPassportId(Integer.parseInt(fields[6]));
+                    }
+                    users[i] = builder.build();
+                    return;
+                case "credit":
+                    kinds[i] = CREDIT;
+                    break;
+                case "debit":
+                    kinds[i] = DEBIT;
+                    break;
+                case "deposit":
+                    kinds[i] = DEPOSIT;
+                    break;
+                default:
+                    throw new BulkLoaderException("Unknown record type");
+            }
+            checkFields(fields, kinds[i] == DEPOSIT ? 5 : 4);
+            keys[i] = fields[1];
+            balances[i] = Double.parseDouble(fields[2]);
+            datesCreate[i] = parseDate(fields[3]);
+            if (kinds[i] == DEPOSIT) {
+                datesEnd[i] = parseDate(fields[4]);
+            }
+        }
+
+        private void create(int i, CardStateTable state, IdDictionary<ICard> cardIds) throws Exception {
+            boolean identification = users[i].verificationPersonalData();
+            switch (kinds[i]) {
+                case CREDIT:
+                    cards[i] = new CreditCard(state, cardIds, datesCreate[i], balances[i], identification);
+                    break;
+                case DEBIT:
+                    cards[i] = new DebitCard(state, cardIds, datesCreate[i], balances[i], identification);
+                    break;
+                default:
+                    cards[i] = new DepositCard(state, cardIds, balances[i], datesEnd[i], datesCreate[i],
+                            identification);
+                    break;
+            }
+        }
+
+        private static void checkFields(String[] fields, int count) throws Exception {
+            if (fields.length != count) {
+                throw new BulkLoaderException("Wrong number of fields");
+            }
+        }
+    }
+
+    /**
+     * Диапазон порций группы, который делится пополам до одной порции.
+     * Первый проход разбирает строки, второй создает карты для строк без ошибок.
+     */
+    private final class ChunkTask extends RecursiveAction {
+        private final List<Chunk> group;
+        private final int from;
+        private final int to;
+        private final boolean create;
+
+        private ChunkTask(List<Chunk> group, int from, int to, boolean create) {
+            this.group = group;
+            this.from = from;
+            this.to = to;
+            this.create = create;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(group, from, middle, create), new ChunkTask(group, middle, to, create));
+                return;
+            }
+            Chunk chunk = group.get(from);
+            CardStateTable state = bank.getCardStateTable();
+            IdDictionary<ICard> cardIds = bank.getIdSpace().getCards();
+            for (int i = 0; i < chunk.size; i++) {
+                if (chunk.errors[i] != null || create && chunk.kinds[i] == USER) {
+                    continue;
+                }
+                try {
+                    if (create) {
+                        chunk.create(i, state, cardIds);
+                    } else {
+                        chunk.parse(i);
+                    }
+                } catch (Exception e) {
+                    chunk.errors[i] = e.getMessage() != null ? e.getMessage() : e.toString();
+                }
+            }
+        }
+    }
+}
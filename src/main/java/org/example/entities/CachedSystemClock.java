@@ -0,0 +1,49 @@
+package org.example.entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * Грубые системные часы для рабочего режима. Фоновый поток раз в resolutionMillis обновляет
+ * закэшированное значение, поэтому чтение времени в операциях - это одно чтение volatile поля
+ * без обращения к системным часам.
+ * Время кодируется так же, как даты карт (CardStateTable.toMillis): местное время, записанное как UTC,
+ * поэтому операции, датированные этими часами, сравнимы с датами тиков и сроками вкладов.
+ */
+public class CachedSystemClock implements IClock, AutoCloseable {
+    private final Thread ticker;
+    private volatile long millis = now();
+
+    /**
+     * Создает часы и запускает поток обновления.
+     *
+     * @param resolutionMillis период обновления в миллисекундах
+     */
+    public CachedSystemClock(long resolutionMillis) {
+        ticker = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(resolutionMillis);
+                    millis = now();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cached-system-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public void close() {
+        ticker.interrupt();
+    }
+
+    private static long now() {
+        return CardStateTable.toMillis(LocalDateTime.now());
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.entities;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Таблица состояния карт: баланс, начисления, лимиты, флаги и даты хранятся строками фиксированной ширины
+ * в страницах ByteBuffer, а объекты карт служат тонкими ссылками на свою строку.
+ * Таблица может размещаться в куче или вне кучи (direct buffer). Во втором случае состояние миллионов карт
+ * не увеличивает объем, который сборщик мусора обходит при каждой паузе.
+ * Даты хранятся как миллисекунды от эпохи в UTC, флаги - битами в одном long.
+ * Таблицу можно ответвить: копия разделяет страницы с исходной таблицей, и каждая из них копирует страницу
+ * только при первой записи в неё, так что ответвление стоит памяти пропорционально числу измененных страниц.
+ */
+public class CardStateTable {
+    public static final int BALANCE = 0;
+    public static final int PERCENT_SUM = 8;
+    public static final int COMMISSION = 16;
+    public static final int CREDIT_LIMIT = 24;
+    public static final int UNTRUSTED_USER_LIMIT = 32;
+    public static final int START_BALANCE = 40;
+    public static final int DATE_CREATE = 48;
+    public static final int DATE_NOW = 56;
+    public static final int DATE_END = 64;
+    public static final int FLAGS = 72;
+    public static final int OPENING_BALANCE = 80;
+    public static final int ACCRUED = 88;
+    public static final int ROW_SIZE = 96;
+
+    public static final long IDENTIFICATION_FLAG = 1;
+    public static final long MATURED_FLAG = 1 << 1;
+
+    private static final int DEFAULT_PAGE_ROWS = 1024;
+
+    private final boolean offHeap;
+    private final int pageRows;
+    private volatile ByteBuffer[] pages = new ByteBuffer[4];
+    /**
+     * Флаги общих страниц. При ответвлении заменяется новым массивом, поэтому ссылка читается без блокировки
+     * в {@link #writablePage(int)}; устаревший флаг {@code true} перепроверяется под блокировкой в copyPage.
+     */
+    private volatile boolean[] sharedPages;
+    private int rows;
+
+    /**
+     * Создает таблицу состояния карт.
+     *
+     * @param offHeap  размещать ли строки вне кучи
+     * @param pageRows количество строк в одной странице
+     */
+    public CardStateTable(boolean offHeap, int pageRows) {
+        this.offHeap = offHeap;
+        this.pageRows = pageRows;
+    }
+
+    private CardStateTable(CardStateTable source) {
+        this.offHeap = source.offHeap;
+        this.pageRows = source.pageRows;
+        this.pages = source.pages.clone();
+        this.rows = source.rows;
+        this.sharedPages = new boolean[pages.length];
+        Arrays.fill(sharedPages, true);
+    }
+
+    public static CardStateTable heap() {
+        return new CardStateTable(false, DEFAULT_PAGE_ROWS);
+    }
+
+    public static CardStateTable offHeap() {
+        return new CardStateTable(true, DEFAULT_PAGE_ROWS);
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public synchronized int getRows() {
+        return rows;
+    }
+
+    /**
+     * Создает ответвление таблицы. Страницы становятся общими для обеих таблиц и копируются при первой записи.
+     * Во время ответвления в таблицу не должно идти записей.
+     *
+     * @return ответвленная таблица с теми же строками
+     */
+    public synchronized CardStateTable fork() {
+        CardStateTable fork = new CardStateTable(this);
+        sharedPages = new boolean[pages.length];
+        Arrays.fill(sharedPages, true);
+        return fork;
+    }
+
+    /**
+     * Выделяет новую строку, заполненную нулями.
+     *
+     * @return номер строки
+     */
+    public synchronized int allocateRow() {
+        int page = rows / pageRows;
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+            if (sharedPages != null) {
+                sharedPages = Arrays.copyOf(sharedPages, pages.length);
+            }
+        }
+        if (pages[page] == null) {
+            pages[page] = (offHeap ? ByteBuffer.allocateDirect(pageRows * ROW_SIZE)
+                    : ByteBuffer.allocate(pageRows * ROW_SIZE)).order(ByteOrder.nativeOrder());
+            if (sharedPages != null) {
+                sharedPages[page] = false;
+            }
+        }
+        return rows++;
+    }
+
+    public double getDouble(int row, int column) {
+        return pages[row / pageRows].getDouble(offset(row, column));
+    }
+
+    public void putDouble(int row, int column, double value) {
+        writablePage(row / pageRows).putDouble(offset(row, column), value);
+    }
+
+    public long getLong(int row, int column) {
+        return pages[row / pageRows].getLong(offset(row, column));
+    }
+
+    public void putLong(int row, int column, long value) {
+        writablePage(row / pageRows).putLong(offset(row, column), value);
+    }
+
+    public boolean getFlag(int row, long flag) {
+        return (getLong(row, FLAGS) & flag) != 0;
+    }
+
+    public void setFlag(int row, long flag, boolean value) {
+        long flags = getLong(row, FLAGS);
+        putLong(row, FLAGS, value ? flags | flag : flags & ~flag);
+    }
+
+    public LocalDateTime getDate(int row, int column) {
+        return toDateTime(getLong(row, column));
+    }
+
+    public void putDate(int row, int column, LocalDateTime value) {
+        putLong(row, column, toMillis(value));
+    }
+
+    public static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private ByteBuffer writablePage(int page) {
+        boolean[] shared = sharedPages;
+        if (shared != null && shared[page]) {
+            return copyPage(page);
+        }
+        return pages[page];
+    }
+
+    private synchronized ByteBuffer copyPage(int page) {
+        ByteBuffer source = pages[page];
+        if (!sharedPages[page]) {
+            return source;
+        }
+        ByteBuffer copy = (offHeap ? ByteBuffer.allocateDirect(source.capacity())
+                : ByteBuffer.allocate(source.capacity())).order(ByteOrder.nativeOrder());
+        ByteBuffer data = source.duplicate();
+        data.clear();
+        copy.put(data);
+        ByteBuffer[] copied = pages.clone();
+        copied[page] = copy;
+        pages = copied;
+        sharedPages[page] = false;
+        return copy;
+    }
+
+    private int offset(int row, int column) {
+        return (row % pageRows) * ROW_SIZE + column;
+    }
+}
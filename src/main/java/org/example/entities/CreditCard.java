@@ -4,23 +4,21 @@ package org.example.entities;
 import org.example.exception.CreditCardException;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
  * CreditCard представляет собой кредитную карту, которая реализует интерфейс iCard.
  */
 public class CreditCard implements ICard {
-    private final List<Transaction> transaction;
+    private final TransactionHistory transaction;
     private final UUID cardId;
-    private double balance;
-    private double commission;
-    private double creditLimit;
-    private boolean identification;
-    private double untrustedUserLimit;
-    private final LocalDateTime dateCreate;
-    private LocalDateTime timeNow;
+    private final IdDictionary<ICard> cardIds;
+    private final int cardIndex;
+    private final CardStateTable state;
+    private final int row;
+    private IBalanceObserver balanceObserver;
+    private VelocityLimiter velocityLimiter;
+    private IClock clock;
 
     /**
      * Создает объект CreditCard с заданными параметрами.
@@ -31,29 +29,88 @@ public class CreditCard implements ICard {
      * @throws CreditCardException если баланс отрицательный
      */
     public CreditCard(LocalDateTime dateCreate, double balance, boolean identification) throws Exception {
+        this(new CardStateTable(false, 1), new IdDictionary<>(), dateCreate, balance, identification);
+    }
+
+    /**
+     * Создает объект CreditCard, состояние которой хранится в строке указанной таблицы.
+     *
+     * @param state          таблица состояния карт
+     * @param cardIds        словарь карт центрального банка, в котором регистрируется карта
+     * @param dateCreate     дата и время создания кредитной карты
+     * @param balance        начальный баланс кредитной карты
+     * @param identification независимо от того, был ли идентифицирован пользователь или нет
+     * @throws CreditCardException если баланс отрицательный
+     */
+    public CreditCard(CardStateTable state, IdDictionary<ICard> cardIds, LocalDateTime dateCreate, double balance,
+                      boolean identification) throws Exception {
         if (balance < 0) {
             throw new CreditCardException("Creating an account must be with a positive balance");
         }
-        this.balance = balance;
-        this.transaction = new ArrayList<>();
+        this.state = state;
+        this.row = state.allocateRow();
+        this.cardIds = cardIds;
+        this.transaction = new TransactionHistory(cardIds);
         this.cardId = UUID.randomUUID();
-        this.dateCreate = dateCreate;
-        this.commission = 0;
-        this.creditLimit = 0;
-        this.identification = identification;
-        this.timeNow = LocalDateTime.now();
+        state.putDouble(row, CardStateTable.BALANCE, balance);
+        state.putDouble(row, CardStateTable.OPENING_BALANCE, balance);
+        state.putDate(row, CardStateTable.DATE_CREATE, dateCreate);
+        state.putDate(row, CardStateTable.DATE_NOW, dateCreate);
+        state.setFlag(row, CardStateTable.IDENTIFICATION_FLAG, identification);
+        this.cardIndex = cardIds.register(cardId, this);
+    }
+
+    /**
+     * Создает копию карты для ответвленного банка: состояние читается из той же строки ответвленной таблицы,
+     * история транзакций - ответвление истории исходной карты на момент закрепления.
+     *
+     * @param source  исходная карта
+     * @param state   ответвленная таблица состояния карт
+     * @param history ответвленная история транзакций
+     */
+    CreditCard(CreditCard source, CardStateTable state, TransactionHistory history) {
+        this.state = state;
+        this.row = source.row;
+        this.cardId = source.cardId;
+        this.cardIds = source.cardIds;
+        this.cardIndex = source.cardIndex;
+        this.transaction = history;
     }
 
     public boolean getIdentification() {
-        return identification;
+        return state.getFlag(row, CardStateTable.IDENTIFICATION_FLAG);
     }
 
     public double getBalance() {
-        return balance;
+        return state.getDouble(row, CardStateTable.BALANCE);
+    }
+
+    public double getOpeningBalance() {
+        return state.getDouble(row, CardStateTable.OPENING_BALANCE);
+    }
+
+    public double getAccruedInterest() {
+        return state.getDouble(row, CardStateTable.ACCRUED);
     }
 
     public double getUntrustedUserLimit() {
-        return untrustedUserLimit;
+        return state.getDouble(row, CardStateTable.UNTRUSTED_USER_LIMIT);
+    }
+
+    public LocalDateTime getDateCreate() {
+        return state.getDate(row, CardStateTable.DATE_CREATE);
+    }
+
+    private double getCommission() {
+        return state.getDouble(row, CardStateTable.COMMISSION);
+    }
+
+    private double getCreditLimit() {
+        return state.getDouble(row, CardStateTable.CREDIT_LIMIT);
+    }
+
+    public TransactionHistory getTransactionHistory() {
+        return transaction;
     }
 
     public UUID getCardId() {
@@ -61,10 +118,10 @@ public class CreditCard implements ICard {
     }
 
     public void setIdentificationFlag() {
-        identification = true;
+        state.setFlag(row, CardStateTable.IDENTIFICATION_FLAG, true);
     }
 
-    public void removeTransaction(int number) {
+    public void removeTransaction(int number) throws Exception {
         transaction.remove(number);
     }
 
@@ -72,7 +129,7 @@ public class CreditCard implements ICard {
         if (untrustedUserLimit < 0) {
             throw new CreditCardException("Limit must be positive");
         }
-        this.untrustedUserLimit = untrustedUserLimit;
+        state.putDouble(row, CardStateTable.UNTRUSTED_USER_LIMIT, untrustedUserLimit);
     }
 
     /**
@@ -81,9 +138,10 @@ public class CreditCard implements ICard {
      * @param dateStamp новая дата, на которую нужно установить время карты.
      */
     public void addDay(LocalDateTime dateStamp) {
-        timeNow = dateStamp;
-        if (balance < 0) {
-            balance -= commission;
+        state.putDate(row, CardStateTable.DATE_NOW, dateStamp);
+        double charge = AccrualRules.dailyCommission(getBalance(), getCommission());
+        if (charge != 0) {
+            changeBalance(-charge);
         }
     }
 
@@ -91,14 +149,14 @@ public class CreditCard implements ICard {
         if (commission < 0) {
             throw new CreditCardException("Credit commission must be a positive number");
         }
-        this.commission = commission;
+        state.putDouble(row, CardStateTable.COMMISSION, commission);
     }
 
     public void setCreditLimit(double creditLimit) throws Exception {
         if (creditLimit > 0) {
             throw new CreditCardException("Credit limit must be negative");
         }
-        this.creditLimit = creditLimit;
+        state.putDouble(row, CardStateTable.CREDIT_LIMIT, creditLimit);
     }
 
     /**
@@ -108,17 +166,18 @@ public class CreditCard implements ICard {
      * @throws CreditCardException если сумма, подлежащая выводу, отрицательна и т.д
      */
     public void withdrawMoney(double money) throws Exception {
-        if (!identification && money > untrustedUserLimit && untrustedUserLimit != 0) {
+        if (!getIdentification() && money > getUntrustedUserLimit() && getUntrustedUserLimit() != 0) {
             throw new CreditCardException("Limit exceeded for an unidentified user");
         }
         if (money <= 0) {
             throw new CreditCardException("You can't take a negative value");
         }
-        if (balance - money < creditLimit && creditLimit != 0) {
+        if (getBalance() - money < getCreditLimit() && getCreditLimit() != 0) {
             throw new CreditCardException("Credit limit exceeded when withdrawing");
         }
-        balance -= money;
-        transaction.add(new Transaction(cardId, timeNow, money));
+        checkVelocity(money);
+        changeBalance(-money);
+        transaction.add(new Transaction(cardIds, IdDictionary.NONE, cardIndex, now(), money));
     }
 
     /**
@@ -130,16 +189,16 @@ public class CreditCard implements ICard {
      *                             если сумма вывода отрицательна или если сумма вывода превышает кредитный лимит.
      */
     public void withdrawMoneyWithOutHistory(double money) throws Exception {
-        if (!identification && money > untrustedUserLimit) {
+        if (!getIdentification() && money > getUntrustedUserLimit()) {
             throw new CreditCardException("Limit exceeded for an unidentified user");
         }
         if (money <= 0) {
             throw new CreditCardException("You can't take a negative value");
         }
-        if (balance - money < creditLimit) {
+        if (getBalance() - money < getCreditLimit()) {
             throw new CreditCardException("Credit limit exceeded when withdrawing");
         }
-        balance -= money;
+        changeBalance(-money);
     }
 
     /**
@@ -152,14 +211,66 @@ public class CreditCard implements ICard {
         if (money <= 0) {
             throw new CreditCardException("Can't top up card negative or zero value");
         }
-        balance += money;
-        transaction.add(new Transaction(LocalDateTime.now(), cardId, money));
+        changeBalance(money);
+        transaction.add(new Transaction(cardIds, cardIndex, IdDictionary.NONE, now(), money));
     }
 
     public UUID getId() {
         return cardId;
     }
 
+    public int getIndex() {
+        return cardIndex;
+    }
+
+    /**
+     * Устанавливает наблюдателя, которому сообщается о каждом изменении баланса карты.
+     *
+     * @param balanceObserver наблюдатель за балансом
+     */
+    public void setBalanceObserver(IBalanceObserver balanceObserver) {
+        this.balanceObserver = balanceObserver;
+    }
+
+    /**
+     * Устанавливает скользящие лимиты операций, действующие для неидентифицированного пользователя.
+     *
+     * @param velocityLimiter ограничитель операций или null, если лимиты не действуют
+     */
+    public void setVelocityLimiter(VelocityLimiter velocityLimiter) {
+        this.velocityLimiter = velocityLimiter;
+    }
+
+    /**
+     * Устанавливает часы, по которым датируются операции по карте.
+     *
+     * @param clock часы или null, чтобы датировать операции временем последнего тика
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+    }
+
+    private long now() {
+        IClock current = clock;
+        return current != null ? current.millis() : state.getLong(row, CardStateTable.DATE_NOW);
+    }
+
+    private void checkVelocity(double money) throws Exception {
+        if (!getIdentification() && velocityLimiter != null && !velocityLimiter.tryAcquire(
+                cardIndex, now(), money)) {
+            throw new CreditCardException("Velocity limit exceeded for an unidentified user");
+        }
+    }
+
+    private void changeBalance(double delta) {
+        double oldBalance = getBalance();
+        double newBalance = oldBalance + delta;
+        state.putDouble(row, CardStateTable.BALANCE, newBalance);
+        if (balanceObserver != null) {
+            balanceObserver.balanceChanged(this, oldBalance, newBalance);
+        }
+    }
+
     /**
      * Adds specified amount of money to the balance of the credit card without recording the transaction history.
      *
@@ -171,7 +282,7 @@ public class CreditCard implements ICard {
         if (money <= 0) {
             throw new CreditCardException("Can't top up card negative or zero value");
         }
-        balance += money;
+        changeBalance(money);
     }
 
     /**
@@ -186,15 +297,17 @@ public class CreditCard implements ICard {
      * @throws Exception           если во время передачи возникнет какая-либо другая ошибка.
      */
     public void transferMoney(double money, ICard card) throws Exception {
-        if (!identification && money > untrustedUserLimit) {
+        if (!getIdentification() && money > getUntrustedUserLimit()) {
             throw new CreditCardException("Untrusted user limit exceeded when transferring money");
         }
         if (money <= 0) {
             throw new CreditCardException("You can't take a negative value");
         }
-        balance -= money;
+        checkVelocity(money);
+        changeBalance(-money);
         card.topUpCardWithOutHistory(money);
-        transaction.add(new Transaction(cardId, card.getId(), LocalDateTime.now(), money));
+        int receiver = cardIds.resolve(card.getIndex(), card.getId());
+        transaction.add(new Transaction(cardIds, cardIndex, receiver, now(), money));
     }
 
     /**
@@ -4,8 +4,6 @@ package org.example.entities;
 import org.example.exception.DebitCardException;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
@@ -17,14 +15,16 @@ import java.util.UUID;
  * лимит ненадежного пользователя.
  */
 public class DebitCard implements ICard {
-    private final List<Transaction> transactions;
+    private final TransactionHistory transactions;
     private final UUID cardId;
-    private final LocalDateTime dateCreate;
-    private LocalDateTime dateNow;
-    private double percentSum;
-    private double balance;
-    private boolean identification;
-    private double untrustedUserLimit;
+    private final IdDictionary<ICard> cardIds;
+    private final int cardIndex;
+    private final CardStateTable state;
+    private final int row;
+    private IBalanceObserver balanceObserver;
+    private VelocityLimiter velocityLimiter;
+    private IClock clock;
+    private volatile BalanceCells cells;
 
     /**
      * Создает новый экземпляр DebitCard с заданной датой создания, балансом и статусом идентификации.  *
@@ -35,24 +35,118 @@ public class DebitCard implements ICard {
      * @throws DebitCardException если баланс отрицательный.
      */
     public DebitCard(LocalDateTime dateCreate, double balance, boolean identification) throws Exception {
+        this(new CardStateTable(false, 1), new IdDictionary<>(), dateCreate, balance, identification);
+    }
+
+    /**
+     * Создает новый экземпляр DebitCard, состояние которого хранится в строке указанной таблицы.
+     *
+     * @param state          таблица состояния карт.
+     * @param cardIds        словарь карт центрального банка, в котором регистрируется карта.
+     * @param dateCreate     дата создания дебетовой карты.
+     * @param balance        начальный баланс дебетовой карты.
+     * @param identification идентификационный статус пользователя.
+     * @throws DebitCardException если баланс отрицательный.
+     */
+    public DebitCard(CardStateTable state, IdDictionary<ICard> cardIds, LocalDateTime dateCreate, double balance,
+                     boolean identification) throws Exception {
         if (balance < 0) {
             throw new DebitCardException("Account creation cannot be with a negative balance");
         }
-        this.balance = balance;
-        this.transactions = new ArrayList<>();
+        this.state = state;
+        this.row = state.allocateRow();
+        this.cardIds = cardIds;
+        this.transactions = new TransactionHistory(cardIds);
         this.cardId = UUID.randomUUID();
-        this.dateCreate = dateCreate;
-        this.dateNow = dateCreate;
-        this.percentSum = 0;
-        this.identification = identification;
+        state.putDouble(row, CardStateTable.BALANCE, balance);
+        state.putDouble(row, CardStateTable.OPENING_BALANCE, balance);
+        state.putDate(row, CardStateTable.DATE_CREATE, dateCreate);
+        state.putDate(row, CardStateTable.DATE_NOW, dateCreate);
+        state.setFlag(row, CardStateTable.IDENTIFICATION_FLAG, identification);
+        this.cardIndex = cardIds.register(cardId, this);
+    }
+
+    /**
+     * Создает копию карты для ответвленного банка: состояние читается из той же строки ответвленной таблицы,
+     * история транзакций - ответвление истории исходной карты на момент закрепления.
+     *
+     * @param source  исходная карта
+     * @param state   ответвленная таблица состояния карт
+     * @param history ответвленная история транзакций
+     */
+    DebitCard(DebitCard source, CardStateTable state, TransactionHistory history) {
+        this.state = state;
+        this.row = source.row;
+        this.cardId = source.cardId;
+        this.cardIds = source.cardIds;
+        this.cardIndex = source.cardIndex;
+        this.transactions = history;
+        BalanceCells sourceCells = source.cells;
+        if (sourceCells != null) {
+            this.cells = new BalanceCells(sourceCells.getStripes());
+        }
     }
 
     public LocalDateTime getDateCreate() {
-        return dateCreate;
+        return state.getDate(row, CardStateTable.DATE_CREATE);
+    }
+
+    public LocalDateTime getDateNow() {
+        return state.getDate(row, CardStateTable.DATE_NOW);
     }
 
     public double getBalance() {
-        return balance;
+        BalanceCells current = cells;
+        double balance = state.getDouble(row, CardStateTable.BALANCE);
+        return current == null ? balance : balance + current.sum();
+    }
+
+    /**
+     * Включает для карты зачисления через ячейки баланса: зачисления без истории из разных потоков
+     * складываются в разные ячейки и сливаются в баланс при списании.
+     *
+     * @param stripes количество ячеек
+     */
+    void useBalanceCells(int stripes) {
+        if (cells == null) {
+            cells = new BalanceCells(stripes);
+        }
+    }
+
+    /**
+     * Сливает ячейки в строку баланса, не изменяя баланс карты, чтобы ответвление таблицы состояния
+     * видело весь баланс. Вызывается, пока зачисления остановлены.
+     */
+    void foldBalanceCells() {
+        BalanceCells current = cells;
+        if (current != null) {
+            double balance = state.getDouble(row, CardStateTable.BALANCE) + current.drain();
+            state.putDouble(row, CardStateTable.BALANCE, balance);
+        }
+    }
+
+    public boolean isUsingBalanceCells() {
+        return cells != null;
+    }
+
+    public double getOpeningBalance() {
+        return state.getDouble(row, CardStateTable.OPENING_BALANCE);
+    }
+
+    public double getAccruedInterest() {
+        return state.getDouble(row, CardStateTable.ACCRUED);
+    }
+
+    public double getPercentSum() {
+        return state.getDouble(row, CardStateTable.PERCENT_SUM);
+    }
+
+    public double getUntrustedUserLimit() {
+        return state.getDouble(row, CardStateTable.UNTRUSTED_USER_LIMIT);
+    }
+
+    public TransactionHistory getTransactionHistory() {
+        return transactions;
     }
 
     public UUID getCardId() {
@@ -76,7 +170,7 @@ public class DebitCard implements ICard {
         if (untrustedUserLimit < 0) {
             throw new DebitCardException("Limit must be positive");
         }
-        this.untrustedUserLimit = untrustedUserLimit;
+        state.putDouble(row, CardStateTable.UNTRUSTED_USER_LIMIT, untrustedUserLimit);
     }
 
     /**
@@ -85,15 +179,15 @@ public class DebitCard implements ICard {
      * @param dateStamp дата, которую нужно установить в качестве текущей даты.
      */
     public void addDay(LocalDateTime dateStamp) {
-        dateNow = dateStamp;
+        state.putDate(row, CardStateTable.DATE_NOW, dateStamp);
     }
 
     public boolean getIdentification() {
-        return identification;
+        return state.getFlag(row, CardStateTable.IDENTIFICATION_FLAG);
     }
 
     public void setIdentificationFlag() {
-        identification = true;
+        state.setFlag(row, CardStateTable.IDENTIFICATION_FLAG, true);
     }
 
     /**
@@ -104,17 +198,18 @@ public class DebitCard implements ICard {
      * пользователя
      */
     public void withdrawMoney(double money) throws Exception {
-        if (!identification && money > untrustedUserLimit) {
+        if (!getIdentification() && money > getUntrustedUserLimit()) {
             throw new DebitCardException("Limit exceeded for an unidentified user");
         }
         if (money <= 0) {
             throw new DebitCardException("You can't take a negative value");
         }
-        if (balance - money < 0) {
+        if (getBalance() - money < 0) {
             throw new DebitCardException("Debit card cannot go into negative");
         }
-        balance -= money;
-        transactions.add(new Transaction(cardId, dateNow, money));
+        checkVelocity(money);
+        changeBalance(-money);
+        transactions.add(new Transaction(cardIds, IdDictionary.NONE, cardIndex, now(), money));
     }
 
     /**
@@ -128,16 +223,16 @@ public class DebitCard implements ICard {
      *                            - Сумма вывода превышает текущий баланс на дебетовой карте
      */
     public void withdrawMoneyWithOutHistory(double money) throws Exception {
-        if (!identification & money > untrustedUserLimit & untrustedUserLimit != 0) {
+        if (!getIdentification() & money > getUntrustedUserLimit() & getUntrustedUserLimit() != 0) {
             throw new DebitCardException("Limit exceeded for an unidentified user");
         }
         if (money <= 0) {
             throw new DebitCardException("You can't take a negative value");
         }
-        if (balance - money < 0) {
+        if (getBalance() - money < 0) {
             throw new DebitCardException("Debit card cannot go into negative");
         }
-        balance -= money;
+        changeBalance(-money);
     }
 
     /**
@@ -150,8 +245,8 @@ public class DebitCard implements ICard {
         if (money <= 0) {
             throw new DebitCardException("Can't top up card negative or zero value");
         }
-        balance += money;
-        transactions.add(new Transaction(dateNow, cardId, money));
+        changeBalance(money);
+        transactions.add(new Transaction(cardIds, cardIndex, IdDictionary.NONE, now(), money));
     }
 
     /**
@@ -164,7 +259,15 @@ public class DebitCard implements ICard {
         if (money <= 0) {
             throw new DebitCardException("Can't top up card negative or zero value");
         }
-        balance += money;
+        BalanceCells current = cells;
+        if (current == null) {
+            changeBalance(money);
+            return;
+        }
+        current.add(money);
+        if (balanceObserver != null) {
+            balanceObserver.balanceChanged(this, 0, money);
+        }
     }
 
     /**
@@ -176,24 +279,79 @@ public class DebitCard implements ICard {
      * для неидентифицированного пользователя
      */
     public void transferMoney(double money, ICard card) throws Exception {
-        if (!identification && money > untrustedUserLimit && untrustedUserLimit != 0) {
+        if (!getIdentification() && money > getUntrustedUserLimit() && getUntrustedUserLimit() != 0) {
             throw new DebitCardException("Limit exceeded for an unidentified user");
         }
         if (money <= 0) {
             throw new DebitCardException("You can't take a negative value");
         }
-        if (balance - money < 0) {
+        if (getBalance() - money < 0) {
             throw new DebitCardException("Debit card cannot go into negative");
         }
-        balance -= money;
+        checkVelocity(money);
+        changeBalance(-money);
         card.topUpCardWithOutHistory(money);
-        transactions.add(new Transaction(cardId, card.getId(), dateNow, money));
+        int receiver = cardIds.resolve(card.getIndex(), card.getId());
+        transactions.add(new Transaction(cardIds, cardIndex, receiver, now(), money));
     }
 
     public UUID getId() {
         return cardId;
     }
 
+    public int getIndex() {
+        return cardIndex;
+    }
+
+    /**
+     * Устанавливает наблюдателя, которому сообщается о каждом изменении баланса карты.
+     *
+     * @param balanceObserver наблюдатель за балансом
+     */
+    public void setBalanceObserver(IBalanceObserver balanceObserver) {
+        this.balanceObserver = balanceObserver;
+    }
+
+    /**
+     * Устанавливает скользящие лимиты операций, действующие для неидентифицированного пользователя.
+     *
+     * @param velocityLimiter ограничитель операций или null, если лимиты не действуют
+     */
+    public void setVelocityLimiter(VelocityLimiter velocityLimiter) {
+        this.velocityLimiter = velocityLimiter;
+    }
+
+    /**
+     * Устанавливает часы, по которым датируются операции по карте.
+     *
+     * @param clock часы или null, чтобы датировать операции временем последнего тика
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+    }
+
+    private long now() {
+        IClock current = clock;
+        return current != null ? current.millis() : state.getLong(row, CardStateTable.DATE_NOW);
+    }
+
+    private void checkVelocity(double money) throws Exception {
+        if (!getIdentification() && velocityLimiter != null && !velocityLimiter.tryAcquire(
+                cardIndex, now(), money)) {
+            throw new DebitCardException("Velocity limit exceeded for an unidentified user");
+        }
+    }
+
+    private void changeBalance(double delta) {
+        BalanceCells current = cells;
+        double oldBalance = state.getDouble(row, CardStateTable.BALANCE) + (current == null ? 0 : current.drain());
+        double newBalance = oldBalance + delta;
+        state.putDouble(row, CardStateTable.BALANCE, newBalance);
+        if (balanceObserver != null) {
+            balanceObserver.balanceChanged(this, oldBalance, newBalance);
+        }
+    }
+
     /**
      * Добавляет заданный процент от текущего баланса в виде процентной суммы.
      *
@@ -204,7 +362,7 @@ public class DebitCard implements ICard {
         if (percent < 0) {
             throw new DebitCardException("Percentage cannot be negative");
         }
-        percentSum += balance * percent / 100;
+        state.putDouble(row, CardStateTable.PERCENT_SUM, AccrualRules.accrue(getPercentSum(), getBalance(), percent));
     }
 
     /**
@@ -212,8 +370,9 @@ public class DebitCard implements ICard {
      * Этот метод должен быть вызван в конце указанного периода расчета процентов.
      */
     public void interestCalculation() {
-        balance += percentSum;
-        percentSum = 0;
+        state.putDouble(row, CardStateTable.ACCRUED, getAccruedInterest() + getPercentSum());
+        changeBalance(getPercentSum());
+        state.putDouble(row, CardStateTable.PERCENT_SUM, 0);
     }
 
     /**
@@ -3,8 +3,6 @@ package org.example.entities;
 import org.example.exception.DepositCardException;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
@@ -14,16 +12,15 @@ import java.util.UUID;
  * пользователя.
  */
 public class DepositCard implements ICard {
-    private final List<Transaction> transactions;
-    private final double startBalance;
-    private double balance;
-    private final LocalDateTime dateCreate;
-    private final LocalDateTime dateEnd;
-    private boolean identification;
-    private LocalDateTime dateNow;
-    private double percentSum;
+    private final TransactionHistory transactions;
     private final UUID cardId;
-    private double untrustedUserLimit;
+    private final IdDictionary<ICard> cardIds;
+    private final int cardIndex;
+    private final CardStateTable state;
+    private final int row;
+    private IBalanceObserver balanceObserver;
+    private VelocityLimiter velocityLimiter;
+    private IClock clock;
 
     /**
      * Создает новый объект DepositCard с заданным балансом, датой окончания, датой создания и идентификационным флагом.
@@ -35,21 +32,58 @@ public class DepositCard implements ICard {
      * @throws DepositCardException Если баланс отрицательный или дата окончания предшествует дате создания.
      */
     public DepositCard(double balance, LocalDateTime dateEnd, LocalDateTime dateCreate, boolean identification) throws Exception {
+        this(new CardStateTable(false, 1), new IdDictionary<>(), balance, dateEnd, dateCreate, identification);
+    }
+
+    /**
+     * Создает новый объект DepositCard, состояние которого хранится в строке указанной таблицы.
+     *
+     * @param state          Таблица состояния карт.
+     * @param cardIds        Словарь карт центрального банка, в котором регистрируется карта.
+     * @param balance        Начальный баланс депозитной карты.
+     * @param dateEnd        Дата истечения срока действия депозитной карты.
+     * @param dateCreate     Дата создания депозитной карты.
+     * @param identification Флажок, указывающий, была ли идентифицирована депозитная карта.
+     * @throws DepositCardException Если баланс отрицательный или дата окончания предшествует дате создания.
+     */
+    public DepositCard(CardStateTable state, IdDictionary<ICard> cardIds, double balance, LocalDateTime dateEnd,
+                       LocalDateTime dateCreate, boolean identification) throws Exception {
         if (balance <= 0) {
             throw new DepositCardException("You cannot create an account with a negative balance");
         }
         if (dateEnd.isBefore(dateCreate)) {
             throw new DepositCardException("Account end time must be later than creation time");
         }
-        this.balance = balance;
-        this.startBalance = balance;
-        this.percentSum = 0;
+        this.state = state;
+        this.row = state.allocateRow();
         this.cardId = UUID.randomUUID();
-        this.dateEnd = dateEnd;
-        this.dateCreate = dateCreate;
-        this.dateNow = dateCreate;
-        this.transactions = new ArrayList<>();
-        this.identification = identification;
+        this.cardIds = cardIds;
+        this.transactions = new TransactionHistory(cardIds);
+        state.putDouble(row, CardStateTable.BALANCE, balance);
+        state.putDouble(row, CardStateTable.OPENING_BALANCE, balance);
+        state.putDouble(row, CardStateTable.START_BALANCE, balance);
+        state.putDate(row, CardStateTable.DATE_END, dateEnd);
+        state.putDate(row, CardStateTable.DATE_CREATE, dateCreate);
+        state.putDate(row, CardStateTable.DATE_NOW, dateCreate);
+        state.setFlag(row, CardStateTable.IDENTIFICATION_FLAG, identification);
+        this.cardIndex = cardIds.register(cardId, this);
+    }
+
+    /**
+     * Создает копию карты для ответвленного банка: состояние читается из той же строки ответвленной таблицы,
+     * история транзакций - ответвление истории исходной карты на момент закрепления.
+     *
+     * @param source  исходная карта
+     * @param state   ответвленная таблица состояния карт
+     * @param history ответвленная история транзакций
+     */
+    DepositCard(DepositCard source, CardStateTable state, TransactionHistory history) {
+        this.state = state;
+        this.row = source.row;
+        this.cardId = source.cardId;
+        this.cardIds = source.cardIds;
+        this.cardIndex = source.cardIndex;
+        this.transactions = history;
     }
 
     /**
@@ -67,19 +101,51 @@ public class DepositCard implements ICard {
     }
 
     public double getStartBalance() {
-        return startBalance;
+        return state.getDouble(row, CardStateTable.START_BALANCE);
     }
 
     public double getBalance() {
-        return balance;
+        return state.getDouble(row, CardStateTable.BALANCE);
+    }
+
+    public double getOpeningBalance() {
+        return state.getDouble(row, CardStateTable.OPENING_BALANCE);
+    }
+
+    public double getAccruedInterest() {
+        return state.getDouble(row, CardStateTable.ACCRUED);
+    }
+
+    public double getPercentSum() {
+        return state.getDouble(row, CardStateTable.PERCENT_SUM);
+    }
+
+    public double getUntrustedUserLimit() {
+        return state.getDouble(row, CardStateTable.UNTRUSTED_USER_LIMIT);
     }
 
     public LocalDateTime getDateCreate() {
-        return dateCreate;
+        return state.getDate(row, CardStateTable.DATE_CREATE);
+    }
+
+    public LocalDateTime getDateNow() {
+        return state.getDate(row, CardStateTable.DATE_NOW);
+    }
+
+    public LocalDateTime getDateEnd() {
+        return state.getDate(row, CardStateTable.DATE_END);
+    }
+
+    public boolean isMatured() {
+        return state.getFlag(row, CardStateTable.MATURED_FLAG);
     }
 
     public boolean getIdentification() {
-        return identification;
+        return state.getFlag(row, CardStateTable.IDENTIFICATION_FLAG);
+    }
+
+    public TransactionHistory getTransactionHistory() {
+        return transactions;
     }
 
     public UUID getCardId() {
@@ -90,7 +156,7 @@ public class DepositCard implements ICard {
         if (untrustedUserLimit < 0) {
             throw new DepositCardException("You cannot withdraw above the limit for an unidentified user");
         }
-        this.untrustedUserLimit = untrustedUserLimit;
+        state.putDouble(row, CardStateTable.UNTRUSTED_USER_LIMIT, untrustedUserLimit);
     }
 
     /**
@@ -108,7 +174,7 @@ public class DepositCard implements ICard {
     }
 
     public void setIdentificationFlag() {
-        identification = true;
+        state.setFlag(row, CardStateTable.IDENTIFICATION_FLAG, true);
     }
 
     /**
@@ -117,7 +183,7 @@ public class DepositCard implements ICard {
      * @param dateStamp дата, чтобы установить текущую дату
      */
     public void addDay(LocalDateTime dateStamp) {
-        dateNow = dateStamp;
+        state.putDate(row, CardStateTable.DATE_NOW, dateStamp);
     }
 
     /**
@@ -133,11 +199,12 @@ public class DepositCard implements ICard {
      */
     public void withdrawMoney(double money) throws Exception {
         forWithdrawMoney(money);
-        if (dateNow.isBefore(dateEnd)) {
+        if (isLocked()) {
             throw new DepositCardException("Error");
         }
-        balance -= money;
-        transactions.add(new Transaction(cardId, dateNow, money));
+        checkVelocity(money);
+        changeBalance(-money);
+        transactions.add(new Transaction(cardIds, IdDictionary.NONE, cardIndex, now(), money));
     }
 
     /**
@@ -152,10 +219,10 @@ public class DepositCard implements ICard {
      */
     public void withdrawMoneyWithOutHistory(double money) throws Exception {
         forWithdrawMoney(money);
-        if (LocalDateTime.now().isBefore(dateEnd)) {
+        if (isLocked()) {
             throw new DepositCardException("Date is uncorrected");
         }
-        balance -= money;
+        changeBalance(-money);
     }
 
     /**
@@ -169,13 +236,13 @@ public class DepositCard implements ICard {
      * @throws Exception            если при попытке вывести деньги возникает ошибка
      */
     private void forWithdrawMoney(double money) throws Exception {
-        if (!identification && money > untrustedUserLimit) {
+        if (!getIdentification() && money > getUntrustedUserLimit()) {
             throw new DepositCardException("You cannot withdraw above the limit for an unidentified user");
         }
         if (money <= 0) {
             throw new DepositCardException("You can't take a negative value");
         }
-        if (balance - money < 0) {
+        if (getBalance() - money < 0) {
             throw new DepositCardException("Debit card cannot go into negative");
         }
     }
@@ -191,14 +258,70 @@ public class DepositCard implements ICard {
         if (money <= 0) {
             throw new DepositCardException("Can't top up card negative or zero value");
         }
-        balance += money;
-        transactions.add(new Transaction(LocalDateTime.now(), cardId, money));
+        changeBalance(money);
+        transactions.add(new Transaction(cardIds, cardIndex, IdDictionary.NONE, now(), money));
     }
 
     public UUID getId() {
         return cardId;
     }
 
+    public int getIndex() {
+        return cardIndex;
+    }
+
+    /**
+     * Устанавливает наблюдателя, которому сообщается о каждом изменении баланса карты.
+     *
+     * @param balanceObserver наблюдатель за балансом
+     */
+    public void setBalanceObserver(IBalanceObserver balanceObserver) {
+        this.balanceObserver = balanceObserver;
+    }
+
+    /**
+     * Устанавливает скользящие лимиты операций, действующие для неидентифицированного пользователя.
+     *
+     * @param velocityLimiter ограничитель операций или null, если лимиты не действуют
+     */
+    public void setVelocityLimiter(VelocityLimiter velocityLimiter) {
+        this.velocityLimiter = velocityLimiter;
+    }
+
+    /**
+     * Устанавливает часы, по которым датируются операции по карте.
+     *
+     * @param clock часы или null, чтобы датировать операции временем последнего тика
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+    }
+
+    private long now() {
+        IClock current = clock;
+        return current != null ? current.millis() : state.getLong(row, CardStateTable.DATE_NOW);
+    }
+
+    private boolean isLocked() {
+        return !isMatured() && now() < state.getLong(row, CardStateTable.DATE_END);
+    }
+
+    private void checkVelocity(double money) throws Exception {
+        if (!getIdentification() && velocityLimiter != null && !velocityLimiter.tryAcquire(
+                cardIndex, now(), money)) {
+            throw new DepositCardException("Velocity limit exceeded for an unidentified user");
+        }
+    }
+
+    private void changeBalance(double delta) {
+        double oldBalance = getBalance();
+        double newBalance = oldBalance + delta;
+        state.putDouble(row, CardStateTable.BALANCE, newBalance);
+        if (balanceObserver != null) {
+            balanceObserver.balanceChanged(this, oldBalance, newBalance);
+        }
+    }
+
     /**
      * Начисляет проценты на баланс депозитной карты в соответствии с указанным процентом.
      *
@@ -210,7 +333,7 @@ public class DepositCard implements ICard {
         if (percentSum < 0) {
             throw new DepositCardException("Percentage cannot be negative");
         }
-        this.percentSum += balance * percentSum / 100;
+        state.putDouble(row, CardStateTable.PERCENT_SUM, AccrualRules.accrue(getPercentSum(), getBalance(), percentSum));
     }
 
     /**
@@ -218,8 +341,24 @@ public class DepositCard implements ICard {
      * После расчета процентов установлю значение percentSum равным нулю.
      */
     public void interestCalculation() {
-        balance += percentSum;
-        percentSum = 0;
+        state.putDouble(row, CardStateTable.ACCRUED, getAccruedInterest() + getPercentSum());
+        changeBalance(getPercentSum());
+        state.putDouble(row, CardStateTable.PERCENT_SUM, 0);
+    }
+
+    /**
+     * Завершает срок депозита: начисляет накопленные до этого момента проценты и снимает ограничение на снятие
+     * и перевод средств. Вызывается банком один раз, в день окончания срока депозита.
+     *
+     * @param dateStamp дата обработки окончания срока
+     */
+    public void mature(LocalDateTime dateStamp) {
+        if (isMatured()) {
+            return;
+        }
+        state.putDate(row, CardStateTable.DATE_NOW, dateStamp);
+        interestCalculation();
+        state.setFlag(row, CardStateTable.MATURED_FLAG, true);
     }
 
     /**
@@ -233,7 +372,7 @@ public class DepositCard implements ICard {
         if (money <= 0) {
             throw new DepositCardException("Can't top up card negative or zero value");
         }
-        balance += money;
+        changeBalance(money);
     }
 
     /**
@@ -247,20 +386,22 @@ public class DepositCard implements ICard {
      * @throws Exception            если при попытке перевести деньги на указанный объект iCard возникает ошибка
      */
     public void transferMoney(double money, ICard card) throws Exception {
-        if (!identification && money > untrustedUserLimit) {
+        if (!getIdentification() && money > getUntrustedUserLimit()) {
             throw new DepositCardException("You cannot transfer money to an unidentified user above the limit");
         }
         if (money <= 0) {
             throw new DepositCardException("You can't take a negative value");
         }
-        if (balance - money < 0) {
+        if (getBalance() - money < 0) {
             throw new DepositCardException("Debit card cannot go into negative");
         }
-        if (LocalDateTime.now().isBefore(dateEnd)) {
+        if (isLocked()) {
             throw new DepositCardException("The card hasn't expired yet");
         }
-        balance -= money;
+        checkVelocity(money);
+        changeBalance(-money);
         card.topUpCardWithOutHistory(money);
-        transactions.add(new Transaction(cardId, card.getId(), LocalDateTime.now(), money));
+        int receiver = cardIds.resolve(card.getIndex(), card.getId());
+        transactions.add(new Transaction(cardIds, cardIndex, receiver, now(), money));
     }
 }
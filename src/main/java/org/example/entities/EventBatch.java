@@ -0,0 +1,156 @@
+package org.example.entities;
+
+import org.example.exception.EventCodecException;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Представление записей пакета событий поверх буфера без копирования и без создания объектов на запись.
+ * Поля читаются по номеру записи прямо из буфера, срез пакета разделяет с ним тот же буфер.
+ */
+public final class EventBatch {
+    private final ByteBuffer records;
+    private final short version;
+    private final int recordSize;
+    private final int count;
+
+    EventBatch(ByteBuffer records, short version, int recordSize, int count) {
+        this.records = records;
+        this.version = version;
+        this.recordSize = recordSize;
+        this.count = count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Возвращает версию схемы, которой записан пакет. Она может быть новее EventCodec.VERSION:
+     * поля, дописанные новой версией, при чтении пропускаются, но сохраняются при перезаписи пакета.
+     *
+     * @return версия схемы пакета
+     */
+    public short getVersion() {
+        return version;
+    }
+
+    public byte getType(int number) {
+        return records.get(offset(number) + EventCodec.TYPE);
+    }
+
+    public byte getCardType(int number) {
+        return records.get(offset(number) + EventCodec.CARD_TYPE);
+    }
+
+    public long getTimeMillis(int number) {
+        return records.getLong(offset(number) + EventCodec.TIME);
+    }
+
+    public double getMoney(int number) {
+        return records.getDouble(offset(number) + EventCodec.MONEY);
+    }
+
+    public long getFromMostBits(int number) {
+        return records.getLong(offset(number) + EventCodec.FIRST);
+    }
+
+    public long getFromLeastBits(int number) {
+        return records.getLong(offset(number) + EventCodec.FIRST + 8);
+    }
+
+    public long getToMostBits(int number) {
+        return records.getLong(offset(number) + EventCodec.SECOND);
+    }
+
+    public long getToLeastBits(int number) {
+        return records.getLong(offset(number) + EventCodec.SECOND + 8);
+    }
+
+    /**
+     * Возвращает UUID карты-отправителя транзакции или карты события.
+     *
+     * @param number номер записи
+     * @return UUID или null, если карта не указана
+     */
+    public UUID getFrom(int number) {
+        return id(getFromMostBits(number), getFromLeastBits(number));
+    }
+
+    /**
+     * Возвращает UUID карты-получателя транзакции или владельца карты события.
+     *
+     * @param number номер записи
+     * @return UUID или null, если получатель не указан
+     */
+    public UUID getTo(int number) {
+        return id(getToMostBits(number), getToLeastBits(number));
+    }
+
+    /**
+     * Восстанавливает транзакцию из записи.
+     *
+     * @param number  номер записи
+     * @param cardIds словарь карт центрального банка, в котором транзакция получает внутренние идентификаторы
+     * @return транзакция
+     * @throws EventCodecException если запись не является транзакцией
+     */
+    public Transaction toTransaction(int number, IdDictionary<ICard> cardIds) throws Exception {
+        if (getType(number) != EventCodec.TRANSACTION) {
+            throw new EventCodecException("Event is not a transaction");
+        }
+        UUID from = getFrom(number);
+        UUID to = getTo(number);
+        return new Transaction(cardIds, from == null ? IdDictionary.NONE : cardIds.intern(from),
+                to == null ? IdDictionary.NONE : cardIds.intern(to), getTimeMillis(number), getMoney(number));
+    }
+
+    /**
+     * Возвращает срез пакета поверх того же буфера.
+     *
+     * @param from  номер первой записи среза
+     * @param count количество записей среза
+     * @return срез пакета
+     * @throws EventCodecException если срез выходит за границы пакета
+     */
+    public EventBatch slice(int from, int count) throws Exception {
+        if (from < 0 || count < 0 || from + count > this.count) {
+            throw new EventCodecException("Slice is out of batch bounds");
+        }
+        ByteBuffer view = records.duplicate();
+        view.position(from * recordSize).limit((from + count) * recordSize);
+        return new EventBatch(view.slice().order(records.order()), version, recordSize, count);
+    }
+
+    /**
+     * Записывает пакет в буфер одним копированием записей, сохраняя версию схемы и размер записи исходного пакета.
+     *
+     * @param target буфер, в который пишется пакет
+     * @return количество байт пакета
+     * @throws EventCodecException если в буфере нет места для пакета
+     */
+    public int writeTo(ByteBuffer target) throws Exception {
+        int length = EventCodec.HEADER_SIZE + count * recordSize;
+        if (target.remaining() < length) {
+            throw new EventCodecException("Buffer is too small for the batch");
+        }
+        ByteBuffer buffer = target.duplicate().order(records.order());
+        EventCodec.writeHeader(buffer, target.position(), version, recordSize, count);
+        buffer.position(target.position() + EventCodec.HEADER_SIZE);
+        buffer.put(records.duplicate());
+        target.position(buffer.position());
+        return length;
+    }
+
+    private int offset(int number) {
+        if (number < 0 || number >= count) {
+            throw new IndexOutOfBoundsException("Event " + number + " is out of batch bounds");
+        }
+        return number * recordSize;
+    }
+
+    private static UUID id(long most, long least) {
+        return most == 0 && least == 0 ? null : new UUID(most, least);
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.entities;
+
+import org.example.exception.EventCodecException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Двоичный формат пакета транзакций и событий жизненного цикла карт для передачи между этапами
+ * (журнал, архив, выгрузка, репликация).
+ * Пакет - заголовок (магическое число, версия схемы, размер записи, количество записей) и записи
+ * фиксированной длины в порядке байтов little-endian:
+ * <pre>
+ *  0  тип события (1 байт)
+ *  1  тип карты (1 байт), 0 для транзакций
+ *  2  резерв (6 байт)
+ *  8  время в миллисекундах от эпохи в UTC (8 байт)
+ * 16  сумма (8 байт double)
+ * 24  UUID карты-отправителя или карты события (16 байт), нулевой UUID означает отсутствие
+ * 40  UUID карты-получателя или владельца карты (16 байт), нулевой UUID означает отсутствие
+ * </pre>
+ * Карты передаются по UUID, а не по внутренним идентификаторам, потому что внутренние идентификаторы
+ * действуют только в пределах процесса. Размер записи хранится в заголовке, поэтому следующие версии схемы
+ * могут дописывать поля в конец записи, а старые читатели - пропускать их: пакет более новой версии читается,
+ * если его записи не короче записей этой версии.
+ */
+public final class EventCodec {
+    public static final int MAGIC = 0x42455631;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 56;
+
+    public static final byte TRANSACTION = 1;
+    public static final byte CARD_OPENED = 2;
+    public static final byte CARD_IDENTIFIED = 3;
+    public static final byte DEPOSIT_MATURED = 4;
+
+    public static final byte CREDIT_CARD = 1;
+    public static final byte DEBIT_CARD = 2;
+    public static final byte DEPOSIT_CARD = 3;
+
+    static final int TYPE = 0;
+    static final int CARD_TYPE = 1;
+    static final int TIME = 8;
+    static final int MONEY = 16;
+    static final int FIRST = 24;
+    static final int SECOND = 40;
+
+    private EventCodec() {
+    }
+
+    /**
+     * Начинает запись пакета с текущей позиции буфера.
+     *
+     * @param target буфер, в который пишется пакет
+     * @return писатель пакета
+     * @throws EventCodecException если в буфере нет места даже для заголовка
+     */
+    public static EventWriter writer(ByteBuffer target) throws Exception {
+        if (target.remaining() < HEADER_SIZE) {
+            throw new EventCodecException("Buffer is too small for a batch header");
+        }
+        return new EventWriter(target);
+    }
+
+    /**
+     * Читает пакет с текущей позиции буфера без копирования записей и сдвигает позицию за конец пакета.
+     *
+     * @param source буфер с пакетом
+     * @return представление записей пакета поверх того же буфера
+     * @throws EventCodecException если заголовок поврежден, записи короче записей этой версии схемы
+     *                             или пакет обрезан
+     */
+    public static EventBatch read(ByteBuffer source) throws Exception {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new EventCodecException("Batch header is truncated");
+        }
+        int start = buffer.position();
+        if (buffer.getInt(start) != MAGIC) {
+            throw new EventCodecException("Not an event batch");
+        }
+        short version = buffer.getShort(start + 4);
+        int recordSize = buffer.getShort(start + 6) & 0xFFFF;
+        int count = buffer.getInt(start + 8);
+        if (version < 1 || recordSize < RECORD_SIZE) {
+            throw new EventCodecException("Unsupported event batch version");
+        }
+        if (count < 0 || (long) count * recordSize > buffer.remaining() - HEADER_SIZE) {
+            throw new EventCodecException("Event batch is truncated");
+        }
+        int end = start + HEADER_SIZE + count * recordSize;
+        buffer.position(start + HEADER_SIZE).limit(end);
+        source.position(end);
+        return new EventBatch(buffer.slice().order(ByteOrder.LITTLE_ENDIAN), version, recordSize, count);
+    }
+
+    static void writeHeader(ByteBuffer buffer, int offset, short version, int recordSize, int count) {
+        buffer.putInt(offset, MAGIC);
+        buffer.putShort(offset + 4, version);
+        buffer.putShort(offset + 6, (short) recordSize);
+        buffer.putInt(offset + 8, count);
+        buffer.putInt(offset + 12, 0);
+    }
+
+    static byte cardType(ICard card) {
+        if (card instanceof CreditCard) {
+            return CREDIT_CARD;
+        }
+        return card instanceof DebitCard ? DEBIT_CARD : DEPOSIT_CARD;
+    }
+}
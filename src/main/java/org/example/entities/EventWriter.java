@@ -0,0 +1,116 @@
+package org.example.entities;
+
+import org.example.exception.EventCodecException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+/**
+ * Писатель одного пакета событий в формате {@link EventCodec}.
+ * Записи пишутся прямо в буфер, заголовок с количеством записей дописывается в {@link #finish()}.
+ */
+public final class EventWriter {
+    private final ByteBuffer target;
+    private final ByteBuffer buffer;
+    private final int start;
+    private int count;
+
+    EventWriter(ByteBuffer target) {
+        this.target = target;
+        this.buffer = target.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.start = target.position();
+        buffer.position(start + EventCodec.HEADER_SIZE);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Записывает транзакцию.
+     *
+     * @param transaction транзакция
+     * @return этот писатель
+     * @throws EventCodecException если в буфере нет места для записи
+     */
+    public EventWriter writeTransaction(Transaction transaction) throws Exception {
+        return writeTransaction(transaction.getFrom(), transaction.getTo(), transaction.getTimeMillis(),
+                transaction.getMoney());
+    }
+
+    /**
+     * Записывает транзакцию по UUID карт без создания объекта транзакции.
+     *
+     * @param from       UUID карты-отправителя или null
+     * @param to         UUID карты-получателя или null
+     * @param timeMillis время транзакции в миллисекундах от эпохи в UTC
+     * @param money      сумма транзакции
+     * @return этот писатель
+     * @throws EventCodecException если в буфере нет места для записи
+     */
+    public EventWriter writeTransaction(UUID from, UUID to, long timeMillis, double money) throws Exception {
+        int offset = next();
+        buffer.put(offset + EventCodec.TYPE, EventCodec.TRANSACTION);
+        buffer.putLong(offset + EventCodec.TIME, timeMillis);
+        buffer.putDouble(offset + EventCodec.MONEY, money);
+        putId(offset + EventCodec.FIRST, from);
+        putId(offset + EventCodec.SECOND, to);
+        return this;
+    }
+
+    /**
+     * Записывает событие жизненного цикла карты: суммой события служит текущий баланс карты.
+     *
+     * @param type       тип события, например EventCodec.CARD_OPENED
+     * @param card       карта
+     * @param owner      владелец карты или null
+     * @param timeMillis время события в миллисекундах от эпохи в UTC
+     * @return этот писатель
+     * @throws EventCodecException если тип события не относится к картам или в буфере нет места для записи
+     */
+    public EventWriter writeCardEvent(byte type, ICard card, User owner, long timeMillis) throws Exception {
+        if (type != EventCodec.CARD_OPENED && type != EventCodec.CARD_IDENTIFIED
+                && type != EventCodec.DEPOSIT_MATURED) {
+            throw new EventCodecException("Unknown card event type");
+        }
+        int offset = next();
+        buffer.put(offset + EventCodec.TYPE, type);
+        buffer.put(offset + EventCodec.CARD_TYPE, EventCodec.cardType(card));
+        buffer.putLong(offset + EventCodec.TIME, timeMillis);
+        buffer.putDouble(offset + EventCodec.MONEY, card.getBalance());
+        putId(offset + EventCodec.FIRST, card.getId());
+        putId(offset + EventCodec.SECOND, owner == null ? null : owner.getUserId());
+        return this;
+    }
+
+    /**
+     * Дописывает заголовок пакета и сдвигает позицию исходного буфера за конец пакета.
+     *
+     * @return количество байт пакета
+     */
+    public int finish() {
+        EventCodec.writeHeader(buffer, start, EventCodec.VERSION, EventCodec.RECORD_SIZE, count);
+        target.position(buffer.position());
+        return buffer.position() - start;
+    }
+
+    private int next() throws Exception {
+        int offset = buffer.position();
+        if (buffer.remaining() < EventCodec.RECORD_SIZE) {
+            throw new EventCodecException("Buffer is too small for another event");
+        }
+        for (int i = 2; i < EventCodec.TIME; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+        buffer.put(offset + EventCodec.CARD_TYPE, (byte) 0);
+        buffer.position(offset + EventCodec.RECORD_SIZE);
+        count++;
+        return offset;
+    }
+
+    private void putId(int offset, UUID id) {
+        buffer.putLong(offset, id == null ? 0 : id.getMostSignificantBits());
+        buffer.putLong(offset + 8, id == null ? 0 : id.getLeastSignificantBits());
+    }
+}
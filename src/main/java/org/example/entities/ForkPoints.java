@@ -0,0 +1,131 @@
+package org.example.entities;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Точки ответвления банка. Ответвление закрепляет состояние банка за номером поколения, а карты и их истории
+ * транзакций читает лениво, когда исходный банк уже продолжил работу. Поэтому исходный банк перед первым
+ * изменением истории транзакций или множества карт и пользователей после закрепления сохраняет прообраз
+ * в каждую точку, которая его ещё не получила. Точки хранятся по слабым ссылкам и перестают получать
+ * прообразы, когда ответвление больше не используется.
+ */
+final class ForkPoints {
+    private final List<WeakReference<Point>> points = new ArrayList<>();
+    private volatile long generation;
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * Закрепляет новое поколение.
+     *
+     * @return точка ответвления
+     */
+    synchronized Point pin() {
+        Point point = new Point(++generation);
+        points.removeIf(reference -> reference.get() == null);
+        points.add(new WeakReference<>(point));
+        return point;
+    }
+
+    /**
+     * Возвращает живые точки, закрепленные после указанного поколения.
+     *
+     * @param after поколение, для которого прообразы уже сохранены
+     * @return точки ответвления
+     */
+    synchronized List<Point> after(long after) {
+        List<Point> result = new ArrayList<>();
+        for (Iterator<WeakReference<Point>> iterator = points.iterator(); iterator.hasNext(); ) {
+            Point point = iterator.next().get();
+            if (point == null) {
+                iterator.remove();
+            } else if (point.generation > after) {
+                result.add(point);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сохраняет прообраз истории транзакций карты во все точки, закрепленные после последнего сохранения.
+     * Вызывается историей под её монитором перед изменением.
+     *
+     * @param cardIndex внутренний идентификатор карты
+     * @param history   история транзакций карты
+     * @param preserved поколение, для которого прообраз уже сохранен
+     * @return поколение, до которого прообразы теперь сохранены
+     */
+    long preserve(int cardIndex, TransactionHistory history, long preserved) {
+        long current = generation;
+        for (Point point : after(preserved)) {
+            point.histories.putIfAbsent(cardIndex, history.fork());
+        }
+        return current;
+    }
+
+    /**
+     * Закрепленное состояние банка для одного ответвления.
+     */
+    static final class Point {
+        private final long generation;
+        private final Map<Integer, TransactionHistory> histories = new ConcurrentHashMap<>();
+        private BitSet cardIndexes;
+        private BitSet userIndexes;
+
+        private Point(long generation) {
+            this.generation = generation;
+        }
+
+        /**
+         * Возвращает историю транзакций карты на момент закрепления. Если карта с тех пор не менялась,
+         * история ответвляется от текущей.
+         *
+         * @param cardIndex внутренний идентификатор карты
+         * @param current   текущая история карты в исходном банке
+         * @return история для копии карты
+         */
+        TransactionHistory history(int cardIndex, TransactionHistory current) {
+            synchronized (current) {
+                TransactionHistory history = histories.get(cardIndex);
+                if (history == null) {
+                    history = current.fork();
+                    histories.put(cardIndex, history);
+                }
+                return history;
+            }
+        }
+
+        /**
+         * Сохраняет множества карт и пользователей исходного банка, если они ещё не сохранены.
+         * Вызывается под блокировкой карт исходного банка.
+         */
+        void preserveIndexes(BitSet cards, BitSet users) {
+            if (cardIndexes == null) {
+                cardIndexes = (BitSet) cards.clone();
+                userIndexes = (BitSet) users.clone();
+            }
+        }
+
+        /**
+         * Возвращает множество карт на момент закрепления. Вызывается под блокировкой карт исходного банка.
+         *
+         * @param current текущее множество карт исходного банка
+         * @return множество карт
+         */
+        BitSet cardIndexes(BitSet current) {
+            return cardIndexes != null ? cardIndexes : current;
+        }
+
+        BitSet userIndexes(BitSet current) {
+            return userIndexes != null ? userIndexes : current;
+        }
+    }
+}
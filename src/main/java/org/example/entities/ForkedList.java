@@ -0,0 +1,60 @@
+package org.example.entities;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * Список ответвленного банка: первые элементы - элементы списка исходного банка на момент закрепления,
+ * которые превращаются в элементы ответвления только при чтении, остальные - добавленные в ответвлении.
+ * Исходный список читается под блокировкой карт исходного банка, потому что исходный банк продолжает
+ * дописывать в него новые элементы.
+ *
+ * @param <T> тип элементов
+ */
+final class ForkedList<T> extends AbstractList<T> implements RandomAccess {
+    private final List<? extends T> source;
+    private final int pinned;
+    private final Object sourceLock;
+    private final Function<T, T> copy;
+    private final List<T> added = new ArrayList<>();
+
+    /**
+     * Создает список ответвления. Вызывается под блокировкой карт исходного банка.
+     *
+     * @param source     список исходного банка
+     * @param sourceLock блокировка карт исходного банка
+     * @param copy       превращение элемента исходного банка в элемент ответвления
+     */
+    ForkedList(List<? extends T> source, Object sourceLock, Function<T, T> copy) {
+        this.source = source;
+        this.pinned = source.size();
+        this.sourceLock = sourceLock;
+        this.copy = copy;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index >= pinned) {
+            return added.get(index - pinned);
+        }
+        T element;
+        synchronized (sourceLock) {
+            element = source.get(index);
+        }
+        return copy.apply(element);
+    }
+
+    @Override
+    public int size() {
+        return pinned + added.size();
+    }
+
+    @Override
+    public boolean add(T element) {
+        modCount++;
+        return added.add(element);
+    }
+}
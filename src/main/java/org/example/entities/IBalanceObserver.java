@@ -0,0 +1,11 @@
+package org.example.entities;
+
+/**
+ * Наблюдатель за изменением баланса карты. Вызывается при каждом изменении баланса,
+ * чтобы агрегаты (по пользователю, по банку) поддерживались без полного перебора карт.
+ * Для зачисления через ячейки баланса горячей карты передаются 0 и сумма зачисления:
+ * разница значений верна, но сами значения не равны балансу карты.
+ */
+public interface IBalanceObserver {
+    void balanceChanged(ICard card, double oldBalance, double newBalance);
+}
@@ -0,0 +1,15 @@
+package org.example.entities;
+
+/**
+ * Слушатель изменений состава банка: новых пользователей, открытых карт и изменений персональных данных
+ * пользователей банка.
+ * Позволяет поддерживать внешние индексы (например, справочник клиентов центрального банка)
+ * без перебора списков пользователей и карт.
+ */
+public interface IBankListener {
+    void userAdded(Bank bank, User user);
+
+    void cardOpened(Bank bank, User owner, ICard card);
+
+    void userIdentified(Bank bank, User user);
+}
@@ -13,10 +13,26 @@ public interface ICard {
 
     UUID getId();
 
+    int getIndex();
+
+    double getBalance();
+
+    double getOpeningBalance();
+
+    double getAccruedInterest();
+
+    void setBalanceObserver(IBalanceObserver balanceObserver);
+
+    void setVelocityLimiter(VelocityLimiter velocityLimiter);
+
+    void setClock(IClock clock);
+
     void transferMoney(double money, ICard card) throws Exception;
 
     Transaction getTransaction(int number) throws Exception;
 
+    TransactionHistory getTransactionHistory();
+
     void topUpCard(double money) throws Exception;
 
     void withdrawMoney(double money) throws Exception;
@@ -0,0 +1,9 @@
+package org.example.entities;
+
+/**
+ * Источник текущего времени для карт. Время возвращается примитивом, миллисекундами от эпохи в UTC,
+ * чтобы операции по картам не создавали объектов даты.
+ */
+public interface IClock {
+    long millis();
+}
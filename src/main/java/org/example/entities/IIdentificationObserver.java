@@ -0,0 +1,9 @@
+package org.example.entities;
+
+/**
+ * Наблюдатель за изменением персональных данных пользователя.
+ * Уведомляется, когда пользователь указывает адрес или паспортные данные.
+ */
+public interface IIdentificationObserver {
+    void identificationChanged(User user) throws Exception;
+}
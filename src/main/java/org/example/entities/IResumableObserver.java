@@ -0,0 +1,10 @@
+package org.example.entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * Наблюдатель, тик которого можно продолжить с места прерывания, не применяя повторно уже выполненную часть дня.
+ */
+public interface IResumableObserver extends IObserver {
+    void update(LocalDateTime timeStamp, ITickProgress progress) throws Exception;
+}
@@ -0,0 +1,23 @@
+package org.example.entities;
+
+/**
+ * Прогресс тика одного наблюдателя за текущий день.
+ * Позиция - упорядоченная отметка выполненной части тика, которую наблюдатель выбирает сам,
+ * например номер этапа и номер карты в этапе. При повторе прерванного дня наблюдатель пропускает
+ * всё, что меньше сохраненной позиции.
+ * Наблюдатель, который выполняет тики нескольких банков параллельно, ведет прогресс каждого банка
+ * в отдельной части.
+ */
+public interface ITickProgress {
+    long getPosition();
+
+    void advance(long position) throws Exception;
+
+    /**
+     * Возвращает прогресс части тика с собственной позицией.
+     *
+     * @param part номер части, например номер банка
+     * @return прогресс части
+     */
+    ITickProgress part(int part);
+}
@@ -0,0 +1,152 @@
+package org.example.entities;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Двунаправленный словарь между внешними UUID и внутренними плотными целочисленными идентификаторами.
+ * UUID остаются идентификаторами на границе API, а внутри системы (списки карт пользователя, транзакции, индексы)
+ * ссылки хранятся как int, что позволяет использовать примитивные массивы вместо коллекций UUID.
+ * Идентификаторы выдаются подряд начиная с нуля и никогда не переиспользуются.
+ * Словари принадлежат пространству идентификаторов центрального банка (IdSpace), поэтому индексы и массивы,
+ * адресуемые идентификаторами, растут с числом карт и пользователей своего центрального банка, а не процесса.
+ *
+ * @param <T> тип объектов, которым выдаются идентификаторы
+ */
+public final class IdDictionary<T> {
+    /**
+     * Значение, означающее отсутствие ссылки.
+     */
+    public static final int NONE = -1;
+
+    private final Map<UUID, Integer> indexes = new ConcurrentHashMap<>();
+    private volatile UUID[] keys = new UUID[16];
+    private volatile Object[] values = new Object[16];
+    private int size;
+
+    public IdDictionary() {
+    }
+
+    /**
+     * Возвращает идентификатор для UUID, выдавая новый, если UUID встречается впервые.
+     *
+     * @param key внешний идентификатор
+     * @return внутренний идентификатор
+     */
+    public int intern(UUID key) {
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            indexes.put(key, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Регистрирует объект под указанным UUID и возвращает его внутренний идентификатор.
+     * Ключ и объект записываются в массивы до публикации идентификатора в индексе, поэтому поток, нашедший
+     * идентификатор через indexOf, всегда видит по нему уже зарегистрированный объект.
+     *
+     * @param key   внешний идентификатор объекта
+     * @param value регистрируемый объект
+     * @return внутренний идентификатор
+     */
+    public synchronized int register(UUID key, T value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        Integer index = indexes.putIfAbsent(key, size);
+        if (index != null) {
+            keys[size] = null;
+            values[size] = null;
+            values[index] = value;
+            return index;
+        }
+        return size++;
+    }
+
+    /**
+     * Переводит идентификатор, выданный, возможно, другим словарем, в идентификатор этого словаря.
+     * Если под index здесь записан тот же UUID, index возвращается как есть без обращения к хеш-таблице,
+     * иначе UUID интернируется в этом словаре.
+     *
+     * @param index идентификатор объекта в его собственном словаре
+     * @param key   внешний идентификатор объекта
+     * @return внутренний идентификатор в этом словаре
+     */
+    public int resolve(int index, UUID key) {
+        UUID[] current = keys;
+        if (index >= 0 && index < current.length && key.equals(current[index])) {
+            return index;
+        }
+        return intern(key);
+    }
+
+    /**
+     * Ищет внутренний идентификатор по UUID.
+     *
+     * @param key внешний идентификатор
+     * @return внутренний идентификатор или NONE, если UUID неизвестен
+     */
+    public int indexOf(UUID key) {
+        if (key == null) {
+            return NONE;
+        }
+        Integer index = indexes.get(key);
+        return index == null ? NONE : index;
+    }
+
+    /**
+     * Возвращает UUID по внутреннему идентификатору.
+     *
+     * @param index внутренний идентификатор
+     * @return UUID или null, если идентификатор равен NONE
+     */
+    public UUID key(int index) {
+        return index == NONE ? null : keys[index];
+    }
+
+    /**
+     * Возвращает объект, зарегистрированный под внутренним идентификатором.
+     *
+     * @param index внутренний идентификатор
+     * @return объект или null, если под идентификатором ничего не зарегистрировано
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return index == NONE ? null : (T) values[index];
+    }
+
+    /**
+     * Расширяет массивы словаря заранее, чтобы массовая регистрация не копировала их многократно.
+     *
+     * @param capacity требуемое количество идентификаторов
+     */
+    public synchronized void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            capacity = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
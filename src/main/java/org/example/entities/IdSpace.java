@@ -0,0 +1,29 @@
+package org.example.entities;
+
+/**
+ * Пространство внутренних идентификаторов: словари карт и пользователей одного центрального банка.
+ * Банк, еще не открывший ни одной карты и не принявший ни одного пользователя, переходит в пространство
+ * центрального банка при добавлении в него; ответвления и снимки разделяют пространство с исходным банком.
+ * Пользователь привязывается к пространству первого банка, в который его добавили.
+ */
+public final class IdSpace {
+    private final IdDictionary<ICard> cards = new IdDictionary<>();
+    private final IdDictionary<User> users = new IdDictionary<>();
+
+    public IdDictionary<ICard> getCards() {
+        return cards;
+    }
+
+    public IdDictionary<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Проверяет, что в пространстве еще не выдано ни одного идентификатора.
+     *
+     * @return true, если словари карт и пользователей пусты
+     */
+    public boolean isEmpty() {
+        return cards.size() == 0 && users.size() == 0;
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * Часы модельного времени: показывают время, выставленное TimeManager на последнем тике.
+ * Используются для симуляций и воспроизведения, где время операций должно совпадать с модельным.
+ */
+public class SimulatedClock implements IClock {
+    private volatile long millis;
+
+    public SimulatedClock(LocalDateTime dateTime) {
+        set(dateTime);
+    }
+
+    public void set(LocalDateTime dateTime) {
+        this.millis = CardStateTable.toMillis(dateTime);
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+}
@@ -6,26 +6,40 @@ import java.util.UUID;
 /**
  * Класс транзакций представляет собой перевод денег с одного счета на другой.
  * Он содержит информацию об отправителе, получателе, дате транзакции и сумме переведенных денег.
+ * Карты хранятся внутренними идентификаторами словаря карт центрального банка, к которому относится транзакция.
  */
 public class Transaction {
-    private final UUID from;
-    private final UUID to;
-    private final LocalDateTime dateTransaction;
+    private final IdDictionary<ICard> cardIds;
+    private final int from;
+    private final int to;
+    private final long timeMillis;
     private final double money;
 
     /**
      * Создает новый объект транзакции с указанным отправителем, получателем, датой и суммой денег.
      *
+     * @param cardIds         словарь карт центрального банка.
+     * @param from            UUID карты, отправляющей деньги.
+     * @param to              UUID карты, на которую поступают деньги.
+     * @param dateTransaction дата и время совершения транзакции.
+     * @param money           сумма денег, переведенная в ходе транзакции.
+     */
+    public Transaction(IdDictionary<ICard> cardIds, UUID from, UUID to, LocalDateTime dateTransaction,
+                       double money) {
+        this(cardIds, intern(cardIds, from), intern(cardIds, to), dateTransaction, money);
+    }
+
+    /**
+     * Создает новый объект транзакции с указанным отправителем, получателем, датой и суммой денег.
+     * Транзакция, созданная без словаря центрального банка, получает собственный словарь карт.
+     *
      * @param from            UUID карты, отправляющей деньги.
      * @param to              UUID карты, на которую поступают деньги.
      * @param dateTransaction дата и время совершения транзакции.
      * @param money           сумма денег, переведенная в ходе транзакции.
      */
     public Transaction(UUID from, UUID to, LocalDateTime dateTransaction, double money) {
-        this.from = from;
-        this.to = to;
-        this.dateTransaction = dateTransaction;
-        this.money = money;
+        this(new IdDictionary<>(), from, to, dateTransaction, money);
     }
 
     /**
@@ -37,10 +51,7 @@ public class Transaction {
      * @param money           сумма денег, переведенная в ходе транзакции.
      */
     public Transaction(UUID to, LocalDateTime dateTransaction, double money) {
-        this.to = to;
-        this.dateTransaction = dateTransaction;
-        this.money = money;
-        this.from = null;
+        this((UUID) null, to, dateTransaction, money);
     }
 
     /**
@@ -52,20 +63,97 @@ public class Transaction {
      * @param money           сумма денег, переведенная в ходе транзакции.
      */
     public Transaction(LocalDateTime dateTransaction, UUID from, double money) {
+        this(from, null, dateTransaction, money);
+    }
+
+    /**
+     * Создает новый объект транзакции по внутренним идентификаторам карт.
+     *
+     * @param cardIds         словарь карт центрального банка.
+     * @param from            внутренний идентификатор карты, отправляющей деньги, или IdDictionary.NONE.
+     * @param to              внутренний идентификатор карты, на которую поступают деньги, или IdDictionary.NONE.
+     * @param dateTransaction дата и время совершения транзакции.
+     * @param money           сумма денег, переведенная в ходе транзакции.
+     */
+    public Transaction(IdDictionary<ICard> cardIds, int from, int to, LocalDateTime dateTransaction, double money) {
+        this(cardIds, from, to, CardStateTable.toMillis(dateTransaction), money);
+    }
+
+    /**
+     * Создает новый объект транзакции по внутренним идентификаторам карт и времени в миллисекундах.
+     *
+     * @param cardIds    словарь карт центрального банка.
+     * @param from       внутренний идентификатор карты, отправляющей деньги, или IdDictionary.NONE.
+     * @param to         внутренний идентификатор карты, на которую поступают деньги, или IdDictionary.NONE.
+     * @param timeMillis время совершения транзакции в миллисекундах от эпохи в UTC.
+     * @param money      сумма денег, переведенная в ходе транзакции.
+     */
+    public Transaction(IdDictionary<ICard> cardIds, int from, int to, long timeMillis, double money) {
+        this.cardIds = cardIds;
         this.from = from;
-        this.dateTransaction = dateTransaction;
+        this.to = to;
+        this.timeMillis = timeMillis;
         this.money = money;
-        this.to = null;
+    }
+
+    /**
+     * Создает новый объект транзакции с указанным получателем, датой и суммой денег, предполагая, что отправитель
+     * равен null.
+     *
+     * @param cardIds         словарь карт центрального банка.
+     * @param to              UUID учетной записи, на которую поступают деньги.
+     * @param dateTransaction дата и время совершения транзакции.
+     * @param money           сумма денег, переведенная в ходе транзакции.
+     */
+    public Transaction(IdDictionary<ICard> cardIds, UUID to, LocalDateTime dateTransaction, double money) {
+        this(cardIds, IdDictionary.NONE, intern(cardIds, to), dateTransaction, money);
+    }
+
+    /**
+     * Создает новый объект транзакции с указанным отправителем, датой и суммой денег, предполагая, что получатель
+     * равен null
+     *
+     * @param cardIds         словарь карт центрального банка.
+     * @param dateTransaction дата и время совершения транзакции.
+     * @param from            UUID учетной записи, отправляющей деньги.
+     * @param money           сумма денег, переведенная в ходе транзакции.
+     */
+    public Transaction(IdDictionary<ICard> cardIds, LocalDateTime dateTransaction, UUID from, double money) {
+        this(cardIds, intern(cardIds, from), IdDictionary.NONE, dateTransaction, money);
+    }
+
+    private static int intern(IdDictionary<ICard> cardIds, UUID cardId) {
+        return cardId == null ? IdDictionary.NONE : cardIds.intern(cardId);
     }
 
     public UUID getFrom() {
-        return from;
+        return cardIds.key(from);
     }
 
     public UUID getTo() {
+        return cardIds.key(to);
+    }
+
+    public IdDictionary<ICard> getCardIds() {
+        return cardIds;
+    }
+
+    public int getFromIndex() {
+        return from;
+    }
+
+    public int getToIndex() {
         return to;
     }
 
+    public LocalDateTime getDateTransaction() {
+        return CardStateTable.toDateTime(timeMillis);
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
     public double getMoney() {
         return money;
     }
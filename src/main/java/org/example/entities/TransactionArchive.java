@@ -0,0 +1,256 @@
+package org.example.entities;
+
+import org.example.exception.TransactionArchiveException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Архив старых транзакций в файлах только для дозаписи.
+ * Каждая выгрузка истории карты записывается отдельным сегментом: заголовок (длина и количество записей)
+ * и записи, в которых время хранится разностью с предыдущей записью, идентификаторы карт и суммы в копейках -
+ * целыми переменной длины. Суммы, не выражаемые целым числом копеек, хранятся как double без потерь.
+ * Файлы архива перекатываются по достижении заданного размера, адрес сегмента - номер файла и смещение в нем.
+ * Нумерация файлов продолжается после файлов, уже лежащих в каталоге, а существующие файлы никогда
+ * не перезаписываются: столкновение имен при создании файла завершается ошибкой.
+ * Прочитанные сегменты держатся в небольшом LRU-кэше.
+ */
+public class TransactionArchive implements Closeable {
+    private static final long DEFAULT_FILE_SIZE = 64L << 20;
+    private static final int OFFSET_BITS = 40;
+    private static final int HEADER_SIZE = 8;
+    private static final String FILE_PREFIX = "transactions-";
+    private static final String FILE_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final long maxFileSize;
+    private final int firstFile;
+    private final List<FileChannel> files = new ArrayList<>();
+    private final Map<Long, Transaction[]> cache;
+    private long position;
+    private byte[] buffer = new byte[4096];
+    private int length;
+    private long segmentsWritten;
+    private long segmentsRead;
+
+    /**
+     * Создает архив в указанном каталоге.
+     *
+     * @param directory     каталог для файлов архива
+     * @param cacheSegments количество сегментов в кэше прочитанных сегментов
+     * @throws TransactionArchiveException если параметры архива недопустимы
+     * @throws IOException                 если каталог не удалось создать
+     */
+    public TransactionArchive(Path directory, int cacheSegments) throws Exception {
+        this(directory, cacheSegments, DEFAULT_FILE_SIZE);
+    }
+
+    /**
+     * Создает архив в указанном каталоге с заданным размером файла.
+     *
+     * @param directory     каталог для файлов архива
+     * @param cacheSegments количество сегментов в кэше прочитанных сегментов
+     * @param maxFileSize   размер файла, после которого начинается следующий файл
+     * @throws TransactionArchiveException если параметры архива недопустимы
+     * @throws IOException                 если каталог не удалось создать
+     */
+    public TransactionArchive(Path directory, int cacheSegments, long maxFileSize) throws Exception {
+        if (cacheSegments <= 0) {
+            throw new TransactionArchiveException("Segment cache size must be positive");
+        }
+        if (maxFileSize <= 0 || maxFileSize >= 1L << OFFSET_BITS) {
+            throw new TransactionArchiveException("Incorrect archive file size");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxFileSize = maxFileSize;
+        this.firstFile = nextFileNumber(this.directory);
+        this.cache = new LinkedHashMap<Long, Transaction[]>(cacheSegments * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Transaction[]> eldest) {
+                return size() > cacheSegments;
+            }
+        };
+    }
+
+    public synchronized long getSegmentsWritten() {
+        return segmentsWritten;
+    }
+
+    public synchronized long getSegmentsRead() {
+        return segmentsRead;
+    }
+
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Дописывает сегмент из транзакций с номерами от from включительно до to не включительно.
+     *
+     * @param transactions список транзакций
+     * @param from         номер первой транзакции сегмента
+     * @param to           номер, следующий за последней транзакцией сегмента
+     * @return адрес записанного сегмента
+     * @throws IOException если запись не удалась
+     */
+    public synchronized long append(List<Transaction> transactions, int from, int to) throws IOException {
+        length = HEADER_SIZE;
+        long previous = 0;
+        for (int i = from; i < to; i++) {
+            Transaction transaction = transactions.get(i);
+            long time = transaction.getTimeMillis();
+            writeVarLong(zigZag(time - previous));
+            previous = time;
+            writeVarLong(transaction.getFromIndex() + 1L);
+            writeVarLong(transaction.getToIndex() + 1L);
+            double money = transaction.getMoney();
+            long cents = Math.round(money * 100);
+            if (cents / 100.0 == money) {
+                writeVarLong(zigZag(cents) << 1);
+            } else {
+                writeVarLong(1);
+                ensure(8);
+                ByteBuffer.wrap(buffer, length, 8).putDouble(money);
+                length += 8;
+            }
+        }
+        ByteBuffer header = ByteBuffer.wrap(buffer, 0, HEADER_SIZE);
+        header.putInt(length - HEADER_SIZE);
+        header.putInt(to - from);
+
+        if (files.isEmpty() || position + length > maxFileSize && position > 0) {
+            String name = String.format(FILE_PREFIX + "%05d" + FILE_SUFFIX, firstFile + files.size());
+            files.add(FileChannel.open(directory.resolve(name),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            position = 0;
+        }
+        FileChannel file = files.get(files.size() - 1);
+        ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+        long address = (long) (files.size() - 1) << OFFSET_BITS | position;
+        while (data.hasRemaining()) {
+            position += file.write(data, position);
+        }
+        segmentsWritten++;
+        return address;
+    }
+
+    /**
+     * Возвращает транзакции сегмента, читая его из файла, если сегмента нет в кэше.
+     *
+     * @param address адрес сегмента
+     * @param cardIds словарь карт центрального банка, к которому относятся транзакции сегмента
+     * @return транзакции сегмента в порядке записи
+     * @throws IOException если чтение не удалось
+     */
+    public synchronized Transaction[] read(long address, IdDictionary<ICard> cardIds) throws IOException {
+        Transaction[] segment = cache.get(address);
+        if (segment != null) {
+            return segment;
+        }
+        FileChannel file = files.get((int) (address >>> OFFSET_BITS));
+        long offset = address & ((1L << OFFSET_BITS) - 1);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(file, header, offset);
+        header.flip();
+        int size = header.getInt();
+        int count = header.getInt();
+        ByteBuffer data = ByteBuffer.allocate(size);
+        readFully(file, data, offset + HEADER_SIZE);
+        data.flip();
+
+        segment = new Transaction[count];
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            time += unZigZag(readVarLong(data));
+            int from = (int) readVarLong(data) - 1;
+            int to = (int) readVarLong(data) - 1;
+            long amount = readVarLong(data);
+            double money = (amount & 1) == 0 ? unZigZag(amount >>> 1) / 100.0 : data.getDouble();
+            segment[i] = new Transaction(cardIds, from, to, time, money);
+        }
+        cache.put(address, segment);
+        segmentsRead++;
+        return segment;
+    }
+
+    /**
+     * Закрывает файлы архива. Прочитать сегменты после закрытия нельзя.
+     *
+     * @throws IOException если файл не удалось закрыть
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (FileChannel file : files) {
+            file.close();
+        }
+        cache.clear();
+    }
+
+    private static int nextFileNumber(Path directory) throws IOException {
+        int next = 0;
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : existing) {
+                String name = file.getFileName().toString();
+                String number = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+                if (!number.isEmpty() && number.chars().allMatch(Character::isDigit)) {
+                    next = Math.max(next, Integer.parseInt(number) + 1);
+                }
+            }
+        }
+        return next;
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer target, long offset) throws IOException {
+        while (target.hasRemaining()) {
+            if (file.read(target, offset + target.position()) < 0) {
+                throw new IOException("Unexpected end of archive segment");
+            }
+        }
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private static long readVarLong(ByteBuffer data) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
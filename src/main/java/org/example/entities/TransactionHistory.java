@@ -0,0 +1,186 @@
+package org.example.entities;
+
+import org.example.exception.TransactionArchiveException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * История транзакций карты. Свежие транзакции лежат в памяти, а старые по политике хранения банка
+ * выгружаются в архив, после чего в памяти остаются только адреса их сегментов.
+ * Нумерация транзакций сквозная: архивные транзакции занимают первые номера и читаются из архива прозрачно.
+ * Ответвленная история разделяет список свежих транзакций с исходной до первого изменения любой из них.
+ * История карты банка перед первым изменением после закрепления ответвления банка сохраняет свой прообраз
+ * в точки ответвления, которые ещё не прочитали карту.
+ */
+public class TransactionHistory {
+    private final IdDictionary<ICard> cardIds;
+    private List<Transaction> recent = new ArrayList<>();
+    private boolean shared;
+    private TransactionArchive archive;
+    private long[] segments = new long[0];
+    private int[] segmentStarts = new int[0];
+    private int archived;
+    private ForkPoints forkPoints;
+    private int cardIndex;
+    private long preserved;
+
+    /**
+     * Создает пустую историю карты.
+     *
+     * @param cardIds словарь карт центрального банка, по которому восстанавливаются архивные транзакции
+     */
+    public TransactionHistory(IdDictionary<ICard> cardIds) {
+        this.cardIds = cardIds;
+    }
+
+    /**
+     * Создает ответвление истории для копии карты.
+     *
+     * @return история с теми же транзакциями
+     */
+    public TransactionHistory fork() {
+        TransactionHistory fork = new TransactionHistory(cardIds);
+        fork.recent = recent;
+        fork.archive = archive;
+        fork.segments = segments;
+        fork.segmentStarts = segmentStarts;
+        fork.archived = archived;
+        fork.shared = true;
+        shared = true;
+        return fork;
+    }
+
+    /**
+     * Подключает историю к точкам ответвления банка карты.
+     *
+     * @param forkPoints точки ответвления банка
+     * @param cardIndex  внутренний идентификатор карты
+     * @param preserved  поколение, закрепленное до того, как карта появилась в банке
+     */
+    synchronized void attach(ForkPoints forkPoints, int cardIndex, long preserved) {
+        this.forkPoints = forkPoints;
+        this.cardIndex = cardIndex;
+        this.preserved = preserved;
+    }
+
+    public void add(Transaction transaction) {
+        beforeChange();
+        own().add(transaction);
+    }
+
+    public int size() {
+        return archived + recent.size();
+    }
+
+    public int getArchivedCount() {
+        return archived;
+    }
+
+    public boolean isArchived(int number) {
+        return number < archived;
+    }
+
+    /**
+     * Возвращает транзакцию по сквозному номеру.
+     *
+     * @param number номер транзакции
+     * @return транзакция
+     * @throws Exception если архивный сегмент не удалось прочитать
+     */
+    public Transaction get(int number) throws Exception {
+        if (number >= archived) {
+            return recent.get(number - archived);
+        }
+        int segment = Arrays.binarySearch(segmentStarts, number);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        return archive.read(segments[segment], cardIds)[number - segmentStarts[segment]];
+    }
+
+    /**
+     * Возвращает все транзакции по порядку номеров, читая каждый архивный сегмент один раз.
+     *
+     * @return транзакции истории
+     * @throws Exception если архивный сегмент не удалось прочитать
+     */
+    public Transaction[] toArray() throws Exception {
+        Transaction[] result = new Transaction[size()];
+        for (int i = 0; i < segments.length; i++) {
+            Transaction[] segment = archive.read(segments[i], cardIds);
+            System.arraycopy(segment, 0, result, segmentStarts[i], segment.length);
+        }
+        for (int i = 0; i < recent.size(); i++) {
+            result[archived + i] = recent.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Удаляет транзакцию по сквозному номеру.
+     *
+     * @param number номер транзакции
+     * @throws TransactionArchiveException если транзакция уже выгружена в архив
+     */
+    public void remove(int number) throws Exception {
+        if (isArchived(number)) {
+            throw new TransactionArchiveException("Archived transactions cannot be removed");
+        }
+        beforeChange();
+        own().remove(number - archived);
+    }
+
+    /**
+     * Выгружает в архив одним сегментом все транзакции, совершенные раньше указанной даты.
+     * Транзакции записываются в хронологическом порядке, поэтому выгружается их начальный отрезок.
+     *
+     * @param archive архив банка
+     * @param before  граница хранения в памяти
+     * @return количество выгруженных транзакций
+     * @throws TransactionArchiveException если история уже выгружалась в другой архив
+     * @throws Exception                   если сегмент не удалось записать
+     */
+    public int archiveBefore(TransactionArchive archive, LocalDateTime before) throws Exception {
+        long beforeMillis = CardStateTable.toMillis(before);
+        int count = 0;
+        while (count < recent.size() && recent.get(count).getTimeMillis() < beforeMillis) {
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (this.archive != null && this.archive != archive) {
+            throw new TransactionArchiveException("Transactions are already archived elsewhere");
+        }
+        beforeChange();
+        this.archive = archive;
+        long address = archive.append(recent, 0, count);
+        segments = Arrays.copyOf(segments, segments.length + 1);
+        segmentStarts = Arrays.copyOf(segmentStarts, segmentStarts.length + 1);
+        segments[segments.length - 1] = address;
+        segmentStarts[segmentStarts.length - 1] = archived;
+        own().subList(0, count).clear();
+        archived += count;
+        return count;
+    }
+
+    private void beforeChange() {
+        ForkPoints points = forkPoints;
+        if (points != null && preserved != points.generation()) {
+            synchronized (this) {
+                preserved = points.preserve(cardIndex, this, preserved);
+            }
+        }
+    }
+
+    private List<Transaction> own() {
+        if (shared) {
+            recent = new ArrayList<>(recent);
+            shared = false;
+        }
+        return recent;
+    }
+}
@@ -1,21 +1,38 @@
 package org.example.entities;
 
+import org.example.exception.BankException;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.DoubleAdder;
 
 /**
  * Класс User представляет пользователя платежной системы.
  * Он содержит личную информацию пользователя, такую как имя, фамилия, идентификационный номер паспорта и адрес, а
- * также их баланс и список идентификаторов их карт.
+ * также список идентификаторов их карт и суммарный баланс по картам (getCardsBalance).
+ * Внутренний идентификатор пользователь получает в пространстве идентификаторов первого банка, в который его
+ * добавили, и может состоять только в банках этого центрального банка.
  */
 public class User {
-    private final List<UUID> listCardId = new ArrayList<>();
-    private UUID userId;
+    private int[] cardIndexes = new int[4];
+    private int cardCount;
+    private final UUID userId;
+    private volatile IdSpace ids;
+    private int userIndex = IdDictionary.NONE;
+    private final DoubleAdder cardsBalance = new DoubleAdder();
+    private final List<IIdentificationObserver> identificationObservers = new ArrayList<>();
     private final String Name;
     private final String Surname;
     public int PassportId;
+    /**
+     * Баланс, переданный при создании пользователя. Операции по картам его не меняют.
+     *
+     * @deprecated суммарный баланс карт пользователя возвращает getCardsBalance()
+     */
+    @Deprecated
     public double Balance;
     public String Address;
 
@@ -30,16 +47,75 @@ public class User {
         Name = name;
         Surname = surname;
         Balance = balance;
+        userId = UUID.randomUUID();
     }
 
+    /**
+     * Привязывает пользователя к пространству идентификаторов банка при добавлении в банк.
+     *
+     * @param ids пространство идентификаторов банка
+     * @return внутренний идентификатор пользователя
+     * @throws BankException если пользователь уже состоит в банках другого центрального банка
+     */
+    synchronized int bind(IdSpace ids) throws Exception {
+        if (this.ids == null) {
+            userIndex = ids.getUsers().register(userId, this);
+            this.ids = ids;
+        } else if (this.ids != ids) {
+            throw new BankException("User belongs to another central bank");
+        }
+        return userIndex;
+    }
+
+    /**
+     * Возвращает UUID карт пользователя. Список строится из внутренних идентификаторов при каждом вызове,
+     * поэтому внутри системы следует использовать getCardCount и getCardIndex.
+     *
+     * @return список UUID карт пользователя
+     */
     public List<UUID> getListCardId() {
+        List<UUID> listCardId = new ArrayList<>(cardCount);
+        for (int i = 0; i < cardCount; i++) {
+            listCardId.add(ids.getCards().key(cardIndexes[i]));
+        }
         return Collections.unmodifiableList(listCardId);
     }
 
+    public int getCardCount() {
+        return cardCount;
+    }
+
+    public int getCardIndex(int number) {
+        return cardIndexes[number];
+    }
+
     public UUID getUserId() {
         return userId;
     }
 
+    /**
+     * Возвращает внутренний идентификатор пользователя в пространстве идентификаторов его банков.
+     *
+     * @return внутренний идентификатор или IdDictionary.NONE, если пользователь еще не добавлен в банк
+     */
+    public int getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Возвращает суммарный баланс по всем картам пользователя.
+     * Значение поддерживается банком при каждом изменении баланса карт, поэтому чтение не требует перебора карт.
+     *
+     * @return суммарный баланс карт
+     */
+    public double getCardsBalance() {
+        return cardsBalance.sum();
+    }
+
+    void addCardsBalance(double delta) {
+        cardsBalance.add(delta);
+    }
+
     /**
      * Проверяет, является пользователь подтвержденным.
      *
@@ -49,15 +125,54 @@ public class User {
         return Name != null && Surname != null && PassportId > 0 && Address != null;
     }
 
-    void setAddress(String address) {
+    /**
+     * Подписывает наблюдателя на изменения персональных данных пользователя.
+     *
+     * @param observer наблюдатель
+     */
+    public void addIdentificationObserver(IIdentificationObserver observer) {
+        identificationObservers.add(observer);
+    }
+
+    void setAddress(String address) throws Exception {
         Address = address;
+        notifyIdentificationObservers();
     }
 
-    public void addCard(UUID card) {
-        listCardId.add(card);
+    /**
+     * Добавляет пользователю карту по UUID.
+     *
+     * @param card UUID карты
+     * @throws BankException если пользователь еще не добавлен ни в один банк
+     */
+    public void addCard(UUID card) throws Exception {
+        IdSpace current = ids;
+        if (current == null) {
+            throw new BankException("User is not added to any bank");
+        }
+        addCard(current.getCards().intern(card));
+    }
+
+    /**
+     * Добавляет карту пользователю по внутреннему идентификатору.
+     *
+     * @param cardIndex внутренний идентификатор карты
+     */
+    public void addCard(int cardIndex) {
+        if (cardCount == cardIndexes.length) {
+            cardIndexes = Arrays.copyOf(cardIndexes, cardCount * 2);
+        }
+        cardIndexes[cardCount++] = cardIndex;
     }
 
-    void setPassportId(int passportId) {
+    void setPassportId(int passportId) throws Exception {
         PassportId = passportId;
+        notifyIdentificationObservers();
+    }
+
+    private void notifyIdentificationObservers() throws Exception {
+        for (IIdentificationObserver observer : identificationObservers) {
+            observer.identificationChanged(this);
+        }
     }
 }
\ No newline at end of file
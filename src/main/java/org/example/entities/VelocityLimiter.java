@@ -0,0 +1,184 @@
+package org.example.entities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Скользящие лимиты по сумме и количеству операций для каждой карты.
+ * Окно разбито на корзины фиксированной длины. Каждая корзина карты хранится в одном long:
+ * 20 бит - номер корзины, 12 бит - количество операций, 32 бита - сумма в копейках.
+ * Проверка окна и учет операции выполняются под одной из LOCK_STRIPES блокировок, выбираемой по карте,
+ * поэтому параллельные операции по одной карте не превышают лимиты, а операции по разным картам почти
+ * не ждут друг друга. Корзины карт лежат в блоках по внутреннему идентификатору карты, поэтому на карту
+ * приходится ровно bucketCount значений long. Блок создается при первой операции по одной из его карт.
+ * Суммы и количества насыщаются на максимуме разрядов, что делает проверку только строже.
+ * Ответвление разделяет блоки с исходным ограничителем: блок принадлежит ограничителю, пока его метка
+ * совпадает с меткой ограничителя, а ответвление меняет метки обоих, поэтому каждый из них копирует блок
+ * при первой записи в него.
+ */
+public class VelocityLimiter {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final long STAMP_MASK = (1L << 20) - 1;
+    private static final long COUNT_MASK = (1L << 12) - 1;
+    private static final long AMOUNT_MASK = (1L << 32) - 1;
+    private static final int LOCK_STRIPES = 64;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final long maxAmountCents;
+    private final int maxCount;
+    private volatile AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(16);
+    private volatile Object owner = new Object();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Создает ограничитель со скользящим окном длиной bucketMillis * bucketCount.
+     *
+     * @param bucketMillis длина одной корзины в миллисекундах
+     * @param bucketCount  количество корзин в окне
+     * @param maxAmount    максимальная сумма операций в окне, 0 - без ограничения
+     * @param maxCount     максимальное количество операций в окне, 0 - без ограничения
+     */
+    public VelocityLimiter(long bucketMillis, int bucketCount, double maxAmount, int maxCount) {
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.maxAmountCents = Math.round(maxAmount * 100);
+        this.maxCount = maxCount;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Создает копию ограничителя с теми же лимитами и текущим заполнением окон для ответвленного банка.
+     * Блоки не копируются: копия и исходный ограничитель копируют блок при первой записи в него.
+     *
+     * @return независимая копия ограничителя
+     */
+    synchronized VelocityLimiter fork() {
+        VelocityLimiter fork = new VelocityLimiter(bucketMillis, bucketCount, maxAmountCents / 100.0, maxCount);
+        AtomicReferenceArray<Chunk> current = chunks;
+        AtomicReferenceArray<Chunk> shared = new AtomicReferenceArray<>(current.length());
+        for (int i = 0; i < current.length(); i++) {
+            shared.set(i, current.get(i));
+        }
+        fork.chunks = shared;
+        owner = new Object();
+        return fork;
+    }
+
+    /**
+     * Проверяет, укладывается ли операция в лимиты окна, и если да - учитывает её.
+     *
+     * @param cardIndex  внутренний идентификатор карты
+     * @param timeMillis время операции в миллисекундах
+     * @param money      сумма операции
+     * @return true, если операция разрешена и учтена
+     */
+    public boolean tryAcquire(int cardIndex, long timeMillis, double money) {
+        long bucket = timeMillis / bucketMillis;
+        long stamp = bucket & STAMP_MASK;
+        long cents = (long) Math.ceil(money * 100);
+        int base = (cardIndex & (CHUNK_SIZE - 1)) * bucketCount;
+        synchronized (locks[cardIndex & (LOCK_STRIPES - 1)]) {
+            AtomicLongArray chunk = chunk(cardIndex).slots;
+            long amount = 0;
+            long count = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                long value = chunk.get(base + i);
+                if (value != 0 && ((stamp - (value >>> 44)) & STAMP_MASK) < bucketCount) {
+                    count += (value >>> 32) & COUNT_MASK;
+                    amount += value & AMOUNT_MASK;
+                }
+            }
+            if (maxCount != 0 && count + 1 > maxCount) {
+                return false;
+            }
+            if (maxAmountCents != 0 && amount + cents > maxAmountCents) {
+                return false;
+            }
+            int slot = base + (int) (bucket % bucketCount);
+            long value = chunk.get(slot);
+            long slotCount = 0;
+            long slotAmount = 0;
+            if (value != 0 && value >>> 44 == stamp) {
+                slotCount = (value >>> 32) & COUNT_MASK;
+                slotAmount = value & AMOUNT_MASK;
+            }
+            chunk.set(slot, stamp << 44
+                    | Math.min(slotCount + 1, COUNT_MASK) << 32
+                    | Math.min(slotAmount + cents, AMOUNT_MASK));
+            return true;
+        }
+    }
+
+    /**
+     * Количество созданных блоков корзин.
+     *
+     * @return количество блоков
+     */
+    synchronized int getChunkCount() {
+        int count = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            if (chunks.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Chunk chunk(int cardIndex) {
+        int chunkIndex = cardIndex >>> CHUNK_SHIFT;
+        AtomicReferenceArray<Chunk> current = chunks;
+        if (chunkIndex < current.length()) {
+            Chunk chunk = current.get(chunkIndex);
+            if (chunk != null && chunk.owner == owner) {
+                return chunk;
+            }
+        }
+        return own(chunkIndex);
+    }
+
+    /**
+     * Возвращает собственный блок: расширяет массив блоков, создает недостающий блок или копирует блок,
+     * разделяемый с ответвлением. Массив блоков меняется только здесь, поэтому созданный блок не теряется
+     * при параллельном расширении.
+     */
+    private synchronized Chunk own(int chunkIndex) {
+        AtomicReferenceArray<Chunk> current = chunks;
+        if (chunkIndex >= current.length()) {
+            AtomicReferenceArray<Chunk> grown =
+                    new AtomicReferenceArray<>(Math.max(current.length() * 2, chunkIndex + 1));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            chunks = grown;
+            current = grown;
+        }
+        Chunk chunk = current.get(chunkIndex);
+        if (chunk == null || chunk.owner != owner) {
+            chunk = new Chunk(owner, chunk, CHUNK_SIZE * bucketCount);
+            current.set(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Блок корзин карт и метка ограничителя, которому он принадлежит.
+     */
+    private static final class Chunk {
+        private final Object owner;
+        private final AtomicLongArray slots;
+
+        private Chunk(Object owner, Chunk source, int size) {
+            this.owner = owner;
+            this.slots = new AtomicLongArray(size);
+            if (source != null) {
+                for (int i = 0; i < size; i++) {
+                    slots.set(i, source.slots.get(i));
+                }
+            }
+        }
+    }
+}
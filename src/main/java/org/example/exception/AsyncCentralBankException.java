@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class AsyncCentralBankException extends Exception {
+    public AsyncCentralBankException(String message) {
+        super(message);
+    }
+}
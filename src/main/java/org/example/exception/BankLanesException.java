@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class BankLanesException extends Exception {
+    public BankLanesException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class BatchRunnerException extends Exception {
+    public BatchRunnerException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class BulkLoaderException extends Exception {
+    public BulkLoaderException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class EventCodecException extends Exception {
+    public EventCodecException(String message) {
+        super(message);
+    }
+}
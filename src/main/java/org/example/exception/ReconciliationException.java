@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class ReconciliationException extends Exception {
+    public ReconciliationException(String message) {
+        super(message);
+    }
+}
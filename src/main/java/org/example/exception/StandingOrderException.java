@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class StandingOrderException extends Exception {
+    public StandingOrderException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class StressTestException extends Exception {
+    public StressTestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class TransactionArchiveException extends Exception {
+    public TransactionArchiveException(String message) {
+        super(message);
+    }
+}
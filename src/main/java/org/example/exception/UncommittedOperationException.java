@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class UncommittedOperationException extends AsyncCentralBankException {
+    public UncommittedOperationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.service;
+
+import org.example.entities.ICard;
+import org.example.exception.AsyncCentralBankException;
+import org.example.exception.UncommittedOperationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Асинхронный фасад центрального банка. Операции ставятся в очередь и выполняются одним потоком-писателем
+ * пакетами: писатель забирает из очереди все накопившиеся операции (не более maxBatch), выполняет их,
+ * фиксирует пакет одним вызовом ICommitHook и только после этого завершает futures операций.
+ * Ошибка операции завершает её future исходным исключением (CentralBankException, DebitCardException и т.д.).
+ * Если не удалась фиксация, выполненные операции пакета уже применены к банку, поэтому их futures завершаются
+ * UncommittedOperationException с ошибкой фиксации в качестве причины: такую операцию нельзя повторять,
+ * иначе она применится дважды. Очередь ограничена: при заполненной очереди операция сразу отклоняется.
+ */
+public class AsyncCentralBank implements AutoCloseable {
+    private static final int DEFAULT_MAX_BATCH = 256;
+    private static final int DEFAULT_QUEUE_CAPACITY = 65536;
+    private static final Request<Void> STOP = new Request<>(() -> null);
+
+    private final CentralBank centralBank;
+    private final ICommitHook commitHook;
+    private final int maxBatch;
+    private final BlockingQueue<Request<?>> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+    private long batches;
+    private long operations;
+
+    /**
+     * Создает асинхронный фасад без групповой фиксации.
+     *
+     * @param centralBank центральный банк
+     */
+    public AsyncCentralBank(CentralBank centralBank) {
+        this(centralBank, operations -> {
+        }, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Создает асинхронный фасад и запускает поток-писатель.
+     *
+     * @param centralBank центральный банк
+     * @param commitHook  групповая фиксация пакета
+     * @param maxBatch    максимальное количество операций в пакете
+     */
+    public AsyncCentralBank(CentralBank centralBank, ICommitHook commitHook, int maxBatch) {
+        this(centralBank, commitHook, maxBatch, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Создает асинхронный фасад с очередью указанного размера и запускает поток-писатель.
+     *
+     * @param centralBank   центральный банк
+     * @param commitHook    групповая фиксация пакета
+     * @param maxBatch      максимальное количество операций в пакете
+     * @param queueCapacity максимальное количество операций, ожидающих выполнения
+     */
+    public AsyncCentralBank(CentralBank centralBank, ICommitHook commitHook, int maxBatch, int queueCapacity) {
+        this.centralBank = centralBank;
+        this.commitHook = commitHook;
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::run, "async-central-bank");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public CompletableFuture<Void> transferMoney(double money, UUID fromCardId, UUID toCardId) {
+        return submit(() -> {
+            centralBank.transferMoney(money, fromCardId, toCardId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> withdrawMoney(UUID cardId, double money) {
+        return submit(() -> {
+            centralBank.withdrawMoney(cardId, money);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> topUpCard(UUID cardId, double money) {
+        return submit(() -> {
+            centralBank.topUpCard(cardId, money);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> transactionCancellation(UUID cardId, int number) {
+        return submit(() -> {
+            centralBank.transactionCancellation(cardId, number);
+            return null;
+        });
+    }
+
+    public CompletableFuture<ICard> getCard(UUID cardId) {
+        return submit(() -> centralBank.getCard(cardId));
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getOperations() {
+        return operations;
+    }
+
+    /**
+     * Прекращает прием операций, дожидается выполнения уже поставленных и останавливает поток-писатель.
+     * Писатель не прерывается: он может быть внутри фиксации пакета, поэтому в очередь ставится метка остановки,
+     * дойдя до которой писатель завершает последний пакет и выходит.
+     * Если ожидание прервано, флаг прерывания потока восстанавливается.
+     */
+    @Override
+    public void close() {
+        try {
+            if (!closed) {
+                closed = true;
+                queue.put(STOP);
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        Request<T> request = new Request<>(operation);
+        if (closed) {
+            request.future.completeExceptionally(new AsyncCentralBankException("Async central bank is closed"));
+            return request.future;
+        }
+        if (!queue.offer(request)) {
+            request.future.completeExceptionally(new AsyncCentralBankException("Async central bank queue is full"));
+            return request.future;
+        }
+        if (closed && queue.remove(request)) {
+            request.future.completeExceptionally(new AsyncCentralBankException("Async central bank is closed"));
+        }
+        return request.future;
+    }
+
+    private void run() {
+        List<Request<?>> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, maxBatch - batch.size());
+            boolean stopped = batch.remove(STOP);
+            if (batch.isEmpty()) {
+                return;
+            }
+            for (Request<?> request : batch) {
+                request.execute();
+            }
+            Throwable commitError = null;
+            try {
+                commitHook.commit(batch.size());
+            } catch (Exception | Error e) {
+                commitError = e;
+            }
+            synchronized (this) {
+                batches++;
+                operations += batch.size();
+            }
+            for (Request<?> request : batch) {
+                request.complete(commitError);
+            }
+            batch.clear();
+            if (stopped) {
+                return;
+            }
+        }
+    }
+
+    private interface Operation<T> {
+        T execute() throws Exception;
+    }
+
+    private static final class Request<T> {
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Throwable error;
+
+        private Request(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        private void execute() {
+            try {
+                result = operation.execute();
+            } catch (Exception | Error e) {
+                error = e;
+            }
+        }
+
+        private void complete(Throwable commitError) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else if (commitError != null) {
+                UncommittedOperationException uncommitted =
+                        new UncommittedOperationException("Operation was applied but its batch was not committed");
+                uncommitted.initCause(commitError);
+                future.completeExceptionally(uncommitted);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
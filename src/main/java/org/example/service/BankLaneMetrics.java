@@ -0,0 +1,77 @@
+package org.example.service;
+
+/**
+ * Показатели полосы банка на момент запроса.
+ * Ожидание - время от постановки операции в очередь до начала выполнения, задержка - до её завершения.
+ */
+public class BankLaneMetrics {
+    private final String title;
+    private final int threads;
+    private final int queueCapacity;
+    private final int queueDepth;
+    private final long submitted;
+    private final long completed;
+    private final long rejected;
+    private final long waitNanos;
+    private final long latencyNanos;
+    private final long maxLatencyNanos;
+
+    BankLaneMetrics(String title, int threads, int queueCapacity, int queueDepth, long submitted, long completed,
+                    long rejected, long waitNanos, long latencyNanos, long maxLatencyNanos) {
+        this.title = title;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.queueDepth = queueDepth;
+        this.submitted = submitted;
+        this.completed = completed;
+        this.rejected = rejected;
+        this.waitNanos = waitNanos;
+        this.latencyNanos = latencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Возвращает количество операций, отклоненных из-за заполненной очереди или закрытых полос.
+     *
+     * @return количество отклоненных операций
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public double getMeanWaitNanos() {
+        return completed == 0 ? 0 : (double) waitNanos / completed;
+    }
+
+    public double getMeanLatencyNanos() {
+        return completed == 0 ? 0 : (double) latencyNanos / completed;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+}
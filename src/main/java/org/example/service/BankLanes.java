@@ -0,0 +1,469 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.ICard;
+import org.example.entities.IResumableObserver;
+import org.example.entities.ITickProgress;
+import org.example.entities.IdDictionary;
+import org.example.entities.Transaction;
+import org.example.exception.BankLanesException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Изолированные полосы выполнения для банков центрального банка.
+ * У каждого банка своя полоса: потоки и ограниченная очередь операций, поэтому тик большого банка или поток
+ * переводов с его карт занимают только его полосу и не задерживают операции других банков.
+ * Операция выполняется в полосе банка карты списания. Если очередь полосы заполнена, операция сразу
+ * завершается ошибкой BankLanesException, а не ждет и не занимает потоки других банков.
+ * Чтобы поток полосы изменял только карты своего банка, полосы включают клиринг центрального банка:
+ * зачисления в другие банки откладываются до тика, который полосы выполняют сами после тиков всех банков.
+ * Операции над одними и теми же картами внутри полосы упорядочиваются блокировкой карт, а тик банка
+ * выполняется в его полосе монопольно. Отмена перевода, которая списывает деньги с карты другого банка,
+ * дополнительно ждет окончания тика этого банка.
+ */
+public class BankLanes implements IResumableObserver, AutoCloseable {
+    /**
+     * Позиция части прогресса банка, завершившего тик.
+     */
+    public static final long BANK_COMPLETED = Long.MAX_VALUE;
+
+    private final CentralBank centralBank;
+    private final ClearingHouse clearing;
+    private final int defaultThreads;
+    private final int defaultQueueCapacity;
+    private final Map<Bank, int[]> configurations = new ConcurrentHashMap<>();
+    private final Map<Bank, Lane> lanes = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Создает полосы банков и включает клиринг центрального банка.
+     * Клиринг подписывать на TimeManager не нужно: его выполняют полосы.
+     *
+     * @param centralBank   центральный банк
+     * @param threads       количество потоков полосы по умолчанию
+     * @param queueCapacity размер очереди полосы по умолчанию
+     * @throws BankLanesException если размеры полосы недопустимы
+     */
+    public BankLanes(CentralBank centralBank, int threads, int queueCapacity) throws Exception {
+        checkSize(threads, queueCapacity);
+        this.centralBank = centralBank;
+        this.clearing = centralBank.enableClearing();
+        this.defaultThreads = threads;
+        this.defaultQueueCapacity = queueCapacity;
+    }
+
+    /**
+     * Задает размеры полосы банка. Полоса создается при первой операции банка, после этого её размеры
+     * не меняются.
+     *
+     * @param bank          банк центрального банка
+     * @param threads       количество потоков полосы
+     * @param queueCapacity размер очереди полосы
+     * @throws BankLanesException если размеры недопустимы, банк не входит в центральный банк
+     *                            или его полоса уже работает
+     */
+    public void configureLane(Bank bank, int threads, int queueCapacity) throws Exception {
+        checkSize(threads, queueCapacity);
+        if (!centralBank.getListBanks().contains(bank)) {
+            throw new BankLanesException("Bank is not registered in the central bank");
+        }
+        if (lanes.containsKey(bank)) {
+            throw new BankLanesException("Lane of bank " + bank.getTitle() + " is already running");
+        }
+        configurations.put(bank, new int[]{threads, queueCapacity});
+    }
+
+    public CompletableFuture<Void> transferMoney(double money, UUID fromCardId, UUID toCardId) {
+        return submit(fromCardId, false, (lane, from) -> {
+            ICard to = centralBank.getCard(toCardId);
+            locked(from, to, () -> centralBank.transferMoney(money, fromCardId, toCardId));
+        });
+    }
+
+    public CompletableFuture<Void> withdrawMoney(UUID cardId, double money) {
+        return submit(cardId, false, (lane, card) -> locked(card, card, () -> centralBank.withdrawMoney(cardId, money)));
+    }
+
+    public CompletableFuture<Void> topUpCard(UUID cardId, double money) {
+        return submit(cardId, false, (lane, card) -> locked(card, card, () -> centralBank.topUpCard(cardId, money)));
+    }
+
+    /**
+     * Отменяет транзакцию в полосе банка карты. Карта получателя перевода блокируется вместе с картой,
+     * так как при отмене с неё списываются уже зачисленные деньги.
+     */
+    public CompletableFuture<Void> transactionCancellation(UUID cardId, int number) {
+        return submit(cardId, true, (lane, card) -> cancel(lane, card, cardId, number));
+    }
+
+    @Override
+    public void update(LocalDateTime timeStamp) throws Exception {
+        update(timeStamp, null);
+    }
+
+    /**
+     * Выполняет тик каждого банка в его полосе, дожидается всех тиков и проводит клиринг.
+     * Тики банков идут параллельно, операции банка на время его тика ждут в очереди его полосы.
+     * Прогресс банка ведется в части прогресса с номером банка в центральном банке, а завершенный тик
+     * отмечается позицией BANK_COMPLETED. При продолжении прерванного дня завершенные банки пропускаются,
+     * прерванный банк продолжает тик со своей позиции, а клиринг проводится после тиков всех банков.
+     * Ошибка тика выбрасывается только после завершения тиков остальных банков.
+     *
+     * @param timeStamp текущая отметка времени
+     * @param progress  прогресс тика за этот день или null, если тик выполняется целиком
+     * @throws Exception первая ошибка тика банка или клиринга
+     */
+    @Override
+    public void update(LocalDateTime timeStamp, ITickProgress progress) throws Exception {
+        List<Bank> banks = centralBank.getListBanks();
+        List<CompletableFuture<Void>> ticks = new ArrayList<>();
+        for (int i = 0; i < banks.size(); i++) {
+            Bank bank = banks.get(i);
+            ITickProgress part = progress == null ? null : progress.part(i);
+            if (part != null && part.getPosition() == BANK_COMPLETED) {
+                continue;
+            }
+            ticks.add(lane(bank).tick(() -> {
+                bank.update(timeStamp, part);
+                if (part != null) {
+                    part.advance(BANK_COMPLETED);
+                }
+            }));
+        }
+        Throwable error = null;
+        for (CompletableFuture<Void> tick : ticks) {
+            try {
+                tick.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw (Exception) error;
+        }
+        clearing.settle();
+    }
+
+    /**
+     * Возвращает показатели полосы банка.
+     *
+     * @param bank банк центрального банка
+     * @return глубина очереди, количество операций и задержки полосы
+     * @throws BankLanesException если банк не входит в центральный банк
+     */
+    public BankLaneMetrics getMetrics(Bank bank) throws Exception {
+        if (!centralBank.getListBanks().contains(bank)) {
+            throw new BankLanesException("Bank is not registered in the central bank");
+        }
+        Lane lane = lanes.get(bank);
+        if (lane == null) {
+            int[] size = size(bank);
+            return new BankLaneMetrics(bank.getTitle(), size[0], size[1], 0, 0, 0, 0, 0, 0, 0);
+        }
+        return lane.metrics();
+    }
+
+    /**
+     * Прекращает прием операций, дожидается выполнения уже поставленных и останавливает потоки полос.
+     * Если ожидание прервано, флаг прерывания потока восстанавливается, а потоки полос завершаются сами
+     * после выполнения очереди.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Lane lane : lanes.values()) {
+            lane.close();
+        }
+    }
+
+    /**
+     * Ставит операцию в полосу банка карты.
+     *
+     * @param cardId    ID карты
+     * @param locksTick true, если операция сама берет блокировки тика полос
+     * @param operation операция над картой
+     */
+    private CompletableFuture<Void> submit(UUID cardId, boolean locksTick, CardOperation operation) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            ICard card = centralBank.getCard(cardId);
+            Lane lane = laneOf(card);
+            lane.offer(() -> operation.execute(lane, card), future, locksTick);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Отменяет транзакцию под блокировками тика полосы карты и полосы банка получателя перевода,
+     * если получатель в другом банке: при отмене с карты получателя списываются деньги, и это не должно
+     * совпасть с тиком его банка. Блокировки полос берутся по порядку номеров банков, поэтому встречные отмены
+     * не ждут друг друга по кругу. Если, пока блокировки ожидались, под этим номером оказалась другая
+     * транзакция, получатель определяется заново.
+     */
+    private void cancel(Lane lane, ICard card, UUID cardId, int number) throws Exception {
+        while (true) {
+            ICard receiver;
+            lane.tickLock.readLock().lock();
+            try {
+                receiver = receiverOf(card, number);
+            } finally {
+                lane.tickLock.readLock().unlock();
+            }
+            Lane other = receiver == card ? lane : laneOf(receiver);
+            Lane first = lane.order <= other.order ? lane : other;
+            Lane second = first == lane ? other : lane;
+            first.tickLock.readLock().lock();
+            if (second != first) {
+                second.tickLock.readLock().lock();
+            }
+            try {
+                if (receiverOf(card, number) == receiver) {
+                    locked(card, receiver, () -> centralBank.transactionCancellation(cardId, number));
+                    return;
+                }
+            } finally {
+                if (second != first) {
+                    second.tickLock.readLock().unlock();
+                }
+                first.tickLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Возвращает карту, с которой при отмене транзакции списываются зачисленные деньги:
+     * получателя перевода или саму карту для остальных транзакций.
+     */
+    private ICard receiverOf(ICard card, int number) throws Exception {
+        synchronized (card) {
+            if (card.getTransactionHistory().isArchived(number)) {
+                return card;
+            }
+            Transaction transaction = card.getTransaction(number);
+            if (transaction.getFromIndex() == IdDictionary.NONE || transaction.getToIndex() == IdDictionary.NONE) {
+                return card;
+            }
+            return centralBank.getCard(transaction.getToIndex());
+        }
+    }
+
+    private Lane laneOf(ICard card) throws Exception {
+        int bank = centralBank.bankOf(card.getIndex());
+        if (bank < 0) {
+            throw new BankLanesException("Card does not belong to any bank");
+        }
+        return lane(centralBank.getListBanks().get(bank));
+    }
+
+    /**
+     * Возвращает блокировку тика полосы банка.
+     */
+    ReadWriteLock tickLock(Bank bank) throws Exception {
+        return lane(bank).tickLock;
+    }
+
+    private Lane lane(Bank bank) throws Exception {
+        if (closed) {
+            throw new BankLanesException("Bank lanes are closed");
+        }
+        Lane lane = lanes.computeIfAbsent(bank, key -> {
+            int[] size = size(key);
+            return new Lane(key.getTitle(), centralBank.getListBanks().indexOf(key), size[0], size[1]);
+        });
+        if (closed) {
+            lane.close();
+            throw new BankLanesException("Bank lanes are closed");
+        }
+        return lane;
+    }
+
+    private int[] size(Bank bank) {
+        return configurations.getOrDefault(bank, new int[]{defaultThreads, defaultQueueCapacity});
+    }
+
+    /**
+     * Выполняет операцию, удерживая блокировки двух карт в порядке их внутренних идентификаторов.
+     */
+    private static void locked(ICard first, ICard second, Operation operation) throws Exception {
+        ICard lower = first.getIndex() <= second.getIndex() ? first : second;
+        ICard upper = lower == first ? second : first;
+        synchronized (lower) {
+            synchronized (upper) {
+                operation.execute();
+            }
+        }
+    }
+
+    private static void checkSize(int threads, int queueCapacity) throws Exception {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new BankLanesException("Lane threads and queue capacity must be positive");
+        }
+    }
+
+    private interface Operation {
+        void execute() throws Exception;
+    }
+
+    private interface CardOperation {
+        void execute(Lane lane, ICard card) throws Exception;
+    }
+
+    /**
+     * Полоса одного банка: потоки, ограниченная очередь, блокировка тика и счетчики.
+     */
+    private static final class Lane {
+        private static final long POLL_MILLIS = 50;
+
+        private final String title;
+        private final int order;
+        private final int queueCapacity;
+        private final BlockingQueue<Task> queue;
+        private final Thread[] workers;
+        private final ReadWriteLock tickLock = new ReentrantReadWriteLock();
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+        private volatile boolean closed;
+
+        private Lane(String title, int order, int threads, int queueCapacity) {
+            this.title = title;
+            this.order = order;
+            this.queueCapacity = queueCapacity;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.workers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(this::run, "bank-lane-" + title + "-" + i);
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+
+        private void offer(Operation operation, CompletableFuture<Void> future, boolean locksTick) throws Exception {
+            Task task = new Task(operation, future, locksTick ? null : tickLock.readLock());
+            if (closed || !queue.offer(task)) {
+                rejected.increment();
+                throw new BankLanesException(closed ? "Bank lanes are closed"
+                        : "Queue of bank " + title + " is full");
+            }
+            submitted.increment();
+        }
+
+        /**
+         * Ставит тик в очередь полосы, дожидаясь места в очереди: тик не отклоняется при заполненной очереди.
+         */
+        private CompletableFuture<Void> tick(Operation operation) throws Exception {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            queue.put(new Task(operation, future, tickLock.writeLock()));
+            submitted.increment();
+            return future;
+        }
+
+        private BankLaneMetrics metrics() {
+            return new BankLaneMetrics(title, workers.length, queueCapacity, queue.size(), submitted.sum(),
+                    completed.sum(), rejected.sum(), waitNanos.sum(), latencyNanos.sum(), maxLatencyNanos.get());
+        }
+
+        /**
+         * Останавливает потоки полосы без прерывания: поток может быть внутри тика, пишущего в общий канал
+         * архива, а прерывание закрыло бы такой канал. Потоки видят флаг закрытия при очередном ожидании очереди.
+         */
+        private void close() {
+            closed = true;
+            try {
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void run() {
+            while (true) {
+                Task task;
+                try {
+                    task = closed ? queue.poll() : queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    task = queue.poll();
+                }
+                if (task == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                long started = System.nanoTime();
+                Throwable error = task.execute();
+                long finished = System.nanoTime();
+                waitNanos.add(started - task.enqueued);
+                latencyNanos.add(finished - task.enqueued);
+                maxLatencyNanos.accumulate(finished - task.enqueued);
+                completed.increment();
+                if (error == null) {
+                    task.future.complete(null);
+                } else {
+                    task.future.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Операция в очереди полосы. Операция выполняется под блокировкой тика полосы: общей для обычных операций,
+     * исключительной для тика. Без блокировки выполняются операции, которые берут блокировки тика сами.
+     */
+    private static final class Task {
+        private final Operation operation;
+        private final CompletableFuture<Void> future;
+        private final Lock lock;
+        private final long enqueued = System.nanoTime();
+
+        private Task(Operation operation, CompletableFuture<Void> future, Lock lock) {
+            this.operation = operation;
+            this.future = future;
+            this.lock = lock;
+        }
+
+        private Throwable execute() {
+            if (lock != null) {
+                lock.lock();
+            }
+            try {
+                operation.execute();
+                return null;
+            } catch (Exception | Error e) {
+                return e;
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
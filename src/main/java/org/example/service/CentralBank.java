@@ -1,13 +1,21 @@
 package org.example.service;
 
 import org.example.entities.Bank;
+import org.example.entities.CreditCard;
+import org.example.entities.DepositCard;
 import org.example.entities.ICard;
+import org.example.entities.IdSpace;
+import org.example.entities.Transaction;
+import org.example.entities.User;
 import org.example.exception.CentralBankException;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * CentralBank представляет собой центральный банк, который управляет списком банков и их транзакциями.
@@ -19,6 +27,12 @@ import java.util.UUID;
 public class CentralBank {
 
     private final List<Bank> listBanks;
+    private final ReentrantReadWriteLock epochLock = new ReentrantReadWriteLock();
+    private final AtomicLong epoch = new AtomicLong();
+    private final CustomerDirectory customerDirectory = new CustomerDirectory();
+    private volatile ClearingHouse clearingHouse;
+    private volatile boolean directoryLinked = true;
+    private volatile IdSpace ids = new IdSpace();
 
     /**
      * Создает новый объект CentralBank.
@@ -31,19 +45,175 @@ public class CentralBank {
         return Collections.unmodifiableList(listBanks);
     }
 
+    /**
+     * Возвращает пространство внутренних идентификаторов карт и пользователей центрального банка.
+     *
+     * @return пространство идентификаторов, общее для всех банков центрального банка
+     */
+    public IdSpace getIdSpace() {
+        return ids;
+    }
+
     /**
      * Добавляет новый банк в список банков, управляемых этим центральным банком.
+     * Пустой банк переходит в пространство идентификаторов центрального банка; если же центральный банк
+     * еще не выдал ни одного идентификатора, он сам принимает пространство добавляемого банка.
+     * Уже имеющиеся пользователи и карты банка вносятся в справочник клиентов, дальнейшие изменения
+     * банк сообщает справочнику сам.
      *
      * @param newBank новый банк для добавления
-     * @throws CentralBankException если параметр newBank равен нулю
+     * @throws CentralBankException если параметр newBank равен нулю или банк уже выдавал идентификаторы
+     *                              в пространстве другого центрального банка
      */
     public void addBank(Bank newBank) throws Exception {
         if (newBank == null) {
             throw new CentralBankException("Unable to add bank due to null object");
         }
+        if (!newBank.joinIdSpace(ids)) {
+            if (!ids.isEmpty()) {
+                throw new CentralBankException("Bank already uses ids of another central bank");
+            }
+            ids = newBank.getIdSpace();
+            for (Bank bank : listBanks) {
+                bank.joinIdSpace(ids);
+            }
+        }
+        newBank.setUpdateLock(epochLock.readLock());
+        if (directoryLinked) {
+            linkDirectory(newBank);
+        }
+        newBank.addBankListener(customerDirectory);
         listBanks.add(newBank);
     }
 
+    private void linkDirectory(Bank bank) {
+        for (User user : bank.getListUsers()) {
+            customerDirectory.userAdded(bank, user);
+            for (int i = 0; i < user.getCardCount(); i++) {
+                ICard card = bank.findCard(user.getCardIndex(i));
+                if (card != null) {
+                    customerDirectory.cardOpened(bank, user, card);
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает справочник клиентов по номеру паспорта, объединяющий пользователей и карты всех банков.
+     * В ответвлении уже имевшиеся пользователи и карты вносятся в справочник при первом запросе,
+     * чтобы ответвление не обходило все карты.
+     *
+     * @return справочник клиентов
+     */
+    public synchronized CustomerDirectory getCustomerDirectory() {
+        if (!directoryLinked) {
+            for (Bank bank : listBanks) {
+                linkDirectory(bank);
+            }
+            directoryLinked = true;
+        }
+        return customerDirectory;
+    }
+
+    /**
+     * Включает клиринг переводов между разными банками: списание с отправителя остается немедленным,
+     * а зачисления получателям и расчеты между банками выполняются раз в день на тике клиринга.
+     * Клиринг нужно подписать на TimeManager, иначе зачисления будут ждать явного вызова settle.
+     *
+     * @return клиринг центрального банка
+     */
+    public synchronized ClearingHouse enableClearing() {
+        if (clearingHouse == null) {
+            clearingHouse = new ClearingHouse(this, epochLock.writeLock());
+        }
+        return clearingHouse;
+    }
+
+    /**
+     * Возвращает клиринг центрального банка.
+     *
+     * @return клиринг или null, если переводы между банками зачисляются сразу
+     */
+    public ClearingHouse getClearingHouse() {
+        return clearingHouse;
+    }
+
+    /**
+     * Создает ответвление центрального банка для сценария "что если": каждый банк ответвляется
+     * с сохранением своих условий, состояние карт и истории копируются только при изменении,
+     * а копии карт создаются при первом обращении к ним. Ответвление стоит O(страниц таблиц состояния
+     * банков и ожидающих зачислений клиринга) и не зависит от числа карт.
+     * Ответвление продвигается своим TimeManager независимо от исходного центрального банка.
+     *
+     * @return ответвленный центральный банк
+     * @throws Exception если какой-либо банк не удалось ответвить
+     * @see Bank#fork(double, double, double, double)
+     */
+    public CentralBank fork() throws Exception {
+        CentralBank fork = new CentralBank();
+        fork.ids = ids;
+        fork.directoryLinked = false;
+        for (Bank bank : listBanks) {
+            fork.addBank(bank.fork());
+        }
+        if (clearingHouse != null) {
+            fork.clearingHouse = clearingHouse.fork(fork, fork.epochLock.writeLock());
+        }
+        return fork;
+    }
+
+    /**
+     * Закрепляет новую эпоху и возвращает согласованный снимок всех банков, балансов и историй транзакций.
+     * Переводы, отмены и тики выполняются под разделяемой стороной блокировки эпох, а снимок берет
+     * исключительную сторону только на время закрепления эпохи, поэтому в снимок не попадают
+     * наполовину выполненные операции. Под блокировкой страницы таблиц состояния лишь помечаются общими,
+     * а карты снимка создаются при чтении уже после её снятия: первая после закрепления запись в страницу
+     * копирует её, а первое изменение истории транзакций карты сохраняет для снимка её прообраз.
+     * Поэтому исключительная сторона удерживается O(страниц), а не O(карт), и чтение снимка не задерживает записи.
+     * Операции, вызванные напрямую у карт в обход центрального банка, блокировкой не покрываются.
+     *
+     * @return снимок состояния
+     * @throws Exception если состояние не удалось ответвить
+     */
+    public CentralBankSnapshot snapshot() throws Exception {
+        epochLock.writeLock().lock();
+        try {
+            return new CentralBankSnapshot(epoch.incrementAndGet(), fork());
+        } finally {
+            epochLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает кредитные карты с наибольшей задолженностью во всех банках, сливая рейтинги банков.
+     *
+     * @param n максимальное количество карт
+     * @return карты с отрицательным балансом по убыванию задолженности
+     */
+    public List<CreditCard> getMostOverdrawnCreditCards(int n) {
+        List<CreditCard> result = new ArrayList<>();
+        for (Bank bank : listBanks) {
+            result.addAll(bank.getMostOverdrawnCreditCards(n));
+        }
+        result.sort(Comparator.comparingDouble(CreditCard::getBalance));
+        return result.size() > n ? new ArrayList<>(result.subList(0, n)) : result;
+    }
+
+    /**
+     * Возвращает депозиты с наибольшим балансом во всех банках, сливая рейтинги банков.
+     *
+     * @param n максимальное количество карт
+     * @return депозитные карты по убыванию баланса
+     */
+    public List<DepositCard> getLargestDeposits(int n) {
+        List<DepositCard> result = new ArrayList<>();
+        for (Bank bank : listBanks) {
+            result.addAll(bank.getLargestDeposits(n));
+        }
+        result.sort(Comparator.comparingDouble(DepositCard::getBalance).reversed());
+        return result.size() > n ? new ArrayList<>(result.subList(0, n)) : result;
+    }
+
     /**
      * Возвращает банк с указанным названием.
      *
@@ -66,11 +236,51 @@ public class CentralBank {
      * @throws CentralBankException если не найдена карта с указанным ID карты
      */
     public ICard getCard(UUID cardId) throws Exception {
-        return listBanks.stream()
-                .flatMap(bank -> bank.getListCards().stream())
-                .filter(card -> card.getId().equals(cardId))
-                .findFirst()
-                .orElseThrow(() -> new CentralBankException("Card not found"));
+        return getCard(ids.getCards().indexOf(cardId));
+    }
+
+    /**
+     * Возвращает карту по внутреннему идентификатору.
+     *
+     * @param cardIndex внутренний идентификатор карты
+     * @return карта с указанным идентификатором
+     * @throws CentralBankException если карта не принадлежит ни одному из банков
+     */
+    public ICard getCard(int cardIndex) throws Exception {
+        for (Bank bank : listBanks) {
+            ICard card = bank.findCard(cardIndex);
+            if (card != null) {
+                return card;
+            }
+        }
+        throw new CentralBankException("Card not found");
+    }
+
+    /**
+     * Возвращает номер банка карты в списке банков.
+     *
+     * @param cardIndex внутренний идентификатор карты
+     * @return номер банка или -1, если карта не принадлежит ни одному из банков
+     */
+    int bankOf(int cardIndex) {
+        for (int i = 0; i < listBanks.size(); i++) {
+            if (listBanks.get(i).findCard(cardIndex) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Переводит деньги между картами, при включенном клиринге откладывая зачисление в другой банк.
+     */
+    private void transfer(double money, ICard from, ICard to) throws Exception {
+        ClearingHouse clearing = clearingHouse;
+        if (clearing == null) {
+            from.transferMoney(money, to);
+            return;
+        }
+        clearing.transfer(money, from, bankOf(from.getIndex()), bankOf(to.getIndex()), to);
     }
 
     /**
@@ -82,7 +292,75 @@ public class CentralBank {
      * @throws CentralBankException если либо fromCardId, либо toCardId недействительны
      */
     public void transferMoney(double money, UUID fromCardId, UUID toCardId) throws Exception {
-        getCard(fromCardId).transferMoney(money, getCard(toCardId));
+        epochLock.readLock().lock();
+        try {
+            transfer(money, getCard(fromCardId), getCard(toCardId));
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Снимает деньги с карты.
+     *
+     * @param cardId ID карты
+     * @param money  сумма снятия
+     * @throws CentralBankException если карта не найдена
+     */
+    public void withdrawMoney(UUID cardId, double money) throws Exception {
+        epochLock.readLock().lock();
+        try {
+            getCard(cardId).withdrawMoney(money);
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Пополняет карту.
+     *
+     * @param cardId ID карты
+     * @param money  сумма пополнения
+     * @throws CentralBankException если карта не найдена
+     */
+    public void topUpCard(UUID cardId, double money) throws Exception {
+        epochLock.readLock().lock();
+        try {
+            getCard(cardId).topUpCard(money);
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Выполняет пакет переводов между картами, заданными внутренними идентификаторами.
+     * Ошибка одного перевода не прерывает пакет: она сохраняется в errors под тем же номером,
+     * а для успешных переводов в errors записывается null.
+     *
+     * @param count     количество переводов в пакете
+     * @param fromCards внутренние идентификаторы карт списания
+     * @param toCards   внутренние идентификаторы карт зачисления
+     * @param amounts   суммы переводов
+     * @param errors    массив для ошибок переводов
+     * @return количество неуспешных переводов
+     */
+    public int transferMoney(int count, int[] fromCards, int[] toCards, double[] amounts, Exception[] errors) {
+        int failures = 0;
+        epochLock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    transfer(amounts[i], getCard(fromCards[i]), getCard(toCards[i]));
+                    errors[i] = null;
+                } catch (Exception e) {
+                    errors[i] = e;
+                    failures++;
+                }
+            }
+        } finally {
+            epochLock.readLock().unlock();
+        }
+        return failures;
     }
 
     /**
@@ -90,26 +368,39 @@ public class CentralBank {
      *
      * @param user   ID пользователя, совершившего транзакцию
      * @param number номер транзакции для отмены
-     * @throws CentralBankException если транзакцию нельзя отменить
+     * @throws CentralBankException если транзакцию нельзя отменить, в том числе если она уже выгружена в архив
      */
     public void transactionCancellation(UUID user, int number) throws Exception {
-        ICard getCardTransaction = getCard(user);
-        if (getCardTransaction.getTransaction(number).getFrom() != null
-                && getCardTransaction.getTransaction(number).getTo() == null) {
-            getCardTransaction.withdrawMoneyWithOutHistory(getCardTransaction.getTransaction(number).getMoney());
-            getCardTransaction.removeTransaction(number);
-        } else {
-            if (getCardTransaction.getTransaction(number).getFrom() == null
-                    && getCardTransaction.getTransaction(number).getTo() != null) {
-                getCardTransaction.topUpCardWithOutHistory(getCardTransaction.getTransaction(number).getMoney());
-                getCardTransaction.removeTransaction(number);
-            } else if (getCardTransaction.getTransaction(number).getFrom() != null
-                    && getCardTransaction.getTransaction(number).getTo() != null) {
-                getCardTransaction.topUpCardWithOutHistory(getCardTransaction.getTransaction(number).getMoney());
-                getCard(getCardTransaction.getTransaction(number).getTo())
-                        .withdrawMoneyWithOutHistory(getCardTransaction.getTransaction(number).getMoney());
+        epochLock.readLock().lock();
+        try {
+            ICard getCardTransaction = getCard(user);
+            if (getCardTransaction.getTransactionHistory().isArchived(number)) {
+                throw new CentralBankException("Archived transactions cannot be cancelled");
+            }
+            if (getCardTransaction.getTransaction(number).getFrom() != null
+                    && getCardTransaction.getTransaction(number).getTo() == null) {
+                getCardTransaction.withdrawMoneyWithOutHistory(getCardTransaction.getTransaction(number).getMoney());
                 getCardTransaction.removeTransaction(number);
+            } else {
+                if (getCardTransaction.getTransaction(number).getFrom() == null
+                        && getCardTransaction.getTransaction(number).getTo() != null) {
+                    getCardTransaction.topUpCardWithOutHistory(getCardTransaction.getTransaction(number).getMoney());
+                    getCardTransaction.removeTransaction(number);
+                } else if (getCardTransaction.getTransaction(number).getFrom() != null
+                        && getCardTransaction.getTransaction(number).getTo() != null) {
+                    synchronized (getCardTransaction) {
+                        Transaction transaction = getCardTransaction.getTransaction(number);
+                        getCardTransaction.topUpCardWithOutHistory(transaction.getMoney());
+                        ClearingHouse clearing = clearingHouse;
+                        if (clearing == null || !clearing.cancel(transaction)) {
+                            getCard(transaction.getToIndex()).withdrawMoneyWithOutHistory(transaction.getMoney());
+                        }
+                        getCardTransaction.removeTransaction(number);
+                    }
+                }
             }
+        } finally {
+            epochLock.readLock().unlock();
         }
     }
 }
@@ -0,0 +1,55 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.ICard;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Согласованный снимок центрального банка, закрепленный за эпохой.
+ * Снимок предназначен только для чтения: отчеты обходят банки, карты, балансы и истории транзакций
+ * в том виде, в каком они были на момент закрепления эпохи, пока переводы и тики продолжаются.
+ */
+public class CentralBankSnapshot {
+    private final long epoch;
+    private final CentralBank view;
+
+    CentralBankSnapshot(long epoch, CentralBank view) {
+        this.epoch = epoch;
+        this.view = view;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    CentralBank getView() {
+        return view;
+    }
+
+    public List<Bank> getListBanks() {
+        return view.getListBanks();
+    }
+
+    public Bank getBank(String title) throws Exception {
+        return view.getBank(title);
+    }
+
+    public ICard getCard(UUID cardId) throws Exception {
+        return view.getCard(cardId);
+    }
+
+    /**
+     * Возвращает суммарный баланс карт всех банков на момент снимка.
+     *
+     * @return суммарный баланс
+     */
+    public double getTotalBalance() {
+        double total = 0;
+        for (Bank bank : view.getListBanks()) {
+            total += bank.getTotalBalance();
+        }
+        return total;
+    }
+}
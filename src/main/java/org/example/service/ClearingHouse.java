@@ -0,0 +1,388 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.IBalanceObserver;
+import org.example.entities.ICard;
+import org.example.entities.IClock;
+import org.example.entities.IObserver;
+import org.example.entities.Transaction;
+import org.example.entities.TransactionHistory;
+import org.example.entities.VelocityLimiter;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Клиринг переводов между разными банками центрального банка.
+ * Перевод списывается с карты отправителя и записывается в её журнал сразу, а зачисление получателю
+ * откладывается: в течение дня суммы копятся по картам-получателям и по парам банков.
+ * На тике TimeManager клиринг в один проход зачисляет каждой карте-получателю сумму за день
+ * одной операцией и взаимно погашает обязательства каждой пары банков, меняя их расчетные позиции
+ * только на разницу встречных потоков.
+ * Банки обозначаются номером в списке центрального банка, карты - внутренним идентификатором,
+ * поэтому ожидающие зачисления переносятся в ответвления и снимки центрального банка.
+ * Каждый ожидающий перевод хранится по своей транзакции в журнале отправителя, поэтому отмена
+ * снимает с клиринга только сам этот перевод, а не другой перевод тому же получателю.
+ */
+public class ClearingHouse implements IObserver {
+    private final CentralBank centralBank;
+    private final Lock settlementLock;
+    private final Map<Integer, DoubleAdder> pendingCredits = new ConcurrentHashMap<>();
+    private final Map<Long, DoubleAdder> obligations = new ConcurrentHashMap<>();
+    private final Map<Integer, Double> settlementBalances = new ConcurrentHashMap<>();
+    private final Map<Transaction, PendingTransfer> pendingTransfers = new ConcurrentHashMap<>();
+    private long settledTransfers;
+    private int lastCardCredits;
+    private int lastNetObligations;
+
+    ClearingHouse(CentralBank centralBank, Lock settlementLock) {
+        this.centralBank = centralBank;
+        this.settlementLock = settlementLock;
+    }
+
+    /**
+     * Создает копию состояния клиринга для ответвления центрального банка.
+     * Вызывается, пока переводы остановлены блокировкой эпох.
+     *
+     * @param fork           ответвленный центральный банк
+     * @param settlementLock исключительная блокировка ответвления
+     * @return клиринг ответвления с теми же ожидающими зачислениями и позициями
+     */
+    ClearingHouse fork(CentralBank fork, Lock settlementLock) {
+        ClearingHouse copy = new ClearingHouse(fork, settlementLock);
+        for (Map.Entry<Integer, DoubleAdder> entry : pendingCredits.entrySet()) {
+            copy.pendingCredits.computeIfAbsent(entry.getKey(), key -> new DoubleAdder()).add(entry.getValue().sum());
+        }
+        for (Map.Entry<Long, DoubleAdder> entry : obligations.entrySet()) {
+            copy.obligations.computeIfAbsent(entry.getKey(), key -> new DoubleAdder()).add(entry.getValue().sum());
+        }
+        copy.settlementBalances.putAll(settlementBalances);
+        copy.pendingTransfers.putAll(pendingTransfers);
+        copy.settledTransfers = settledTransfers;
+        return copy;
+    }
+
+    /**
+     * Переводит деньги между картами. Перевод в другой банк списывается с отправителя сразу, а зачисление
+     * получателю записывается в клиринг вместе с транзакцией перевода в журнале отправителя.
+     * Перевод и отмена удерживают блокировку карты отправителя, поэтому отмена не застанет перевод,
+     * транзакция которого уже в журнале, а в клиринг он еще не записан.
+     *
+     * @param money  сумма перевода
+     * @param from   карта отправителя
+     * @param payer  номер банка отправителя
+     * @param payee  номер банка получателя
+     * @param to     карта получателя
+     * @throws Exception если карта отправителя отклонила перевод
+     */
+    void transfer(double money, ICard from, int payer, int payee, ICard to) throws Exception {
+        if (payer == payee || payer < 0 || payee < 0) {
+            from.transferMoney(money, to);
+            return;
+        }
+        PendingCredit credit = new PendingCredit(to);
+        synchronized (from) {
+            from.transferMoney(money, credit);
+            TransactionHistory history = from.getTransactionHistory();
+            PendingTransfer transfer = new PendingTransfer(payer, payee, to.getIndex(), credit.money);
+            pendingTransfers.put(history.get(history.size() - 1), transfer);
+            pendingCredits.computeIfAbsent(transfer.receiver, key -> new DoubleAdder()).add(transfer.money);
+            obligations.computeIfAbsent(pairKey(payer, payee), key -> new DoubleAdder()).add(transfer.money);
+        }
+    }
+
+    /**
+     * Снимает с клиринга еще не зачисленный перевод при его отмене.
+     * Вызывается под блокировкой карты отправителя.
+     *
+     * @param transaction транзакция перевода в журнале отправителя
+     * @return true, если перевод ожидал зачисления и снят с клиринга; false, если он уже зачислен
+     */
+    boolean cancel(Transaction transaction) {
+        PendingTransfer transfer = pendingTransfers.remove(transaction);
+        if (transfer == null) {
+            return false;
+        }
+        pendingCredits.computeIfAbsent(transfer.receiver, key -> new DoubleAdder()).add(-transfer.money);
+        obligations.computeIfAbsent(pairKey(transfer.payer, transfer.payee), key -> new DoubleAdder())
+                .add(-transfer.money);
+        return true;
+    }
+
+    @Override
+    public void update(LocalDateTime timeStamp) throws Exception {
+        settle();
+    }
+
+    /**
+     * Зачисляет переводы за день и погашает обязательства между банками.
+     * Переводы на время расчета останавливаются, чтобы ни одно зачисление не потерялось.
+     * Все карты-получатели находятся до первого зачисления, а каждое зачисление сразу снимается с клиринга,
+     * поэтому после ошибки повторный расчет не зачислит ни одну сумму дважды.
+     *
+     * @return количество переводов, вошедших в расчет
+     * @throws Exception если карта-получатель не найдена; в этом случае ничего не зачисляется
+     */
+    public long settle() throws Exception {
+        settlementLock.lock();
+        try {
+            Map<Integer, ICard> receivers = new HashMap<>();
+            for (Map.Entry<Integer, DoubleAdder> entry : pendingCredits.entrySet()) {
+                if (entry.getValue().sum() > 0) {
+                    receivers.put(entry.getKey(), centralBank.getCard(entry.getKey()));
+                }
+            }
+            int credits = 0;
+            long transfers = 0;
+            Set<Integer> credited = new HashSet<>();
+            try {
+                Iterator<Map.Entry<Integer, DoubleAdder>> pending = pendingCredits.entrySet().iterator();
+                while (pending.hasNext()) {
+                    Map.Entry<Integer, DoubleAdder> entry = pending.next();
+                    double money = entry.getValue().sum();
+                    if (money > 0) {
+                        receivers.get(entry.getKey()).topUpCardWithOutHistory(money);
+                        credits++;
+                    }
+                    pending.remove();
+                    credited.add(entry.getKey());
+                }
+            } finally {
+                transfers = removeTransfers(credited);
+                settledTransfers += transfers;
+            }
+
+            Map<Long, Double> gross = new HashMap<>();
+            for (Map.Entry<Long, DoubleAdder> entry : obligations.entrySet()) {
+                gross.put(entry.getKey(), entry.getValue().sum());
+            }
+            obligations.clear();
+            int netObligations = 0;
+            for (Map.Entry<Long, Double> entry : gross.entrySet()) {
+                int payer = (int) (entry.getKey() >>> 32);
+                int payee = (int) (long) entry.getKey();
+                if (payer > payee && gross.containsKey(pairKey(payee, payer))) {
+                    continue;
+                }
+                double net = entry.getValue() - gross.getOrDefault(pairKey(payee, payer), 0.0);
+                if (net != 0) {
+                    settlementBalances.merge(payer, -net, Double::sum);
+                    settlementBalances.merge(payee, net, Double::sum);
+                    netObligations++;
+                }
+            }
+
+            lastCardCredits = credits;
+            lastNetObligations = netObligations;
+            return transfers;
+        } finally {
+            settlementLock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает сумму переводов, ожидающих зачисления на карту.
+     *
+     * @param cardIndex внутренний идентификатор карты
+     * @return ожидающая зачисления сумма
+     */
+    public double getPendingCredit(int cardIndex) {
+        DoubleAdder pending = pendingCredits.get(cardIndex);
+        return pending == null ? 0 : pending.sum();
+    }
+
+    /**
+     * Возвращает чистую позицию банка за текущий день: входящие переводы из других банков минус исходящие.
+     *
+     * @param bank банк центрального банка
+     * @return положительная позиция - банку причитается, отрицательная - банк должен
+     */
+    public double getNetPosition(Bank bank) {
+        int index = centralBank.getListBanks().indexOf(bank);
+        double position = 0;
+        for (Map.Entry<Long, DoubleAdder> entry : obligations.entrySet()) {
+            if ((int) (long) entry.getKey() == index) {
+                position += entry.getValue().sum();
+            }
+            if ((int) (entry.getKey() >>> 32) == index) {
+                position -= entry.getValue().sum();
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Возвращает накопленный результат всех прошедших расчетов банка.
+     *
+     * @param bank банк центрального банка
+     * @return сумма чистых позиций банка по всем расчетам
+     */
+    public double getSettlementBalance(Bank bank) {
+        return settlementBalances.getOrDefault(centralBank.getListBanks().indexOf(bank), 0.0);
+    }
+
+    public long getPendingTransfers() {
+        return pendingTransfers.size();
+    }
+
+    public long getSettledTransfers() {
+        return settledTransfers;
+    }
+
+    public int getLastCardCredits() {
+        return lastCardCredits;
+    }
+
+    public int getLastNetObligations() {
+        return lastNetObligations;
+    }
+
+    /**
+     * Снимает с учета переводы, зачисленные указанным получателям.
+     *
+     * @return количество снятых переводов
+     */
+    private long removeTransfers(Set<Integer> credited) {
+        long count = 0;
+        Iterator<PendingTransfer> transfers = pendingTransfers.values().iterator();
+        while (transfers.hasNext()) {
+            if (credited.contains(transfers.next().receiver)) {
+                transfers.remove();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long pairKey(int payer, int payee) {
+        return (long) payer << 32 | payee & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Ожидающий зачисления перевод: банки отправителя и получателя, карта получателя и сумма.
+     */
+    private static final class PendingTransfer {
+        private final int payer;
+        private final int payee;
+        private final int receiver;
+        private final double money;
+
+        private PendingTransfer(int payer, int payee, int receiver, double money) {
+            this.payer = payer;
+            this.payee = payee;
+            this.receiver = receiver;
+            this.money = money;
+        }
+    }
+
+    /**
+     * Заместитель карты-получателя в другом банке. Карта отправителя проверяет и списывает перевод
+     * как обычно и пишет в журнал настоящего получателя, а сумма зачисления запоминается для клиринга.
+     */
+    private static final class PendingCredit implements ICard {
+        private final ICard receiver;
+        private double money;
+
+        private PendingCredit(ICard receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void topUpCardWithOutHistory(double money) {
+            this.money += money;
+        }
+
+        @Override
+        public void withdrawMoneyWithOutHistory(double money) throws Exception {
+            receiver.withdrawMoneyWithOutHistory(money);
+        }
+
+        @Override
+        public UUID getId() {
+            return receiver.getId();
+        }
+
+        @Override
+        public int getIndex() {
+            return receiver.getIndex();
+        }
+
+        @Override
+        public double getBalance() {
+            return receiver.getBalance();
+        }
+
+        @Override
+        public double getOpeningBalance() {
+            return receiver.getOpeningBalance();
+        }
+
+        @Override
+        public double getAccruedInterest() {
+            return receiver.getAccruedInterest();
+        }
+
+        @Override
+        public void setBalanceObserver(IBalanceObserver balanceObserver) {
+            receiver.setBalanceObserver(balanceObserver);
+        }
+
+        @Override
+        public void setVelocityLimiter(VelocityLimiter velocityLimiter) {
+            receiver.setVelocityLimiter(velocityLimiter);
+        }
+
+        @Override
+        public void setClock(IClock clock) {
+            receiver.setClock(clock);
+        }
+
+        @Override
+        public void transferMoney(double money, ICard card) throws Exception {
+            receiver.transferMoney(money, card);
+        }
+
+        @Override
+        public Transaction getTransaction(int number) throws Exception {
+            return receiver.getTransaction(number);
+        }
+
+        @Override
+        public TransactionHistory getTransactionHistory() {
+            return receiver.getTransactionHistory();
+        }
+
+        @Override
+        public void topUpCard(double money) throws Exception {
+            receiver.topUpCard(money);
+        }
+
+        @Override
+        public void withdrawMoney(double money) throws Exception {
+            receiver.withdrawMoney(money);
+        }
+
+        @Override
+        public boolean getIdentification() {
+            return receiver.getIdentification();
+        }
+
+        @Override
+        public void setIdentificationFlag() {
+            receiver.setIdentificationFlag();
+        }
+
+        @Override
+        public void removeTransaction(int number) throws Exception {
+            receiver.removeTransaction(number);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.IBankListener;
+import org.example.entities.ICard;
+import org.example.entities.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Справочник клиентов центрального банка. Один человек, обслуживающийся в нескольких банках, представлен
+ * разными объектами User; справочник объединяет их по номеру паспорта и хранит для каждого пользователя
+ * список его карт во всех банках. Справочник подписан на банки и пользователей и обновляется при добавлении
+ * пользователя, открытии карты и указании паспорта, поэтому запрос портфеля стоит O(количество карт клиента).
+ * Пользователи без паспорта учитываются, но попадают в справочник клиентов только после указания паспорта.
+ */
+public class CustomerDirectory implements IBankListener {
+    private final Map<Integer, Entry> usersByIndex = new HashMap<>();
+    private final Map<Integer, List<Entry>> customers = new HashMap<>();
+
+    @Override
+    public synchronized void userAdded(Bank bank, User user) {
+        entry(user);
+    }
+
+    @Override
+    public synchronized void cardOpened(Bank bank, User owner, ICard card) {
+        entry(owner).cards.add(card);
+    }
+
+    /**
+     * Переносит пользователя в справочнике, если он указал или изменил номер паспорта.
+     *
+     * @param bank банк, сообщивший об изменении
+     * @param user пользователь, изменивший персональные данные
+     */
+    @Override
+    public synchronized void userIdentified(Bank bank, User user) {
+        Entry entry = entry(user);
+        if (entry.passportId == user.PassportId) {
+            return;
+        }
+        unlink(entry);
+        entry.passportId = user.PassportId;
+        link(entry);
+    }
+
+    /**
+     * Возвращает всех пользователей с указанным номером паспорта во всех банках.
+     *
+     * @param passportId номер паспорта
+     * @return пользователи клиента
+     */
+    public synchronized List<User> getUsers(int passportId) {
+        List<Entry> entries = customers.getOrDefault(passportId, Collections.emptyList());
+        List<User> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.user);
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает все карты клиента с указанным номером паспорта во всех банках.
+     *
+     * @param passportId номер паспорта
+     * @return карты клиента
+     */
+    public synchronized List<ICard> getCards(int passportId) {
+        List<ICard> result = new ArrayList<>();
+        for (Entry entry : customers.getOrDefault(passportId, Collections.emptyList())) {
+            result.addAll(entry.cards);
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает суммарный баланс карт клиента во всех банках.
+     *
+     * @param passportId номер паспорта
+     * @return суммарный баланс
+     */
+    public synchronized double getPortfolioBalance(int passportId) {
+        double total = 0;
+        for (Entry entry : customers.getOrDefault(passportId, Collections.emptyList())) {
+            for (ICard card : entry.cards) {
+                total += card.getBalance();
+            }
+        }
+        return total;
+    }
+
+    public synchronized int getCustomerCount() {
+        return customers.size();
+    }
+
+    private Entry entry(User user) {
+        Entry entry = usersByIndex.get(user.getUserIndex());
+        if (entry == null) {
+            entry = new Entry(user);
+            usersByIndex.put(user.getUserIndex(), entry);
+            link(entry);
+        }
+        return entry;
+    }
+
+    private void link(Entry entry) {
+        if (entry.passportId > 0) {
+            customers.computeIfAbsent(entry.passportId, passportId -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        List<Entry> entries = customers.get(entry.passportId);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                customers.remove(entry.passportId);
+            }
+        }
+    }
+
+    /**
+     * Пользователь в справочнике и его карты во всех банках центрального банка.
+     */
+    private static final class Entry {
+        private final User user;
+        private final List<ICard> cards = new ArrayList<>();
+        private int passportId;
+
+        private Entry(User user) {
+            this.user = user;
+            this.passportId = user.PassportId;
+        }
+    }
+}
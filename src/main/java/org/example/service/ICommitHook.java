@@ -0,0 +1,9 @@
+package org.example.service;
+
+/**
+ * Групповая фиксация пакета операций асинхронного центрального банка,
+ * например сброс журнала на диск. Вызывается один раз на пакет, до завершения futures его операций.
+ */
+public interface ICommitHook {
+    void commit(int operations) throws Exception;
+}
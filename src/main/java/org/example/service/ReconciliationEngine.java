@@ -0,0 +1,208 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.ICard;
+import org.example.entities.IdDictionary;
+import org.example.entities.Transaction;
+import org.example.exception.ReconciliationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сверка балансов всех карт с журналами транзакций по принципу двойной записи.
+ * Ожидаемый баланс карты восстанавливается как начальный баланс плюс начисленные проценты,
+ * плюс пополнения и минус снятия и исходящие переводы из журнала карты, плюс входящие переводы
+ * из журналов карт-отправителей (у получателя перевод в журнал не пишется), кроме еще не зачисленных клирингом.
+ * Сверка идет в два параллельных прохода fork-join по диапазонам карт: первый проход читает журналы
+ * и раскладывает входящие переводы по картам-получателям, второй сравнивает ожидаемые балансы с фактическими.
+ * Входящие переводы копятся по позициям сверяемых карт, поэтому память сверки растет с числом карт,
+ * а перевод на карту, не входящую в сверку, делает сверку невозможной.
+ * Во время сверки центральный банк не должен изменяться, для сверки под нагрузкой сверяется снимок.
+ */
+public class ReconciliationEngine {
+    private static final int LEAF_CARDS = 256;
+
+    private final ForkJoinPool pool;
+    private final double tolerance;
+
+    /**
+     * Создает движок сверки на общем пуле fork-join с допуском в одну копейку.
+     */
+    public ReconciliationEngine() {
+        this(ForkJoinPool.commonPool(), 0.01);
+    }
+
+    /**
+     * Создает движок сверки.
+     *
+     * @param pool      пул fork-join для параллельных проходов
+     * @param tolerance допустимое расхождение, покрывающее накопленную погрешность сложения double
+     */
+    public ReconciliationEngine(ForkJoinPool pool, double tolerance) {
+        this.pool = pool;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Сверяет балансы на снимке центрального банка, не останавливая переводы и тики.
+     *
+     * @param snapshot снимок центрального банка
+     * @return отчет со списком расхождений
+     * @throws ReconciliationException если журнал какой-либо карты не удалось прочитать
+     */
+    public ReconciliationReport reconcile(CentralBankSnapshot snapshot) throws Exception {
+        return reconcile(snapshot.getView());
+    }
+
+    /**
+     * Сверяет балансы всех карт всех банков центрального банка.
+     *
+     * @param centralBank центральный банк
+     * @return отчет со списком расхождений
+     * @throws ReconciliationException если журнал какой-либо карты не удалось прочитать или в журнале
+     *                                 есть перевод на карту, не принадлежащую банкам центрального банка
+     */
+    public ReconciliationReport reconcile(CentralBank centralBank) throws Exception {
+        long started = System.nanoTime();
+        List<ICard> list = new ArrayList<>();
+        for (Bank bank : centralBank.getListBanks()) {
+            list.addAll(bank.getListCards());
+        }
+        Pass pass = new Pass(list.toArray(new ICard[0]), centralBank.getClearingHouse());
+        pass.scan = true;
+        pool.invoke(pass.new Range(0, pass.cards.length));
+        Exception failure = pass.error.get();
+        if (failure instanceof ReconciliationException) {
+            throw failure;
+        }
+        if (failure != null) {
+            ReconciliationException error = new ReconciliationException("Journal cannot be read");
+            error.initCause(failure);
+            throw error;
+        }
+        pass.scan = false;
+        pool.invoke(pass.new Range(0, pass.cards.length));
+
+        List<ReconciliationReport.Mismatch> mismatches = new ArrayList<>();
+        for (ReconciliationReport.Mismatch mismatch : pass.mismatches) {
+            if (mismatch != null) {
+                mismatches.add(mismatch);
+            }
+        }
+        return new ReconciliationReport(pass.cards.length, pass.transactions.sum(),
+                System.nanoTime() - started, mismatches);
+    }
+
+    /**
+     * Состояние одной сверки, общее для задач обоих проходов.
+     */
+    private final class Pass {
+        private final ICard[] cards;
+        private final ClearingHouse clearing;
+        private final double[] journal;
+        private final Map<Integer, Integer> positions;
+        private final AtomicLongArray incoming;
+        private final ReconciliationReport.Mismatch[] mismatches;
+        private final LongAdder transactions = new LongAdder();
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+        private volatile boolean scan;
+
+        private Pass(ICard[] cards, ClearingHouse clearing) {
+            this.cards = cards;
+            this.clearing = clearing;
+            this.journal = new double[cards.length];
+            this.positions = new HashMap<>(cards.length * 2);
+            for (int position = 0; position < cards.length; position++) {
+                positions.put(cards[position].getIndex(), position);
+            }
+            this.incoming = new AtomicLongArray(cards.length);
+            this.mismatches = new ReconciliationReport.Mismatch[cards.length];
+        }
+
+        private void scanJournal(int position) throws Exception {
+            ICard card = cards[position];
+            Transaction[] history = card.getTransactionHistory().toArray();
+            double delta = 0;
+            for (Transaction transaction : history) {
+                int from = transaction.getFromIndex();
+                int to = transaction.getToIndex();
+                double money = transaction.getMoney();
+                if (to == IdDictionary.NONE) {
+                    delta += money;
+                } else if (from == IdDictionary.NONE) {
+                    delta -= money;
+                } else {
+                    delta -= money;
+                    addIncoming(transaction, money);
+                }
+            }
+            journal[position] = delta;
+            transactions.add(history.length);
+        }
+
+        private void addIncoming(Transaction transaction, double money) throws Exception {
+            Integer position = positions.get(transaction.getToIndex());
+            if (position == null) {
+                throw new ReconciliationException("Transfer receiver " + transaction.getTo() + " is not reconciled");
+            }
+            while (true) {
+                long bits = incoming.get(position);
+                long updated = Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + money);
+                if (incoming.compareAndSet(position, bits, updated)) {
+                    return;
+                }
+            }
+        }
+
+        private void compare(int position) {
+            ICard card = cards[position];
+            double expected = card.getOpeningBalance() + card.getAccruedInterest() + journal[position]
+                    + Double.longBitsToDouble(incoming.get(position))
+                    - (clearing == null ? 0 : clearing.getPendingCredit(card.getIndex()));
+            if (Math.abs(expected - card.getBalance()) > tolerance) {
+                mismatches[position] = new ReconciliationReport.Mismatch(card.getId(), expected, card.getBalance());
+            }
+        }
+
+        /**
+         * Диапазон карт, который делится пополам, пока не станет не больше LEAF_CARDS.
+         */
+        private final class Range extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private Range(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > LEAF_CARDS) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new Range(from, middle), new Range(middle, to));
+                    return;
+                }
+                for (int position = from; position < to; position++) {
+                    if (!scan) {
+                        compare(position);
+                        continue;
+                    }
+                    try {
+                        scanJournal(position);
+                    } catch (Exception e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Результат сверки балансов карт с журналами транзакций.
+ */
+public class ReconciliationReport {
+    private final long cardsChecked;
+    private final long transactionsScanned;
+    private final long elapsedNanos;
+    private final List<Mismatch> mismatches;
+
+    ReconciliationReport(long cardsChecked, long transactionsScanned, long elapsedNanos, List<Mismatch> mismatches) {
+        this.cardsChecked = cardsChecked;
+        this.transactionsScanned = transactionsScanned;
+        this.elapsedNanos = elapsedNanos;
+        this.mismatches = Collections.unmodifiableList(mismatches);
+    }
+
+    public long getCardsChecked() {
+        return cardsChecked;
+    }
+
+    public long getTransactionsScanned() {
+        return transactionsScanned;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public List<Mismatch> getMismatches() {
+        return mismatches;
+    }
+
+    public boolean isBalanced() {
+        return mismatches.isEmpty();
+    }
+
+    /**
+     * Расхождение баланса карты с балансом, восстановленным по журналам.
+     */
+    public static class Mismatch {
+        private final UUID cardId;
+        private final double expected;
+        private final double actual;
+
+        Mismatch(UUID cardId, double expected, double actual) {
+            this.cardId = cardId;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public UUID getCardId() {
+            return cardId;
+        }
+
+        public double getExpected() {
+            return expected;
+        }
+
+        public double getActual() {
+            return actual;
+        }
+    }
+}
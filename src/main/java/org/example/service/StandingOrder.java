@@ -0,0 +1,78 @@
+package org.example.service;
+
+/**
+ * Постоянное поручение: перевод фиксированной суммы с одной карты на другую с заданной периодичностью.
+ * Карты хранятся внутренними идентификаторами, даты - номерами дней от эпохи.
+ */
+public class StandingOrder {
+    private final long orderId;
+    private final int fromCard;
+    private final int toCard;
+    private final double money;
+    private final int periodDays;
+    private long nextDay;
+    private boolean cancelled;
+    private long executions;
+    private long failures;
+
+    StandingOrder(long orderId, int fromCard, int toCard, double money, int periodDays, long nextDay) {
+        this.orderId = orderId;
+        this.fromCard = fromCard;
+        this.toCard = toCard;
+        this.money = money;
+        this.periodDays = periodDays;
+        this.nextDay = nextDay;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public int getFromCard() {
+        return fromCard;
+    }
+
+    public int getToCard() {
+        return toCard;
+    }
+
+    public double getMoney() {
+        return money;
+    }
+
+    public int getPeriodDays() {
+        return periodDays;
+    }
+
+    public long getNextDay() {
+        return nextDay;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    void setNextDay(long nextDay) {
+        this.nextDay = nextDay;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    void executed(boolean success) {
+        if (success) {
+            executions++;
+        } else {
+            failures++;
+        }
+    }
+}
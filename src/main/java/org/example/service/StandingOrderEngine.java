@@ -0,0 +1,154 @@
+package org.example.service;
+
+import org.example.entities.IObserver;
+import org.example.exception.StandingOrderException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Движок постоянных поручений и отложенных переводов.
+ * Подписывается на TimeManager как наблюдатель и на каждом тике исполняет только те поручения,
+ * срок которых наступил, выбирая их из иерархического колеса таймеров.
+ * Поручения одного дня исполняются одним пакетом через CentralBank.
+ */
+public class StandingOrderEngine implements IObserver {
+    private final CentralBank centralBank;
+    private final TimingWheel wheel;
+    private final Map<Long, StandingOrder> orders = new HashMap<>();
+    private final List<StandingOrder> due = new ArrayList<>();
+    private int[] fromCards = new int[16];
+    private int[] toCards = new int[16];
+    private double[] amounts = new double[16];
+    private Exception[] errors = new Exception[16];
+    private long nextOrderId = 1;
+    private long executed;
+    private long failed;
+
+    /**
+     * Создает движок постоянных поручений.
+     *
+     * @param centralBank центральный банк, через который исполняются переводы
+     * @param timeStamp   текущая отметка времени TimeManager, день которой считается уже обработанным
+     */
+    public StandingOrderEngine(CentralBank centralBank, LocalDateTime timeStamp) {
+        this.centralBank = centralBank;
+        this.wheel = new TimingWheel(timeStamp.toLocalDate().toEpochDay());
+    }
+
+    /**
+     * Регистрирует постоянное поручение.
+     *
+     * @param fromCardId ID карты списания
+     * @param toCardId   ID карты зачисления
+     * @param money      сумма перевода
+     * @param firstDate  дата первого исполнения
+     * @param periodDays периодичность в днях, 0 - однократный отложенный перевод
+     * @return идентификатор поручения
+     * @throws StandingOrderException если параметры поручения недопустимы
+     * @throws Exception              если какая-либо из карт не найдена
+     */
+    public long addStandingOrder(UUID fromCardId, UUID toCardId, double money, LocalDate firstDate, int periodDays)
+            throws Exception {
+        if (money <= 0) {
+            throw new StandingOrderException("Standing order amount must be positive");
+        }
+        if (periodDays < 0) {
+            throw new StandingOrderException("Standing order period cannot be negative");
+        }
+        int fromCard = centralBank.getCard(fromCardId).getIndex();
+        int toCard = centralBank.getCard(toCardId).getIndex();
+        long firstDay = Math.max(firstDate.toEpochDay(), wheel.getCurrentDay() + 1);
+        StandingOrder order = new StandingOrder(nextOrderId++, fromCard, toCard, money, periodDays, firstDay);
+        orders.put(order.getOrderId(), order);
+        wheel.schedule(order);
+        return order.getOrderId();
+    }
+
+    /**
+     * Отменяет поручение. Отмененное поручение удаляется из колеса при следующем проходе его ячейки.
+     *
+     * @param orderId идентификатор поручения
+     * @throws StandingOrderException если поручение не найдено
+     */
+    public void cancelStandingOrder(long orderId) throws Exception {
+        StandingOrder order = orders.remove(orderId);
+        if (order == null) {
+            throw new StandingOrderException("Standing order not found");
+        }
+        order.cancel();
+    }
+
+    public StandingOrder getStandingOrder(long orderId) {
+        return orders.get(orderId);
+    }
+
+    public int getActiveOrdersCount() {
+        return orders.size();
+    }
+
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    public long getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Исполняет поручения, срок которых наступил к указанной отметке времени.
+     * Неуспешное исполнение (например, из-за нехватки средств) пропускается и не останавливает остальные.
+     *
+     * @param timeStamp текущая отметка времени
+     */
+    @Override
+    public void update(LocalDateTime timeStamp) {
+        wheel.advance(timeStamp.toLocalDate().toEpochDay(), due);
+        if (due.isEmpty()) {
+            return;
+        }
+        int count = due.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            StandingOrder order = due.get(i);
+            fromCards[i] = order.getFromCard();
+            toCards[i] = order.getToCard();
+            amounts[i] = order.getMoney();
+        }
+        centralBank.transferMoney(count, fromCards, toCards, amounts, errors);
+        for (int i = 0; i < count; i++) {
+            StandingOrder order = due.get(i);
+            boolean success = errors[i] == null;
+            order.executed(success);
+            if (success) {
+                executed++;
+            } else {
+                failed++;
+            }
+            errors[i] = null;
+            if (order.getPeriodDays() == 0) {
+                orders.remove(order.getOrderId());
+            } else {
+                order.setNextDay(order.getNextDay() + order.getPeriodDays());
+                wheel.schedule(order);
+            }
+        }
+        due.clear();
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= fromCards.length) {
+            return;
+        }
+        int capacity = Math.max(count, fromCards.length * 2);
+        fromCards = new int[capacity];
+        toCards = new int[capacity];
+        amounts = new double[capacity];
+        errors = new Exception[capacity];
+    }
+}
@@ -0,0 +1,311 @@
+package org.example.service;
+
+import org.example.entities.AccrualRules;
+import org.example.entities.Bank;
+import org.example.entities.CreditCard;
+import org.example.entities.DebitCard;
+import org.example.entities.DepositCard;
+import org.example.exception.StressTestException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Стресс-тест портфеля карт методом Монте-Карло.
+ * Портфель копируется в компактные массивы примитивов, после чего тысячи независимых сценариев
+ * прогоняются по дням параллельно в пуле fork-join. В каждом сценарии карты каждый день со
+ * случайной вероятностью снимают деньги и переводят их на случайные карты, а в конце дня
+ * начисляются комиссии и проценты по тем же правилам {@link AccrualRules}, что и в тике банка.
+ * Потерей сценария считается недостача итогового баланса портфеля относительно сценария без потрясений.
+ * Генераторы случайных чисел делятся вместе с диапазонами сценариев, поэтому при одном и том же
+ * зерне результат не зависит от числа потоков. Лимиты неверифицированных пользователей и ограничения
+ * частоты операций не моделируются.
+ */
+public class StressTestEngine {
+    private static final int LEAF_SCENARIOS = 64;
+    private static final byte CREDIT = 0;
+    private static final byte DEBIT = 1;
+    private static final byte DEPOSIT = 2;
+
+    private final ForkJoinPool pool;
+    private final double withdrawalProbability;
+    private final double transferProbability;
+    private final double maxShare;
+
+    /**
+     * Создает движок стресс-теста на общем пуле fork-join.
+     *
+     * @param withdrawalProbability вероятность снятия с карты за день
+     * @param transferProbability   вероятность перевода с карты за день
+     * @param maxShare              наибольшая доля доступных средств, уходящая за одну операцию
+     * @throws StressTestException если вероятность или доля вне отрезка [0, 1]
+     */
+    public StressTestEngine(double withdrawalProbability, double transferProbability, double maxShare)
+            throws Exception {
+        this(ForkJoinPool.commonPool(), withdrawalProbability, transferProbability, maxShare);
+    }
+
+    /**
+     * Создает движок стресс-теста.
+     *
+     * @param pool                  пул fork-join для сценариев
+     * @param withdrawalProbability вероятность снятия с карты за день
+     * @param transferProbability   вероятность перевода с карты за день
+     * @param maxShare              наибольшая доля доступных средств, уходящая за одну операцию
+     * @throws StressTestException если вероятность или доля вне отрезка [0, 1]
+     */
+    public StressTestEngine(ForkJoinPool pool, double withdrawalProbability, double transferProbability,
+                            double maxShare) throws Exception {
+        if (!(withdrawalProbability >= 0 && withdrawalProbability <= 1)
+                || !(transferProbability >= 0 && transferProbability <= 1)) {
+            throw new StressTestException("Probability must be between 0 and 1");
+        }
+        if (!(maxShare >= 0 && maxShare <= 1)) {
+            throw new StressTestException("Share must be between 0 and 1");
+        }
+        this.pool = pool;
+        this.withdrawalProbability = withdrawalProbability;
+        this.transferProbability = transferProbability;
+        this.maxShare = maxShare;
+    }
+
+    /**
+     * Прогоняет сценарии на снимке центрального банка, не останавливая переводы и тики.
+     *
+     * @param snapshot  снимок центрального банка
+     * @param timeStamp текущая отметка времени банков
+     * @param days      число моделируемых дней
+     * @param scenarios число сценариев
+     * @param seed      зерно генератора случайных чисел
+     * @return распределение потерь по сценариям
+     * @throws StressTestException если число дней отрицательное или сценариев нет
+     */
+    public StressTestResult run(CentralBankSnapshot snapshot, LocalDateTime timeStamp, int days, int scenarios,
+                                long seed) throws Exception {
+        return run(snapshot.getView(), timeStamp, days, scenarios, seed);
+    }
+
+    /**
+     * Прогоняет сценарии по портфелю всех банков центрального банка.
+     * Во время копирования портфеля центральный банк не должен изменяться.
+     *
+     * @param centralBank центральный банк
+     * @param timeStamp   текущая отметка времени банков
+     * @param days        число моделируемых дней
+     * @param scenarios   число сценариев
+     * @param seed        зерно генератора случайных чисел
+     * @return распределение потерь по сценариям
+     * @throws StressTestException если число дней отрицательное или сценариев нет
+     */
+    public StressTestResult run(CentralBank centralBank, LocalDateTime timeStamp, int days, int scenarios,
+                                long seed) throws Exception {
+        if (days < 0) {
+            throw new StressTestException("Number of days cannot be negative");
+        }
+        if (scenarios <= 0) {
+            throw new StressTestException("Number of scenarios must be positive");
+        }
+        long started = System.nanoTime();
+        Portfolio portfolio = new Portfolio(centralBank, timeStamp.toLocalDate(), days);
+        double[] balance = portfolio.balance.clone();
+        double[] percentSum = portfolio.percentSum.clone();
+        boolean[] matured = portfolio.matured.clone();
+        portfolio.simulate(balance, percentSum, matured, null, 0, 0);
+        double baseline = sum(balance);
+
+        double[] losses = new double[scenarios];
+        pool.invoke(new Range(portfolio, baseline, losses, 0, scenarios, new SplittableRandom(seed)));
+        Arrays.sort(losses);
+        return new StressTestResult(sum(portfolio.balance), baseline, losses, System.nanoTime() - started);
+    }
+
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Неизменяемая копия портфеля в массивах примитивов, индексированных позицией карты.
+     */
+    private final class Portfolio {
+        private final int size;
+        private final int days;
+        private final byte[] type;
+        private final AccrualRules[] rules;
+        private final double[] percent;
+        private final int[] dayOfMonthCreate;
+        private final long[] dayEnd;
+        private final double[] balance;
+        private final double[] percentSum;
+        private final boolean[] matured;
+        private final int[] dayOfMonth;
+        private final long firstDay;
+
+        private Portfolio(CentralBank centralBank, LocalDate today, int days) {
+            int count = 0;
+            for (Bank bank : centralBank.getListBanks()) {
+                count += bank.getListCards().size();
+            }
+            this.days = days;
+            this.type = new byte[count];
+            this.rules = new AccrualRules[count];
+            this.percent = new double[count];
+            this.dayOfMonthCreate = new int[count];
+            this.dayEnd = new long[count];
+            this.balance = new double[count];
+            this.percentSum = new double[count];
+            this.matured = new boolean[count];
+            int position = 0;
+            for (Bank bank : centralBank.getListBanks()) {
+                AccrualRules bankRules = bank.getAccrualRules();
+                for (CreditCard card : bank.getListCreditCards()) {
+                    type[position] = CREDIT;
+                    rules[position] = bankRules;
+                    balance[position] = card.getBalance();
+                    position++;
+                }
+                for (DebitCard card : bank.getListDebitCards()) {
+                    type[position] = DEBIT;
+                    rules[position] = bankRules;
+                    percent[position] = bankRules.getPercentDebitCard();
+                    dayOfMonthCreate[position] = card.getDateCreate().getDayOfMonth();
+                    balance[position] = card.getBalance();
+                    percentSum[position] = card.getPercentSum();
+                    position++;
+                }
+                for (DepositCard card : bank.getListDepositCards()) {
+                    type[position] = DEPOSIT;
+                    rules[position] = bankRules;
+                    percent[position] = bankRules.depositPercent(card.getStartBalance());
+                    dayOfMonthCreate[position] = card.getDateCreate().getDayOfMonth();
+                    dayEnd[position] = card.getDateEnd().toLocalDate().toEpochDay();
+                    balance[position] = card.getBalance();
+                    percentSum[position] = card.getPercentSum();
+                    matured[position] = card.isMatured();
+                    position++;
+                }
+            }
+            this.size = position;
+            this.firstDay = today.toEpochDay() + 1;
+            this.dayOfMonth = new int[days];
+            for (int day = 0; day < days; day++) {
+                dayOfMonth[day] = today.plusDays(day + 1).getDayOfMonth();
+            }
+        }
+
+        /**
+         * Прогоняет один сценарий: днем случайные снятия и переводы, в конце дня тик по правилам банка.
+         * Порядок начислений по каждой карте повторяет тик банка, включая окончание срока депозита.
+         */
+        private void simulate(double[] balance, double[] percentSum, boolean[] matured, SplittableRandom random,
+                              double withdrawal, double transfer) {
+            for (int day = 0; day < days; day++) {
+                if (random != null) {
+                    for (int card = 0; card < size; card++) {
+                        if (random.nextDouble() < withdrawal) {
+                            balance[card] -= available(card, balance, matured) * random.nextDouble() * maxShare;
+                        }
+                        if (size > 1 && random.nextDouble() < transfer) {
+                            int target = random.nextInt(size - 1);
+                            target = target >= card ? target + 1 : target;
+                            double money = available(card, balance, matured) * random.nextDouble() * maxShare;
+                            balance[card] -= money;
+                            balance[target] += money;
+                        }
+                    }
+                }
+                long epochDay = firstDay + day;
+                int dayOfMonthNow = dayOfMonth[day];
+                for (int card = 0; card < size; card++) {
+                    switch (type[card]) {
+                        case CREDIT:
+                            balance[card] -= rules[card].dailyCommission(balance[card]);
+                            break;
+                        case DEBIT:
+                            percentSum[card] = AccrualRules.accrue(percentSum[card], balance[card], percent[card]);
+                            if (dayOfMonthNow == dayOfMonthCreate[card]) {
+                                balance[card] += percentSum[card];
+                                percentSum[card] = 0;
+                            }
+                            break;
+                        default:
+                            if (!matured[card] && dayEnd[card] <= epochDay) {
+                                balance[card] += percentSum[card];
+                                percentSum[card] = 0;
+                                matured[card] = true;
+                            }
+                            percentSum[card] = AccrualRules.accrue(percentSum[card], balance[card], percent[card]);
+                            if (dayOfMonthNow == dayOfMonthCreate[card]) {
+                                balance[card] += percentSum[card];
+                                percentSum[card] = 0;
+                            }
+                            break;
+                    }
+                }
+            }
+        }
+
+        private double available(int card, double[] balance, boolean[] matured) {
+            switch (type[card]) {
+                case CREDIT:
+                    return Math.max(0, balance[card] - rules[card].getCreditLimit());
+                case DEBIT:
+                    return Math.max(0, balance[card]);
+                default:
+                    return matured[card] ? Math.max(0, balance[card]) : 0;
+            }
+        }
+    }
+
+    /**
+     * Диапазон сценариев, который делится пополам вместе со своим генератором, пока не станет
+     * не больше LEAF_SCENARIOS. Лист переиспользует свои массивы состояния для всех своих сценариев.
+     */
+    private final class Range extends RecursiveAction {
+        private final Portfolio portfolio;
+        private final double baseline;
+        private final double[] losses;
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+
+        private Range(Portfolio portfolio, double baseline, double[] losses, int from, int to,
+                      SplittableRandom random) {
+            this.portfolio = portfolio;
+            this.baseline = baseline;
+            this.losses = losses;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SCENARIOS) {
+                int middle = (from + to) >>> 1;
+                SplittableRandom right = random.split();
+                invokeAll(new Range(portfolio, baseline, losses, from, middle, random),
+                        new Range(portfolio, baseline, losses, middle, to, right));
+                return;
+            }
+            double[] balance = new double[portfolio.size];
+            double[] percentSum = new double[portfolio.size];
+            boolean[] matured = new boolean[portfolio.size];
+            for (int scenario = from; scenario < to; scenario++) {
+                System.arraycopy(portfolio.balance, 0, balance, 0, portfolio.size);
+                System.arraycopy(portfolio.percentSum, 0, percentSum, 0, portfolio.size);
+                System.arraycopy(portfolio.matured, 0, matured, 0, portfolio.size);
+                portfolio.simulate(balance, percentSum, matured, random, withdrawalProbability,
+                        transferProbability);
+                losses[scenario] = baseline - sum(balance);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.service;
+
+/**
+ * Распределение потерь портфеля по сценариям стресс-теста.
+ * Потеря сценария - насколько итоговый баланс портфеля меньше, чем в сценарии без потрясений.
+ * Потеря может быть отрицательной, если переводы погасили задолженность по кредитным картам и сберегли комиссии.
+ */
+public class StressTestResult {
+    private final double initialBalance;
+    private final double baselineBalance;
+    private final double[] losses;
+    private final long elapsedNanos;
+
+    StressTestResult(double initialBalance, double baselineBalance, double[] losses, long elapsedNanos) {
+        this.initialBalance = initialBalance;
+        this.baselineBalance = baselineBalance;
+        this.losses = losses;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getScenarioCount() {
+        return losses.length;
+    }
+
+    public double getInitialBalance() {
+        return initialBalance;
+    }
+
+    /**
+     * Возвращает итоговый баланс портфеля, если весь срок банк только начисляет комиссии и проценты.
+     *
+     * @return итоговый баланс сценария без потрясений
+     */
+    public double getBaselineBalance() {
+        return baselineBalance;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getMeanLoss() {
+        double total = 0;
+        for (double loss : losses) {
+            total += loss;
+        }
+        return total / losses.length;
+    }
+
+    public double getMaxLoss() {
+        return losses[losses.length - 1];
+    }
+
+    /**
+     * Возвращает потерю, которую не превышает указанная доля сценариев.
+     *
+     * @param level доля сценариев, например 0.99
+     * @return квантиль распределения потерь
+     */
+    public double getValueAtRisk(double level) {
+        return losses[tailStart(level)];
+    }
+
+    /**
+     * Возвращает среднюю потерю в хвосте распределения за указанным квантилем.
+     *
+     * @param level доля сценариев, например 0.99
+     * @return средняя потеря худших сценариев
+     */
+    public double getExpectedShortfall(double level) {
+        int start = tailStart(level);
+        double total = 0;
+        for (int i = start; i < losses.length; i++) {
+            total += losses[i];
+        }
+        return total / (losses.length - start);
+    }
+
+    private int tailStart(double level) {
+        int index = (int) Math.ceil(level * losses.length) - 1;
+        return Math.min(losses.length - 1, Math.max(0, index));
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.service;
+
+import org.example.entities.ITickProgress;
+import org.example.exception.TimeManagerException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Отметка выполнения тика TimeManager: день, который применяется, номер наблюдателя, на котором остановился тик,
+ * и позиция тика внутри этого наблюдателя.
+ * Если задан файл, отметка записывается в него после каждого наблюдателя и каждой части тика банка:
+ * сначала во временный файл, затем атомарной заменой, поэтому в файле всегда лежит целая отметка.
+ * Позиции частей тика, например банков, которые наблюдатель обрабатывает параллельно, хранятся отдельно
+ * и сбрасываются вместе с позицией наблюдателя. Части могут продвигаться из разных потоков.
+ * Отметка не хранит состояние карт. Повторного начисления при продолжении дня не бывает, только если тик
+ * прервался исключением в том же процессе: тогда банк успевает записать точную позицию.
+ * После падения процесса файл показывает, до какого наблюдателя дошел день, но позиция банка в нем может
+ * отставать от обработанных карт на часть тика (до Bank.TICK_PARTITION карт), а состояние карт, которое
+ * соответствовало бы отметке, нужно восстанавливать отдельно.
+ */
+public class TickCheckpoint implements ITickProgress {
+    private final Path file;
+    private LocalDateTime day;
+    private int observer;
+    private long position;
+    private boolean completed;
+    private final Map<String, Long> parts = new TreeMap<>();
+
+    /**
+     * Создает отметку, которая хранится только в памяти.
+     */
+    public TickCheckpoint() {
+        this.file = null;
+    }
+
+    /**
+     * Создает отметку, сохраняемую в файл. Если файл уже есть, отметка читается из него.
+     *
+     * @param file файл отметки
+     * @throws TimeManagerException если файл отметки поврежден
+     */
+    public TickCheckpoint(Path file) throws Exception {
+        this.file = file;
+        if (Files.exists(file)) {
+            String[] fields = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+            if (fields.length < 4) {
+                throw new TimeManagerException("Tick checkpoint is corrupted");
+            }
+            try {
+                day = LocalDateTime.parse(fields[0]);
+                observer = Integer.parseInt(fields[1]);
+                position = Long.parseLong(fields[2]);
+                completed = Boolean.parseBoolean(fields[3]);
+                for (int i = 4; i < fields.length; i++) {
+                    int separator = fields[i].indexOf('=');
+                    if (separator <= 0) {
+                        throw new TimeManagerException("Tick checkpoint is corrupted");
+                    }
+                    parts.put(fields[i].substring(0, separator), Long.parseLong(fields[i].substring(separator + 1)));
+                }
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new TimeManagerException("Tick checkpoint is corrupted");
+            }
+        }
+    }
+
+    public synchronized LocalDateTime getDay() {
+        return day;
+    }
+
+    public synchronized int getObserver() {
+        return observer;
+    }
+
+    @Override
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Проверяет, остался ли невыполненным начатый день.
+     *
+     * @return true, если тик дня был прерван
+     */
+    public synchronized boolean isInterrupted() {
+        return day != null && !completed;
+    }
+
+    @Override
+    public synchronized void advance(long position) throws Exception {
+        this.position = position;
+        save();
+    }
+
+    @Override
+    public ITickProgress part(int part) {
+        return new Part(Integer.toString(part));
+    }
+
+    /**
+     * Начинает день или продолжает его, если этот день был прерван.
+     */
+    synchronized void begin(LocalDateTime timeStamp) throws Exception {
+        if (timeStamp.equals(day) && !completed) {
+            return;
+        }
+        day = timeStamp;
+        observer = 0;
+        position = 0;
+        parts.clear();
+        completed = false;
+        save();
+    }
+
+    synchronized void observerCompleted(int next) throws Exception {
+        observer = next;
+        position = 0;
+        parts.clear();
+        save();
+    }
+
+    synchronized void complete() throws Exception {
+        completed = true;
+        save();
+    }
+
+    private void save() throws Exception {
+        if (file == null) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        StringBuilder line = new StringBuilder().append(day).append(' ').append(observer).append(' ')
+                .append(position).append(' ').append(completed);
+        for (Map.Entry<String, Long> entry : parts.entrySet()) {
+            line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        Files.write(temp, line.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Часть тика наблюдателя. Ключ части - номера частей через точку, начиная с верхней.
+     */
+    private final class Part implements ITickProgress {
+        private final String key;
+
+        private Part(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getPosition() {
+            synchronized (TickCheckpoint.this) {
+                return parts.getOrDefault(key, 0L);
+            }
+        }
+
+        @Override
+        public void advance(long position) throws Exception {
+            synchronized (TickCheckpoint.this) {
+                parts.put(key, position);
+                save();
+            }
+        }
+
+        @Override
+        public ITickProgress part(int part) {
+            return new Part(key + "." + part);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package org.example.service;
 
 
+import org.example.entities.Bank;
+import org.example.entities.IClock;
 import org.example.entities.IObserver;
+import org.example.entities.IResumableObserver;
+import org.example.entities.SimulatedClock;
 import org.example.exception.TimeManagerException;
 
 import java.time.LocalDateTime;
@@ -10,27 +14,74 @@ import java.util.List;
 
 /**
  * Класс TimeManager отвечает за управление временем и уведомление своих наблюдателей об изменении времени.
+ * TimeManager владеет часами, по которым банки датируют операции по картам: по умолчанию это часы модельного
+ * времени, которые переводятся на каждом тике, а в рабочем режиме - переданные извне, например CachedSystemClock.
+ * Выполнение тика отмечается в TickCheckpoint: прерванный день продолжается методом resume с того наблюдателя
+ * и той части тика, на которых он остановился, а следующий день не начинается, пока прерванный не завершен.
+ * Продолжение без повторных начислений гарантируется для тика, прерванного исключением в этом же процессе.
  */
 public class TimeManager {
     private final List<IObserver> observers;
+    private final IClock clock;
+    private final SimulatedClock simulatedClock;
     private LocalDateTime timeStamp;
+    private TickCheckpoint checkpoint = new TickCheckpoint();
 
     /**
-     * Создает новый объект Time Manager с заданной начальной временной меткой.
+     * Создает новый объект Time Manager с заданной начальной временной меткой и часами модельного времени.
      *
      * @param timeStamp начальная временная метка, которая должна быть установлена
      */
     public TimeManager(LocalDateTime timeStamp) {
         this.observers = new ArrayList<>();
         this.timeStamp = timeStamp;
+        this.simulatedClock = new SimulatedClock(timeStamp);
+        this.clock = simulatedClock;
+    }
+
+    /**
+     * Создает новый объект Time Manager с заданной начальной временной меткой и внешними часами.
+     * Тики не переводят внешние часы.
+     *
+     * @param timeStamp начальная временная метка, которая должна быть установлена
+     * @param clock     часы, по которым датируются операции
+     */
+    public TimeManager(LocalDateTime timeStamp, IClock clock) {
+        this.observers = new ArrayList<>();
+        this.timeStamp = timeStamp;
+        this.simulatedClock = null;
+        this.clock = clock;
+    }
+
+    public IClock getClock() {
+        return clock;
     }
 
     public LocalDateTime getTimeStamp() {
         return timeStamp;
     }
 
+    public TickCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Устанавливает отметку выполнения тика, например прочитанную из файла после перезапуска.
+     * Наблюдатели должны быть добавлены в том же порядке, что и до прерывания.
+     *
+     * @param checkpoint отметка выполнения тика
+     * @throws TimeManagerException если отметка равна нулю
+     */
+    public void setCheckpoint(TickCheckpoint checkpoint) throws Exception {
+        if (checkpoint == null) {
+            throw new TimeManagerException("checkpoint is null");
+        }
+        this.checkpoint = checkpoint;
+    }
+
     /**
      * Добавляет нового наблюдателя в список наблюдателей, которые будут уведомлены об изменении времени.
+     * Банк, добавленный наблюдателем, датирует операции по картам часами этого TimeManager.
      *
      * @param bank наблюдатель, который будет добавлен
      * @throws TimeManagerException если наблюдатель равен нулю
@@ -39,16 +90,39 @@ public class TimeManager {
         if (bank == null) {
             throw new TimeManagerException("bank is null");
         }
+        if (bank instanceof Bank) {
+            ((Bank) bank).setClock(clock);
+        }
         observers.add(bank);
     }
 
     /**
      * Добавляет один день к текущей временной метке, управляемой объектом Time Manager, и уведомляет своих
      * наблюдателей.
+     *
+     * @throws TimeManagerException если тик предыдущего дня был прерван и не продолжен
      */
     public void addDay() throws Exception {
-        timeStamp = timeStamp.plusDays(1);
+        if (checkpoint.isInterrupted()) {
+            throw new TimeManagerException("Tick of " + checkpoint.getDay() + " was interrupted, resume it first");
+        }
+        setTimeStamp(timeStamp.plusDays(1));
+        notifyObservers();
+    }
+
+    /**
+     * Продолжает прерванный день: наблюдатели, уже выполнившие тик, пропускаются, а банк продолжает тик
+     * с сохраненной позиции.
+     *
+     * @return true, если был прерванный день
+     */
+    public boolean resume() throws Exception {
+        if (!checkpoint.isInterrupted()) {
+            return false;
+        }
+        setTimeStamp(checkpoint.getDay());
         notifyObservers();
+        return true;
     }
 
     /**
@@ -63,10 +137,26 @@ public class TimeManager {
 
     /**
      * Уведомляет всех наблюдателей о том, что текущая временная метка была обновлена.
+     * Если тик этого дня был прерван, уведомление продолжается с места остановки.
      */
     public void notifyObservers() throws Exception {
-        for (IObserver observer : observers) {
-            observer.update(timeStamp);
+        checkpoint.begin(timeStamp);
+        for (int i = checkpoint.getObserver(); i < observers.size(); i++) {
+            IObserver observer = observers.get(i);
+            if (observer instanceof IResumableObserver) {
+                ((IResumableObserver) observer).update(timeStamp, checkpoint);
+            } else {
+                observer.update(timeStamp);
+            }
+            checkpoint.observerCompleted(i + 1);
+        }
+        checkpoint.complete();
+    }
+
+    private void setTimeStamp(LocalDateTime timeStamp) {
+        this.timeStamp = timeStamp;
+        if (simulatedClock != null) {
+            simulatedClock.set(timeStamp);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package org.example.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Иерархическое колесо таймеров с разрешением в один день.
+ * Три уровня по 64 ячейки покрывают 64, 4096 и 262144 дня вперед, более дальние поручения лежат в общем списке.
+ * При переходе через границу уровня поручения из ячейки старшего уровня перераскладываются в младший,
+ * поэтому каждый день просматривается только одна ячейка с поручениями, срок которых наступил.
+ */
+class TimingWheel {
+    private static final int LEVEL_BITS = 6;
+    private static final int SLOTS = 1 << LEVEL_BITS;
+    private static final int LEVELS = 3;
+
+    private final List<List<StandingOrder>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private List<StandingOrder> overflow = new ArrayList<>();
+    private long currentDay;
+    private int size;
+
+    TimingWheel(long currentDay) {
+        this.currentDay = currentDay;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    long getCurrentDay() {
+        return currentDay;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет поручение в ячейку, соответствующую дню его следующего исполнения.
+     *
+     * @param order поручение, день исполнения которого не раньше текущего дня колеса
+     */
+    void schedule(StandingOrder order) {
+        size++;
+        place(order);
+    }
+
+    /**
+     * Продвигает колесо до указанного дня включительно и собирает поручения, срок которых наступил.
+     *
+     * @param day день, до которого нужно продвинуть колесо
+     * @param due список, в который добавляются поручения к исполнению
+     */
+    void advance(long day, List<StandingOrder> due) {
+        while (currentDay < day) {
+            currentDay++;
+            if ((currentDay & ((1L << (LEVEL_BITS * LEVELS)) - 1)) == 0) {
+                List<StandingOrder> far = overflow;
+                overflow = new ArrayList<>();
+                for (StandingOrder order : far) {
+                    place(order);
+                }
+            }
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentDay & ((1L << (LEVEL_BITS * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            List<StandingOrder> slot = slots.get((int) (currentDay & (SLOTS - 1)));
+            for (StandingOrder order : slot) {
+                size--;
+                if (!order.isCancelled()) {
+                    due.add(order);
+                }
+            }
+            slot.clear();
+        }
+    }
+
+    private void cascade(int level) {
+        int index = level * SLOTS + (int) ((currentDay >>> (LEVEL_BITS * level)) & (SLOTS - 1));
+        List<StandingOrder> slot = slots.get(index);
+        if (slot.isEmpty()) {
+            return;
+        }
+        slots.set(index, new ArrayList<>());
+        for (StandingOrder order : slot) {
+            if (order.isCancelled()) {
+                size--;
+            } else {
+                place(order);
+            }
+        }
+    }
+
+    private void place(StandingOrder order) {
+        long delta = order.getNextDay() - currentDay;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (LEVEL_BITS * (level + 1))) {
+                int slot = (int) ((order.getNextDay() >>> (LEVEL_BITS * level)) & (SLOTS - 1));
+                slots.get(level * SLOTS + slot).add(order);
+                return;
+            }
+        }
+        overflow.add(order);
+    }
+}
@@ -0,0 +1,143 @@
+package org.example;
+
+import org.example.entities.Bank;
+import org.example.exception.BatchRunnerException;
+import org.example.service.CentralBank;
+import org.example.service.ClearingHouse;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BatchRunnerTest {
+    @Test
+    public void testScriptReplaysMenuOperations() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        TimeManager timeManager = new TimeManager(LocalDateTime.of(2022, 9, 1, 0, 0, 0));
+        BatchRunner runner = new BatchRunner(centralBank, timeManager, new PrintStream(new ByteArrayOutputStream()));
+        String script = "# банк и пользователи\n"
+                + "bank SberBank 1 2 5 5000 10000 2 -1000000 1000 999999999\n"
+                + "user SberBank sasha Sasha Ivanov 100000 GreenStreet 124\n"
+                + "debit SberBank sasha c1 50000\n"
+                + "debit SberBank sasha c2 50000\n"
+                + "topup c1 10000\n"
+                + "withdraw c1 5000\n"
+                + "transfer c1 c2 20000\n"
+                + "cancel c1 0\n"
+                + "withdraw unknown 1\n";
+        runner.run(new StringReader(script));
+
+        Bank sber = centralBank.getBank("SberBank");
+        assertEquals(25000, sber.getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(70000, sber.getListDebitCards().get(1).getBalance(), 0.001);
+        assertEquals(1, runner.getFailures());
+        assertEquals(8, runner.getOperationCount());
+    }
+
+    @Test
+    public void testTransfersGoThroughCentralBank() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        ClearingHouse clearing = centralBank.enableClearing();
+        TimeManager timeManager = new TimeManager(LocalDateTime.of(2022, 9, 1, 0, 0, 0));
+        BatchRunner runner = new BatchRunner(centralBank, timeManager, new PrintStream(new ByteArrayOutputStream()));
+        runner.run(new StringReader("bank SberBank 1 2 5 5000 10000 2 -1000000 1000 999999999\n"
+                + "bank Tinkoff 1 2 5 5000 10000 2 -1000000 1000 999999999\n"
+                + "user SberBank sasha Sasha Ivanov 100000 GreenStreet 124\n"
+                + "user Tinkoff ivan Ivan Petrov 100000 GreenStreet 123\n"
+                + "debit SberBank sasha c1 50000\n"
+                + "debit Tinkoff ivan c2 50000\n"
+                + "transfer c1 c2 20000\n"));
+
+        assertEquals(30000, centralBank.getBank("SberBank").getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(50000, centralBank.getBank("Tinkoff").getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(1, clearing.getPendingTransfers());
+        clearing.settle();
+        assertEquals(70000, centralBank.getBank("Tinkoff").getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testConsecutiveDaysAreGrouped() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        TimeManager timeManager = new TimeManager(LocalDateTime.of(2022, 9, 1, 0, 0, 0));
+        BatchRunner runner = new BatchRunner(centralBank, timeManager, new PrintStream(new ByteArrayOutputStream()));
+        runner.run(new StringReader("day\nday 4\nmonth\n"));
+        assertEquals(LocalDateTime.of(2022, 10, 6, 0, 0, 0), timeManager.getTimeStamp());
+    }
+
+    @Test
+    public void testRecordedTraceReplaysToSameState() throws Exception {
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+        BatchRunner recorded = new BatchRunner(new CentralBank(),
+                new TimeManager(LocalDateTime.of(2022, 9, 1, 0, 0, 0)), quiet);
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        recorded.startRecording(trace);
+        recorded.run(new StringReader("bank SberBank 1 2 5 5000 10000 2 -1000000 1000 999999999\n"
+                + "user SberBank sasha Sasha Ivanov 100000 GreenStreet 124\n"
+                + "debit SberBank sasha c1 50000\n"
+                + "deposit SberBank sasha c2 20000 2022-12-01\n"
+                + "month 2\n"
+                + "transfer c1 c2 1000\n"
+                + "withdraw c2 1\n"));
+        recorded.stopRecording();
+
+        BatchRunner replayed = new BatchRunner(new CentralBank(),
+                new TimeManager(LocalDateTime.of(2022, 9, 1, 0, 0, 0)), quiet);
+        long checksum = replayed.replay(new ByteArrayInputStream(trace.toByteArray()));
+        assertEquals(recorded.checksum(), checksum);
+        assertEquals(recorded.getFailures(), replayed.getFailures());
+    }
+
+    @Test
+    public void testTraceReplaysFromRecordedStartTime() throws Exception {
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+        LocalDateTime start = LocalDateTime.of(2021, 3, 15, 10, 30, 0, 123_456_789);
+        BatchRunner recorded = new BatchRunner(new CentralBank(), new TimeManager(start), quiet);
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        recorded.startRecording(trace);
+        recorded.run(new StringReader("bank SberBank 1 2 5 5000 10000 2 -1000000 1000 999999999\n"
+                + "user SberBank sasha Sasha Ivanov 100000 GreenStreet 124\n"
+                + "deposit SberBank sasha c1 20000 2021-04-01\n"
+                + "day 20\n"));
+        recorded.stopRecording();
+
+        try (OperationTrace.Reader reader = new OperationTrace.Reader(new ByteArrayInputStream(trace.toByteArray()))) {
+            assertEquals(start, reader.getStart());
+        }
+        BatchRunner replayed = new BatchRunner(new CentralBank(), new TimeManager(start), quiet);
+        assertEquals(recorded.checksum(), replayed.replay(new ByteArrayInputStream(trace.toByteArray())));
+        BatchRunner elsewhere = new BatchRunner(new CentralBank(), new TimeManager(start.plusDays(1)), quiet);
+        assertThrows(BatchRunnerException.class,
+                () -> elsewhere.replay(new ByteArrayInputStream(trace.toByteArray())));
+    }
+
+    @Test
+    public void testDayAfterFailedTickResumesInterruptedDay() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        TimeManager timeManager = new TimeManager(LocalDateTime.of(2022, 9, 1, 0, 0, 0));
+        int[] failures = {1};
+        timeManager.addObserver(timeStamp -> {
+            if (failures[0]-- > 0) {
+                throw new IllegalStateException("crash");
+            }
+        });
+        BatchRunner runner = new BatchRunner(centralBank, timeManager, new PrintStream(new ByteArrayOutputStream()));
+        runner.run(new StringReader("bank SberBank 1 2 5 5000 10000 2 -1000000 1000 999999999\n"
+                + "user SberBank sasha Sasha Ivanov 100000 GreenStreet 124\n"
+                + "credit SberBank sasha c1 100\n"
+                + "withdraw c1 2000\n"
+                + "day\n"
+                + "withdraw c1 1\n"
+                + "day\n"));
+
+        assertEquals(1, runner.getFailures());
+        assertEquals(LocalDateTime.of(2022, 9, 3, 0, 0, 0), timeManager.getTimeStamp());
+        assertEquals(-3901, centralBank.getBank("SberBank").getListCreditCards().get(0).getBalance(), 0.001);
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import org.example.entities.EventBatch;
+import org.example.entities.EventCodec;
+import org.example.entities.EventWriter;
+import org.example.entities.ICard;
+import org.example.entities.IdDictionary;
+import org.example.entities.Transaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Сравнение двоичного формата событий с наивной сериализацией транзакций через ObjectOutputStream.
+ * Для каждого способа печатается размер пакета и время записи и чтения, лучшее из нескольких повторов.
+ * Запуск из тестовых классов: EventCodecBenchmark [количество транзакций]
+ */
+public class EventCodecBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int cards = 1000;
+        IdDictionary<ICard> cardIds = new IdDictionary<>();
+        int[] indexes = new int[cards];
+        for (int i = 0; i < cards; i++) {
+            indexes[i] = cardIds.intern(UUID.randomUUID());
+        }
+        Transaction[] transactions = new Transaction[count];
+        LocalDateTime date = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+        for (int i = 0; i < count; i++) {
+            transactions[i] = new Transaction(cardIds, indexes[i % cards], indexes[(i * 7 + 1) % cards],
+                    date.plusMinutes(i), (i % 10000) / 100.0);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(EventCodec.HEADER_SIZE + count * EventCodec.RECORD_SIZE);
+        long bestWrite = Long.MAX_VALUE;
+        long bestRead = Long.MAX_VALUE;
+        double checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            buffer.clear();
+            long started = System.nanoTime();
+            EventWriter writer = EventCodec.writer(buffer);
+            for (Transaction transaction : transactions) {
+                writer.writeTransaction(transaction);
+            }
+            writer.finish();
+            bestWrite = Math.min(bestWrite, System.nanoTime() - started);
+            buffer.flip();
+            started = System.nanoTime();
+            EventBatch batch = EventCodec.read(buffer);
+            for (int i = 0; i < batch.size(); i++) {
+                checksum += batch.getMoney(i) + batch.getTimeMillis(i) + batch.getFromLeastBits(i);
+            }
+            bestRead = Math.min(bestRead, System.nanoTime() - started);
+        }
+        print("binary codec", buffer.limit(), bestWrite, bestRead);
+
+        bestWrite = Long.MAX_VALUE;
+        bestRead = Long.MAX_VALUE;
+        int size = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long started = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeInt(count);
+                for (Transaction transaction : transactions) {
+                    out.writeObject(transaction.getFrom());
+                    out.writeObject(transaction.getTo());
+                    out.writeObject(transaction.getDateTransaction());
+                    out.writeObject(transaction.getMoney());
+                }
+            }
+            bestWrite = Math.min(bestWrite, System.nanoTime() - started);
+            size = bytes.size();
+            started = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                int read = in.readInt();
+                for (int i = 0; i < read; i++) {
+                    UUID from = (UUID) in.readObject();
+                    in.readObject();
+                    LocalDateTime time = (LocalDateTime) in.readObject();
+                    checksum += (Double) in.readObject() + time.getMinute() + from.getLeastSignificantBits();
+                }
+            }
+            bestRead = Math.min(bestRead, System.nanoTime() - started);
+        }
+        print("object stream", size, bestWrite, bestRead);
+        System.out.println("checksum " + checksum);
+    }
+
+    private static void print(String name, long bytes, long writeNanos, long readNanos) {
+        System.out.printf("%-14s %,12d bytes  write %,8.1f ms  read %,8.1f ms%n", name, bytes,
+                writeNanos / 1e6, readNanos / 1e6);
+    }
+}
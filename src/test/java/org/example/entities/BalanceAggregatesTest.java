@@ -0,0 +1,88 @@
+package org.example.entities;
+
+import org.example.service.CentralBank;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+
+public class BalanceAggregatesTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private User sasha;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+    }
+
+    @Test
+    public void testAggregatesFollowTransfersAndWithdrawals() throws Exception {
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        sber.addCreditCard(DATE, 100, sasha.getUserId());
+        centralBank.transferMoney(20000, debit(0), sber.getListCreditCards().get(0).getCardId());
+        sber.getListCreditCards().get(0).withdrawMoney(30100);
+        assertEquals(30000, sber.getTotalDebitCardsBalance(), 0.001);
+        assertEquals(-10000, sber.getTotalCreditCardsBalance(), 0.001);
+        assertEquals(10000, sber.getCreditExposure(), 0.001);
+        assertEquals(20000, sasha.getCardsBalance(), 0.001);
+    }
+
+    @Test
+    public void testCreditExposureCountsOnlyNegativeBalances() throws Exception {
+        sber.addCreditCard(DATE, 500, sasha.getUserId());
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.getListCreditCards().get(1).withdrawMoney(300);
+        assertEquals(200, sber.getTotalCreditCardsBalance(), 0.001);
+        assertEquals(300, sber.getCreditExposure(), 0.001);
+        sber.getListCreditCards().get(1).topUpCard(1000);
+        assertEquals(0, sber.getCreditExposure(), 0.001);
+        assertEquals(1200, sber.getTotalCreditCardsBalance(), 0.001);
+    }
+
+    @Test
+    public void testCancellationAndInterestUpdateAggregates() throws Exception {
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        sber.addDebitCard(DATE, 0, sasha.getUserId());
+        sber.addDepositCard(DATE, DATE.plusDays(100), 20000, sasha.getUserId());
+        centralBank.transferMoney(5000, debit(0), debit(1));
+        centralBank.transactionCancellation(debit(0), 0);
+        assertEquals(50000, sber.getTotalDebitCardsBalance(), 0.001);
+        assertEquals(0, sber.getListDebitCards().get(1).getBalance(), 0.001);
+        assertEquals(70000, sasha.getCardsBalance(), 0.001);
+
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(sber);
+        time.addMonth();
+        assertEquals(sber.getListDebitCards().get(0).getBalance(), sber.getTotalDebitCardsBalance(), 0.001);
+        assertEquals(sber.getListDepositCards().get(0).getBalance(), sber.getTotalDepositCardsBalance(), 0.001);
+        assertEquals(sber.getTotalBalance(), sasha.getCardsBalance(), 0.001);
+    }
+
+    @Test
+    public void testUserBalanceCoversCardsInSeveralBanks() throws Exception {
+        Bank tinkoff = new Bank("Tinkoff", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(tinkoff);
+        tinkoff.addUser(sasha);
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        tinkoff.addCreditCard(DATE, 0, sasha.getUserId());
+        tinkoff.getListCreditCards().get(0).withdrawMoney(400);
+        assertEquals(600, sasha.getCardsBalance(), 0.001);
+        assertEquals(0, sber.getCreditExposure(), 0.001);
+        assertEquals(400, tinkoff.getCreditExposure(), 0.001);
+    }
+
+    private UUID debit(int position) {
+        return sber.getListDebitCards().get(position).getCardId();
+    }
+}
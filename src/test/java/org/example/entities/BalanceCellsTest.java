@@ -0,0 +1,90 @@
+package org.example.entities;
+
+import org.example.exception.BankException;
+import org.example.exception.DebitCardException;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BalanceCellsTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank sber;
+    private User sasha;
+    private DebitCard merchant;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 100, sasha.getUserId());
+        merchant = sber.getListDebitCards().get(0);
+    }
+
+    @Test
+    public void testBalanceCellsCollectConcurrentCredits() throws Exception {
+        sber.useBalanceCells(merchant.getCardId(), 4);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    try {
+                        merchant.topUpCardWithOutHistory(1);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(merchant.isUsingBalanceCells());
+        assertEquals(40100, merchant.getBalance(), 0.001);
+        assertEquals(40100, sber.getTotalDebitCardsBalance(), 0.001);
+        merchant.withdrawMoney(40000);
+        assertEquals(100, merchant.getBalance(), 0.001);
+        assertEquals(100, sber.getTotalDebitCardsBalance(), 0.001);
+        assertThrows(DebitCardException.class, () -> merchant.withdrawMoney(101));
+    }
+
+    @Test
+    public void testInterestIsAccruedOnCollectedCredits() throws Exception {
+        sber.addDebitCard(DATE, 100, sasha.getUserId());
+        DebitCard plain = sber.getListDebitCards().get(1);
+        sber.useBalanceCells(merchant.getCardId(), 4);
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(sber);
+        for (int day = 0; day < 45; day++) {
+            merchant.topUpCardWithOutHistory(10);
+            plain.topUpCardWithOutHistory(10);
+            time.addDay();
+        }
+        assertEquals(plain.getBalance(), merchant.getBalance(), 0.001);
+        assertEquals(plain.getPercentSum(), merchant.getPercentSum(), 0.001);
+    }
+
+    @Test
+    public void testBalanceCellsAreEnabledOnceAndOnlyForDebitCards() throws Exception {
+        sber.addCreditCard(DATE, 100, sasha.getUserId());
+        UUID credit = sber.getListCreditCards().get(0).getCardId();
+        assertFalse(merchant.isUsingBalanceCells());
+        assertThrows(BankException.class, () -> sber.useBalanceCells(merchant.getCardId(), 0));
+        assertThrows(BankException.class, () -> sber.useBalanceCells(credit, 4));
+        assertThrows(BankException.class, () -> sber.useBalanceCells(UUID.randomUUID(), 4));
+        sber.useBalanceCells(merchant.getCardId(), 4);
+        merchant.topUpCardWithOutHistory(50);
+        sber.useBalanceCells(merchant.getCardId(), 8);
+        assertEquals(150, merchant.getBalance(), 0.001);
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class BalanceRankingTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank sber;
+    private User sasha;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+    }
+
+    @Test
+    public void testTopOverdrawnCreditCardsFollowBalanceChanges() throws Exception {
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.addCreditCard(DATE, 100, sasha.getUserId());
+        sber.getListCreditCards().get(0).withdrawMoney(300);
+        sber.getListCreditCards().get(1).withdrawMoney(700);
+        assertEquals(2, sber.getMostOverdrawnCreditCards(5).size());
+        assertEquals(sber.getListCreditCards().get(1), sber.getMostOverdrawnCreditCards(1).get(0));
+        sber.getListCreditCards().get(1).topUpCard(1000);
+        assertEquals(sber.getListCreditCards().get(0), sber.getMostOverdrawnCreditCards(1).get(0));
+        assertEquals(1, sber.getMostOverdrawnCreditCards(5).size());
+    }
+
+    @Test
+    public void testLargestDepositsAreOrderedByBalance() throws Exception {
+        sber.addDepositCard(DATE, DATE.plusDays(10), 1000, sasha.getUserId());
+        sber.addDepositCard(DATE, DATE.plusDays(10), 3000, sasha.getUserId());
+        sber.addDepositCard(DATE, DATE.plusDays(10), 2000, sasha.getUserId());
+        assertEquals(sber.getListDepositCards().get(1), sber.getLargestDeposits(3).get(0));
+        assertEquals(sber.getListDepositCards().get(2), sber.getLargestDeposits(3).get(1));
+        assertEquals(sber.getListDepositCards().get(0), sber.getLargestDeposits(3).get(2));
+        sber.getListDepositCards().get(0).topUpCard(5000);
+        assertEquals(sber.getListDepositCards().get(0), sber.getLargestDeposits(1).get(0));
+        assertEquals(3, sber.getLargestDeposits(10).size());
+    }
+
+    @Test
+    public void testEmptyRankingsAndZeroLimit() throws Exception {
+        assertTrue(sber.getMostOverdrawnCreditCards(5).isEmpty());
+        assertTrue(sber.getLargestDeposits(5).isEmpty());
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.getListCreditCards().get(0).withdrawMoney(100);
+        assertTrue(sber.getMostOverdrawnCreditCards(0).isEmpty());
+        sber.getListCreditCards().get(0).topUpCard(100);
+        assertTrue(sber.getMostOverdrawnCreditCards(5).isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.entities;
+
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class BankForkTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank bank;
+    private User sasha;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        bank.addUser(sasha);
+        for (int i = 0; i < 100; i++) {
+            bank.addDebitCard(DATE, 100, sasha.getUserId());
+        }
+    }
+
+    @Test
+    public void testForkCopiesOnlyCardsThatAreRead() throws Exception {
+        Bank fork = bank.fork();
+        assertEquals(0, fork.getCopiedCardCount());
+        assertEquals(100, fork.getListDebitCards().size());
+        assertEquals(10000, fork.getTotalBalance(), 0.001);
+        assertEquals(0, fork.getCopiedCardCount());
+
+        ICard card = fork.findCard(bank.getListDebitCards().get(5).getCardId());
+        assertEquals(1, fork.getCopiedCardCount());
+        assertSame(card, fork.getListDebitCards().get(5));
+        assertSame(card, fork.getListCards().get(5));
+        fork.getListDebitCards().get(7).withdrawMoney(10);
+        assertEquals(2, fork.getCopiedCardCount());
+        assertEquals(9990, fork.getTotalBalance(), 0.001);
+        assertEquals(10000, bank.getTotalBalance(), 0.001);
+
+        fork.addDebitCard(DATE, 50, sasha.getUserId());
+        assertEquals(2, fork.getCopiedCardCount());
+        assertEquals(101, fork.getListDebitCards().size());
+    }
+
+    @Test
+    public void testForkWithOtherRatesTicksOnItsOwn() throws Exception {
+        Bank fork = bank.fork(1, 2, 5, 10);
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(fork);
+        time.addMonth();
+        assertEquals(100, fork.getCopiedCardCount());
+        assertEquals(10000, bank.getTotalBalance(), 0.001);
+        assertEquals(100, bank.getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(fork.getTotalBalance(), 100 * fork.getListDebitCards().get(0).getBalance(), 0.001);
+        assertTrue(fork.getTotalBalance() > 10000);
+    }
+
+    @Test
+    public void testForkOfForkSeesHistoryAtItsPin() throws Exception {
+        Bank fork = bank.fork();
+        DebitCard card = fork.getListDebitCards().get(0);
+        card.withdrawMoney(10);
+        Bank second = fork.fork();
+        card.withdrawMoney(20);
+        bank.getListDebitCards().get(0).withdrawMoney(30);
+
+        DebitCard copy = second.getListDebitCards().get(0);
+        assertEquals(90, copy.getBalance(), 0.001);
+        assertEquals(1, copy.getTransactionHistory().size());
+        assertEquals(10, copy.getTransaction(0).getMoney(), 0.001);
+        assertEquals(2, card.getTransactionHistory().size());
+        assertEquals(1, bank.getListDebitCards().get(0).getTransactionHistory().size());
+    }
+}
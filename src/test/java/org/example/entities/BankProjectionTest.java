@@ -0,0 +1,85 @@
+package org.example.entities;
+
+import org.example.exception.BankException;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BankProjectionTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank sber;
+    private User sasha;
+    private TimeManager time;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        time = new TimeManager(DATE);
+        time.addObserver(sber);
+    }
+
+    @Test
+    public void testProjectedBalancesMatchTicking() throws Exception {
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        sber.addDepositCard(DATE, LocalDateTime.of(2022, 11, 15, 0, 0, 0), 20000, sasha.getUserId());
+        UUID debit = sber.getListDebitCards().get(0).getCardId();
+        UUID deposit = sber.getListDepositCards().get(0).getCardId();
+        LocalDate date = LocalDate.of(2023, 3, 10);
+        double projectedDebit = sber.projectBalance(debit, date);
+        double projectedDeposit = sber.projectBalances(date).get(deposit);
+
+        tickUntil(date);
+        assertEquals(sber.findCard(debit).getBalance(), projectedDebit, 0.01);
+        assertEquals(sber.findCard(deposit).getBalance(), projectedDeposit, 0.01);
+        assertThrows(BankException.class, () -> sber.projectBalance(debit, LocalDate.of(2023, 1, 1)));
+    }
+
+    @Test
+    public void testProjectionFromMiddleOfMonthMatchesTicking() throws Exception {
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        sber.addDepositCard(DATE, LocalDateTime.of(2022, 10, 20, 0, 0, 0), 7000, sasha.getUserId());
+        tickUntil(LocalDate.of(2022, 9, 17));
+        UUID debit = sber.getListDebitCards().get(0).getCardId();
+        UUID deposit = sber.getListDepositCards().get(0).getCardId();
+        LocalDate date = LocalDate.of(2022, 12, 1);
+        double projectedDebit = sber.projectBalance(debit, date);
+        double projectedDeposit = sber.projectBalance(deposit, date);
+
+        tickUntil(date);
+        assertEquals(sber.findCard(debit).getBalance(), projectedDebit, 0.01);
+        assertEquals(sber.findCard(deposit).getBalance(), projectedDeposit, 0.01);
+    }
+
+    @Test
+    public void testProjectionForTodayIsCurrentBalance() throws Exception {
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        assertEquals(50000, sber.projectBalance(sber.getListDebitCards().get(0).getCardId(), DATE.toLocalDate()),
+                0.001);
+    }
+
+    @Test
+    public void testOnlyDebitAndDepositCardsOfBankAreProjected() throws Exception {
+        sber.addCreditCard(DATE, 1000, sasha.getUserId());
+        LocalDate date = LocalDate.of(2022, 10, 1);
+        assertThrows(BankException.class,
+                () -> sber.projectBalance(sber.getListCreditCards().get(0).getCardId(), date));
+        assertThrows(BankException.class, () -> sber.projectBalance(UUID.randomUUID(), date));
+        assertEquals(0, sber.projectBalances(date).size());
+    }
+
+    private void tickUntil(LocalDate date) throws Exception {
+        while (time.getTimeStamp().toLocalDate().isBefore(date)) {
+            time.addDay();
+        }
+    }
+}
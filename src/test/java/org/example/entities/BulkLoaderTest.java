@@ -0,0 +1,87 @@
+package org.example.entities;
+
+import org.example.exception.BulkLoaderException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkLoaderTest {
+    private Bank sber;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+    }
+
+    @Test
+    public void testBulkLoaderValidatesAndInsertsInOrder() throws Exception {
+        BulkLoader loader = new BulkLoader(sber, new ForkJoinPool(2), 2);
+        loader.load(new StringReader("# клиенты\n"
+                + "user,c1,Sasha,Ivanov,100000,Green Street,124\n"
+                + "user,c2,Ivan,Petrov,0,,\n"
+                + "debit,c1,50000,2022-09-01\n"
+                + "credit,c2,100,2022-09-01\n"
+                + "deposit,c1,20000,2022-09-01,2022-12-01\n"
+                + "debit,c1,-1,2022-09-01\n"
+                + "user,c3, ,Sidorov,0,,\n"
+                + "debit,c3,10,2022-09-01\n"
+                + "user,c1,Sasha,Ivanov,0,,\n"));
+        assertEquals(2, loader.getLoadedUsers());
+        assertEquals(3, loader.getLoadedCards());
+        assertEquals(4, loader.getFailures());
+        assertEquals("line 7: Account creation cannot be with a negative balance", loader.getErrors().get(0));
+        assertEquals(70100, sber.getTotalBalance(), 0.001);
+        assertEquals(2, sber.findUser(sber.getListUsers().get(0).getUserId()).getCardCount());
+        assertTrue(sber.getListDebitCards().get(0).getIdentification());
+        assertFalse(sber.getListCreditCards().get(0).getIdentification());
+        assertEquals(1, sber.getPendingMaturitiesCount());
+    }
+
+    @Test
+    public void testMalformedLinesAreReportedWithLineNumbers() throws Exception {
+        BulkLoader loader = new BulkLoader(sber, new ForkJoinPool(2), 2);
+        loader.load(new StringReader("user,c1,Sasha,Ivanov,0,Green Street,124\n"
+                + "\n"
+                + "savings,c1,100,2022-09-01\n"
+                + "debit,c1,100\n"
+                + "debit,c1,100,01.09.2022\n"
+                + "debit,c9,100,2022-09-01\n"
+                + "user,c1,Ivan,Petrov,0,,\n"
+                + "debit,c1,100,2022-09-01\n"));
+        assertEquals(1, loader.getLoadedUsers());
+        assertEquals(1, loader.getLoadedCards());
+        assertEquals(5, loader.getFailures());
+        assertEquals("line 3: Unknown record type", loader.getErrors().get(0));
+        assertEquals("line 4: Wrong number of fields", loader.getErrors().get(1));
+        assertEquals("line 5: Incorrect date format", loader.getErrors().get(2));
+        assertEquals("line 6: Unknown user key", loader.getErrors().get(3));
+        assertEquals("line 7: Duplicate user key", loader.getErrors().get(4));
+        assertEquals(100, sber.getTotalBalance(), 0.001);
+    }
+
+    @Test
+    public void testUsersOfEarlierLoadsAreKnown() throws Exception {
+        BulkLoader loader = new BulkLoader(sber, new ForkJoinPool(2), 1);
+        loader.load(new StringReader("user,c1,Sasha,Ivanov,0,Green Street,124\n"));
+        loader.load(new StringReader("debit,c1,100,2022-09-01\ncredit,c1,200,2022-09-01\n"));
+        assertEquals(1, sber.getListUsers().size());
+        assertEquals(2, sber.getListUsers().get(0).getCardCount());
+        assertEquals(0, loader.getFailures());
+    }
+
+    @Test
+    public void testEmptySourceAndIncorrectChunkSize() throws Exception {
+        BulkLoader loader = new BulkLoader(sber);
+        loader.load(new StringReader("# только комментарий\n\n"));
+        assertEquals(0, loader.getLoadedUsers());
+        assertEquals(0, loader.getFailures());
+        assertThrows(BulkLoaderException.class, () -> new BulkLoader(sber, new ForkJoinPool(1), 0));
+    }
+}
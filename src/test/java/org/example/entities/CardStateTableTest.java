@@ -0,0 +1,84 @@
+package org.example.entities;
+
+import org.example.exception.BankException;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CardStateTableTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    @Test
+    public void testWritesFromOtherThreadAfterForkDoNotReachFork() throws Exception {
+        CardStateTable table = new CardStateTable(false, 4);
+        for (int i = 0; i < 16; i++) {
+            table.putDouble(table.allocateRow(), CardStateTable.BALANCE, i);
+        }
+        for (int round = 0; round < 100; round++) {
+            CardStateTable fork = table.fork();
+            int value = 1000 + round;
+            Thread writer = new Thread(() -> {
+                for (int row = 0; row < 16; row++) {
+                    table.putDouble(row, CardStateTable.BALANCE, value);
+                }
+            });
+            writer.start();
+            writer.join();
+            for (int row = 0; row < 16; row++) {
+                assertEquals(round == 0 ? row : value - 1, fork.getDouble(row, CardStateTable.BALANCE), 0.001);
+                assertEquals(value, table.getDouble(row, CardStateTable.BALANCE), 0.001);
+            }
+        }
+    }
+
+    @Test
+    public void testRowsAllocatedAfterForkAreNotShared() {
+        CardStateTable table = new CardStateTable(false, 2);
+        table.putDouble(table.allocateRow(), CardStateTable.BALANCE, 1);
+        CardStateTable fork = table.fork();
+        for (int i = 0; i < 8; i++) {
+            table.putDouble(table.allocateRow(), CardStateTable.BALANCE, 2);
+        }
+        table.putDouble(0, CardStateTable.BALANCE, 3);
+        assertEquals(9, table.getRows());
+        assertEquals(1, fork.getRows());
+        assertEquals(1, fork.getDouble(0, CardStateTable.BALANCE), 0.001);
+        assertEquals(3, table.getDouble(0, CardStateTable.BALANCE), 0.001);
+    }
+
+    @Test
+    public void testOffHeapStateTicksLikeHeapState() throws Exception {
+        Bank heap = bankWithDebitCard(false);
+        Bank offHeap = bankWithDebitCard(true);
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(heap);
+        time.addObserver(offHeap);
+        time.addMonth();
+        assertTrue(offHeap.getCardStateTable().isOffHeap());
+        assertEquals(80000, offHeap.getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(heap.getTotalBalance(), offHeap.getTotalBalance(), 0.001);
+        assertTrue(offHeap.fork().getCardStateTable().isOffHeap());
+    }
+
+    @Test
+    public void testOffHeapStateCannotBeEnabledAfterCardsAreOpened() throws Exception {
+        Bank bank = bankWithDebitCard(false);
+        assertThrows(BankException.class, bank::useOffHeapCardState);
+    }
+
+    private static Bank bankWithDebitCard(boolean offHeap) throws Exception {
+        Bank bank = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        if (offHeap) {
+            bank.useOffHeapCardState();
+        }
+        User sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        bank.addUser(sasha);
+        bank.addDebitCard(DATE, 50000, sasha.getUserId());
+        return bank;
+    }
+}
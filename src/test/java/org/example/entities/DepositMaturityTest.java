@@ -0,0 +1,95 @@
+package org.example.entities;
+
+import org.example.exception.DepositCardException;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DepositMaturityTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank bank;
+    private TimeManager time;
+    private DepositCard shortDeposit;
+    private DepositCard longDeposit;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        bank.addUser(sasha);
+        bank.addDepositCard(DATE, DATE.plusDays(10), 1000, sasha.getUserId());
+        bank.addDepositCard(DATE, DATE.plusDays(20), 1000, sasha.getUserId());
+        shortDeposit = bank.getListDepositCards().get(0);
+        longDeposit = bank.getListDepositCards().get(1);
+        time = new TimeManager(DATE);
+        time.addObserver(bank);
+    }
+
+    @Test
+    public void testDepositIsCapitalisedAndUnlockedOnEndDate() throws Exception {
+        for (int day = 1; day < 10; day++) {
+            time.addDay();
+        }
+        assertFalse(shortDeposit.isMatured());
+        assertEquals(1000, shortDeposit.getBalance(), 0.001);
+        assertEquals(0, shortDeposit.getAccruedInterest(), 0.001);
+        assertThrows(DepositCardException.class, () -> shortDeposit.withdrawMoney(10));
+        double interest = shortDeposit.getPercentSum();
+        assertTrue(interest > 0);
+
+        time.addDay();
+        assertTrue(shortDeposit.isMatured());
+        assertEquals(1000 + interest, shortDeposit.getBalance(), 0.001);
+        assertEquals(interest, shortDeposit.getAccruedInterest(), 0.001);
+        assertEquals(1, bank.getPendingMaturitiesCount());
+        shortDeposit.withdrawMoney(10);
+        assertEquals(990 + interest, shortDeposit.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testTicksPastEndDateMatureEachDepositOnce() throws Exception {
+        for (int day = 1; day <= 10; day++) {
+            time.addDay();
+        }
+        double shortBalance = shortDeposit.getBalance();
+        double shortAccrued = shortDeposit.getAccruedInterest();
+        assertFalse(longDeposit.isMatured());
+
+        for (int day = 11; day <= 25; day++) {
+            time.addDay();
+        }
+        assertTrue(shortDeposit.isMatured());
+        assertTrue(longDeposit.isMatured());
+        assertEquals(0, bank.getPendingMaturitiesCount());
+        assertEquals(shortBalance, shortDeposit.getBalance(), 0.001);
+        assertEquals(shortAccrued, shortDeposit.getAccruedInterest(), 0.001);
+        assertTrue(longDeposit.getAccruedInterest() > shortAccrued);
+        assertEquals(1000 + longDeposit.getAccruedInterest(), longDeposit.getBalance(), 0.001);
+        longDeposit.withdrawMoney(1000);
+    }
+
+    @Test
+    public void testDepositAddedAfterEndDateMaturesOnNextTick() throws Exception {
+        for (int day = 1; day <= 5; day++) {
+            time.addDay();
+        }
+        User ivan = new UserBuilder("Ivan", "Petrov", 0).withAddress("Green Street").withPassportId(123).build();
+        bank.addUser(ivan);
+        bank.addDepositCard(DATE, DATE.plusDays(2), 500, ivan.getUserId());
+        DepositCard overdue = bank.getListDepositCards().get(2);
+        assertFalse(overdue.isMatured());
+
+        time.addDay();
+        assertTrue(overdue.isMatured());
+        overdue.withdrawMoney(500);
+        assertEquals(2, bank.getPendingMaturitiesCount());
+    }
+}
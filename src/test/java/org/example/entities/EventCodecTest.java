@@ -0,0 +1,129 @@
+package org.example.entities;
+
+import org.example.exception.EventCodecException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EventCodecTest {
+    private static final UUID FROM = UUID.randomUUID();
+    private static final UUID TO = UUID.randomUUID();
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    @Test
+    public void testRoundTripAndSlicing() throws Exception {
+        Bank sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        sber.addDebitCard(DATE, 0, sasha.getUserId());
+        DebitCard first = sber.getListDebitCards().get(0);
+        DebitCard second = sber.getListDebitCards().get(1);
+        first.transferMoney(300, second);
+        first.topUpCard(50);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int length = EventCodec.writer(buffer)
+                .writeCardEvent(EventCodec.CARD_OPENED, second, sasha, 0)
+                .writeTransaction(first.getTransaction(0))
+                .writeTransaction(first.getTransaction(1))
+                .finish();
+        assertEquals(EventCodec.HEADER_SIZE + 3 * EventCodec.RECORD_SIZE, length);
+        buffer.flip();
+        EventBatch batch = EventCodec.read(buffer);
+        assertEquals(3, batch.size());
+        assertEquals(EventCodec.DEBIT_CARD, batch.getCardType(0));
+        assertEquals(sasha.getUserId(), batch.getTo(0));
+        assertEquals(second.getCardId(), batch.toTransaction(1, sber.getIdSpace().getCards()).getTo());
+        assertNull(batch.getTo(2));
+
+        ByteBuffer copy = ByteBuffer.allocate(1024);
+        batch.slice(1, 2).writeTo(copy);
+        copy.flip();
+        EventBatch slice = EventCodec.read(copy);
+        assertEquals(2, slice.size());
+        assertEquals(50, slice.getMoney(1), 0.001);
+        assertEquals(first.getTransaction(1).getTimeMillis(), slice.getTimeMillis(1));
+    }
+
+    @Test
+    public void testEmptyAndTruncatedBuffersAreRejected() throws Exception {
+        assertThrows(EventCodecException.class, () -> EventCodec.read(ByteBuffer.allocate(64)));
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        EventCodec.writer(buffer).writeTransaction(FROM, TO, 1, 10).writeTransaction(FROM, TO, 2, 20).finish();
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        assertThrows(EventCodecException.class, () -> EventCodec.read(buffer));
+    }
+
+    @Test
+    public void testNewerVersionIsReadSkippingAppendedFields() throws Exception {
+        ByteBuffer buffer = batch((short) (EventCodec.VERSION + 1), EventCodec.RECORD_SIZE + 8);
+        EventBatch batch = EventCodec.read(buffer);
+
+        assertEquals(EventCodec.VERSION + 1, batch.getVersion());
+        assertEquals(2, batch.size());
+        assertEquals(TO, batch.getTo(1));
+        assertEquals(FROM, batch.getFrom(1));
+        assertEquals(1001, batch.getTimeMillis(1));
+        assertEquals(21.5, batch.getMoney(1), 0.001);
+        IdDictionary<ICard> cardIds = new IdDictionary<>();
+        assertEquals(TO, batch.toTransaction(0, cardIds).getTo());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testRewrittenBatchKeepsVersionAndAppendedFields() throws Exception {
+        ByteBuffer source = batch((short) (EventCodec.VERSION + 1), EventCodec.RECORD_SIZE + 8);
+        EventBatch batch = EventCodec.read(source);
+        ByteBuffer copy = ByteBuffer.allocate(source.capacity());
+        batch.slice(1, 1).writeTo(copy);
+        copy.flip();
+
+        EventBatch slice = EventCodec.read(copy.duplicate());
+        assertEquals(EventCodec.VERSION + 1, slice.getVersion());
+        assertEquals(21.5, slice.getMoney(0), 0.001);
+        assertEquals(EventCodec.HEADER_SIZE + EventCodec.RECORD_SIZE + 8, copy.remaining());
+        assertEquals(0x7777L, copy.order(ByteOrder.LITTLE_ENDIAN).getLong(copy.limit() - 8));
+    }
+
+    @Test
+    public void testShorterRecordsAreRejected() {
+        ByteBuffer buffer = batch((short) (EventCodec.VERSION + 1), EventCodec.RECORD_SIZE - 8);
+        assertThrows(EventCodecException.class, () -> EventCodec.read(buffer));
+        assertThrows(EventCodecException.class, () -> EventCodec.read(batch((short) 0, EventCodec.RECORD_SIZE)));
+    }
+
+    private static ByteBuffer batch(short version, int recordSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(EventCodec.HEADER_SIZE + 2 * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(EventCodec.MAGIC).putShort(version).putShort((short) recordSize).putInt(2).putInt(0);
+        for (int i = 0; i < 2; i++) {
+            int offset = buffer.position();
+            buffer.put(offset + EventCodec.TYPE, EventCodec.TRANSACTION);
+            buffer.putLong(offset + EventCodec.TIME, 1000 + i);
+            buffer.putDouble(offset + EventCodec.MONEY, 20 + i * 1.5);
+            if (recordSize >= EventCodec.RECORD_SIZE) {
+                putId(buffer, offset + EventCodec.FIRST, FROM);
+                putId(buffer, offset + EventCodec.SECOND, TO);
+            }
+            if (recordSize > EventCodec.RECORD_SIZE) {
+                buffer.putLong(offset + EventCodec.RECORD_SIZE, 0x7777L);
+            }
+            buffer.position(offset + recordSize);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void putId(ByteBuffer buffer, int offset, UUID id) {
+        buffer.putLong(offset, id.getMostSignificantBits());
+        buffer.putLong(offset + 8, id.getLeastSignificantBits());
+    }
+}
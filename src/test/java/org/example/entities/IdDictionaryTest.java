@@ -0,0 +1,171 @@
+package org.example.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+public class IdDictionaryTest {
+    @Test
+    public void testInternMapsKeysBothWays() {
+        IdDictionary<ICard> dictionary = new IdDictionary<>();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        assertEquals(0, dictionary.intern(first));
+        assertEquals(1, dictionary.intern(second));
+        assertEquals(0, dictionary.intern(first));
+        assertEquals(1, dictionary.indexOf(second));
+        assertEquals(first, dictionary.key(0));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testUnknownKeysAndNoneMapToNothing() {
+        IdDictionary<ICard> dictionary = new IdDictionary<>();
+        dictionary.intern(UUID.randomUUID());
+        assertEquals(IdDictionary.NONE, dictionary.indexOf(UUID.randomUUID()));
+        assertEquals(IdDictionary.NONE, dictionary.indexOf(null));
+        assertNull(dictionary.key(IdDictionary.NONE));
+        assertNull(dictionary.get(IdDictionary.NONE));
+        assertNull(dictionary.get(0));
+    }
+
+    @Test
+    public void testRegisterKeepsIdOfInternedKey() {
+        IdDictionary<String> dictionary = new IdDictionary<>();
+        UUID key = UUID.randomUUID();
+        int interned = dictionary.intern(key);
+        assertEquals(interned, dictionary.register(key, "card"));
+        assertEquals("card", dictionary.get(interned));
+        assertEquals(1, dictionary.register(UUID.randomUUID(), "other"));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testIdsStayDenseBeyondInitialCapacity() {
+        IdDictionary<UUID> dictionary = new IdDictionary<>();
+        dictionary.ensureCapacity(2000);
+        UUID[] keys = new UUID[3000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID();
+            assertEquals(i, dictionary.register(keys[i], keys[i]));
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, dictionary.indexOf(keys[i]));
+            assertEquals(keys[i], dictionary.key(i));
+            assertSame(keys[i], dictionary.get(i));
+        }
+        assertEquals(3000, dictionary.size());
+    }
+
+    @Test
+    public void testConcurrentInternIssuesOneIdPerKey() throws Exception {
+        IdDictionary<ICard> dictionary = new IdDictionary<>();
+        UUID[] keys = new UUID[2000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID();
+        }
+        int[][] ids = new int[4][keys.length];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[ids.length];
+        for (int t = 0; t < threads.length; t++) {
+            int[] result = ids[t];
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    result[i] = dictionary.intern(keys[i]);
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(keys.length, dictionary.size());
+        for (int i = 0; i < keys.length; i++) {
+            for (int[] result : ids) {
+                assertEquals(ids[0][i], result[i]);
+            }
+            assertEquals(keys[i], dictionary.key(ids[0][i]));
+        }
+    }
+
+    @Test
+    public void testRegisteredValueIsVisibleOnceIdIsPublished() throws Exception {
+        IdDictionary<UUID> dictionary = new IdDictionary<>();
+        UUID[] keys = new UUID[20000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID();
+        }
+        boolean[] missed = new boolean[1];
+        Thread reader = new Thread(() -> {
+            for (UUID key : keys) {
+                int index;
+                while ((index = dictionary.indexOf(key)) == IdDictionary.NONE) {
+                    Thread.yield();
+                }
+                if (dictionary.get(index) != key) {
+                    missed[0] = true;
+                }
+            }
+        });
+        reader.start();
+        for (UUID key : keys) {
+            dictionary.register(key, key);
+        }
+        reader.join();
+        assertFalse(missed[0]);
+    }
+
+    @Test
+    public void testResolveTranslatesIdsOfForeignDictionary() {
+        IdDictionary<String> own = new IdDictionary<>();
+        IdDictionary<String> foreign = new IdDictionary<>();
+        UUID ownKey = UUID.randomUUID();
+        UUID foreignKey = UUID.randomUUID();
+        own.register(ownKey, "own");
+        int foreignIndex = foreign.register(foreignKey, "foreign");
+        assertEquals(0, own.resolve(0, ownKey));
+        assertEquals(1, own.resolve(foreignIndex, foreignKey));
+        assertEquals(foreignKey, own.key(1));
+        assertEquals(1, own.resolve(42, foreignKey));
+    }
+
+    @Test
+    public void testTransferBetweenStandaloneCardsRecordsReceiver() throws Exception {
+        LocalDateTime date = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+        DebitCard from = new DebitCard(date, 1000, true);
+        DebitCard to = new DebitCard(date, 0, true);
+        from.transferMoney(100, to);
+        Transaction transaction = from.getTransaction(0);
+        assertEquals(from.getId(), transaction.getFrom());
+        assertEquals(to.getId(), transaction.getTo());
+        assertEquals(100.0, to.getBalance());
+    }
+
+    @Test
+    public void testTransactionWithoutDictionaryKeepsUuids() {
+        LocalDateTime date = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        Transaction transfer = new Transaction(from, to, date, 10);
+        assertEquals(from, transfer.getFrom());
+        assertEquals(to, transfer.getTo());
+        assertNull(new Transaction(to, date, 10).getFrom());
+        assertEquals(to, new Transaction(to, date, 10).getTo());
+        assertNull(new Transaction(date, from, 10).getTo());
+        assertEquals(date, transfer.getDateTransaction());
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class IdentificationTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank sber;
+    private UserBuilder builder;
+    private User petr;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        builder = new UserBuilder("Petr", "Sidorov", 1000).withAddress("Green Street");
+        petr = builder.build();
+        sber.addUser(petr);
+    }
+
+    @Test
+    public void testIdentificationPropagatesWithoutTick() throws Exception {
+        sber.addDebitCard(DATE, 500, petr.getUserId());
+        assertFalse(sber.getListDebitCards().get(0).getIdentification());
+        builder.withPassportId(125);
+        assertTrue(sber.getListDebitCards().get(0).getIdentification());
+    }
+
+    @Test
+    public void testAllCardTypesOfUserAreIdentified() throws Exception {
+        sber.addDebitCard(DATE, 500, petr.getUserId());
+        sber.addCreditCard(DATE, 500, petr.getUserId());
+        sber.addDepositCard(DATE, DATE.plusDays(10), 500, petr.getUserId());
+        builder.withPassportId(125);
+        assertTrue(sber.getListDebitCards().get(0).getIdentification());
+        assertTrue(sber.getListCreditCards().get(0).getIdentification());
+        assertTrue(sber.getListDepositCards().get(0).getIdentification());
+    }
+
+    @Test
+    public void testCardsOpenedAfterIdentificationAreIdentified() throws Exception {
+        builder.withPassportId(125);
+        sber.addDebitCard(DATE, 500, petr.getUserId());
+        assertTrue(sber.getListDebitCards().get(0).getIdentification());
+    }
+
+    @Test
+    public void testOtherUsersStayUnidentified() throws Exception {
+        User ivan = new UserBuilder("Ivan", "Petrov", 0).withAddress("Green Street").build();
+        sber.addUser(ivan);
+        sber.addDebitCard(DATE, 500, petr.getUserId());
+        sber.addDebitCard(DATE, 500, ivan.getUserId());
+        builder.withPassportId(125);
+        assertTrue(sber.getListDebitCards().get(0).getIdentification());
+        assertFalse(sber.getListDebitCards().get(1).getIdentification());
+    }
+}
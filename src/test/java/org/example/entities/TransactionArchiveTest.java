@@ -0,0 +1,136 @@
+package org.example.entities;
+
+import org.example.exception.BankException;
+import org.example.exception.CentralBankException;
+import org.example.exception.TransactionArchiveException;
+import org.example.service.CentralBank;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransactionArchiveTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private DebitCard card;
+    private TimeManager time;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 0, sasha.getUserId());
+        card = sber.getListDebitCards().get(0);
+        time = new TimeManager(DATE);
+        time.addObserver(sber);
+    }
+
+    @Test
+    public void testOldTransactionsMoveToArchive() throws Exception {
+        card.topUpCard(100.5);
+        card.topUpCard(25);
+        try (TransactionArchive archive = new TransactionArchive(Files.createTempDirectory("archive"), 4)) {
+            sber.setTransactionRetention(archive, 3);
+            for (int i = 0; i < 5; i++) {
+                time.addDay();
+            }
+            assertEquals(2, card.getTransactionHistory().getArchivedCount());
+            assertEquals(100.5, card.getTransaction(0).getMoney(), 0.001);
+            assertEquals(card.getCardId(), card.getTransaction(1).getFrom());
+            assertThrows(CentralBankException.class, () -> centralBank.transactionCancellation(card.getCardId(), 1));
+        }
+    }
+
+    @Test
+    public void testRecentTransactionsStayInMemory() throws Exception {
+        try (TransactionArchive archive = new TransactionArchive(Files.createTempDirectory("archive"), 4)) {
+            sber.setTransactionRetention(archive, 3);
+            card.topUpCard(10);
+            time.addDay();
+            time.addDay();
+            card.topUpCard(20);
+            time.addDay();
+            time.addDay();
+            assertEquals(1, card.getTransactionHistory().getArchivedCount());
+            assertTrue(card.getTransactionHistory().isArchived(0));
+            centralBank.transactionCancellation(card.getCardId(), 1);
+            assertEquals(10, card.getBalance(), 0.001);
+            assertEquals(1, card.getTransactionHistory().size());
+        }
+    }
+
+    @Test
+    public void testArchivedSegmentsAreReadOnceAndSpreadOverFiles() throws Exception {
+        Path directory = Files.createTempDirectory("archive");
+        try (TransactionArchive archive = new TransactionArchive(directory, 4, 64)) {
+            sber.setTransactionRetention(archive, 0);
+            for (int day = 1; day <= 4; day++) {
+                card.topUpCard(day);
+                time.addDay();
+            }
+            assertEquals(4, card.getTransactionHistory().getArchivedCount());
+            assertEquals(4, archive.getSegmentsWritten());
+            assertTrue(archive.getFileCount() > 1);
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i + 1, card.getTransaction(i).getMoney(), 0.001);
+            }
+            long read = archive.getSegmentsRead();
+            assertEquals(3, card.getTransaction(2).getMoney(), 0.001);
+            assertEquals(read, archive.getSegmentsRead());
+        }
+    }
+
+    @Test
+    public void testIncorrectParametersAreRejected() throws Exception {
+        Path directory = Files.createTempDirectory("archive");
+        assertThrows(TransactionArchiveException.class, () -> new TransactionArchive(directory, 0));
+        assertThrows(TransactionArchiveException.class, () -> new TransactionArchive(directory, 4, 0));
+        try (TransactionArchive archive = new TransactionArchive(directory, 4)) {
+            assertThrows(BankException.class, () -> sber.setTransactionRetention(archive, -1));
+        }
+        assertEquals(0, sber.archiveTransactions(DATE.plusDays(100)));
+    }
+
+    @Test
+    public void testExistingArchiveFilesAreNotOverwritten() throws Exception {
+        Path directory = Files.createTempDirectory("archive");
+        byte[] previous = {1, 2, 3};
+        Files.write(directory.resolve("transactions-00000.seg"), previous);
+        List<Transaction> transactions = Collections.singletonList(
+                new Transaction(new IdDictionary<>(), IdDictionary.NONE, 0, DATE, 10));
+        try (TransactionArchive archive = new TransactionArchive(directory, 4)) {
+            long address = archive.append(transactions, 0, 1);
+            assertEquals(10, archive.read(address, new IdDictionary<>())[0].getMoney(), 0.001);
+        }
+        assertTrue(Arrays.equals(previous, Files.readAllBytes(directory.resolve("transactions-00000.seg"))));
+        assertTrue(Files.exists(directory.resolve("transactions-00001.seg")));
+    }
+
+    @Test
+    public void testFileNameCollisionFails() throws Exception {
+        Path directory = Files.createTempDirectory("archive");
+        List<Transaction> transactions = Collections.singletonList(
+                new Transaction(new IdDictionary<>(), IdDictionary.NONE, 0, DATE, 10));
+        try (TransactionArchive archive = new TransactionArchive(directory, 4)) {
+            Files.write(directory.resolve("transactions-00000.seg"), new byte[]{1});
+            assertThrows(FileAlreadyExistsException.class, () -> archive.append(transactions, 0, 1));
+        }
+        assertEquals(1, Files.size(directory.resolve("transactions-00000.seg")));
+    }
+}
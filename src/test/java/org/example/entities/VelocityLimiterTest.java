@@ -0,0 +1,138 @@
+package org.example.entities;
+
+import org.example.exception.BankException;
+import org.example.exception.DebitCardException;
+import org.example.service.TimeManager;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VelocityLimiterTest {
+    private static final long NOW = 1_000_000;
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void testConcurrentOperationsDoNotExceedCount() throws Exception {
+        VelocityLimiter limiter = new VelocityLimiter(1000, 10, 0, 100);
+        assertEquals(100, acquireConcurrently(limiter, 8, 1000, 1));
+    }
+
+    @Test
+    public void testConcurrentOperationsDoNotExceedAmount() throws Exception {
+        VelocityLimiter limiter = new VelocityLimiter(1000, 10, 50, 0);
+        assertEquals(50, acquireConcurrently(limiter, 8, 1000, 1));
+    }
+
+    @Test
+    public void testWindowSlidesPastOldBuckets() {
+        VelocityLimiter limiter = new VelocityLimiter(1000, 10, 0, 2);
+        assertTrue(limiter.tryAcquire(3, NOW, 1));
+        assertTrue(limiter.tryAcquire(3, NOW + 5000, 1));
+        assertFalse(limiter.tryAcquire(3, NOW + 9999, 1));
+        assertTrue(limiter.tryAcquire(3, NOW + 10000, 1));
+        assertTrue(limiter.tryAcquire(4, NOW + 9999, 1));
+    }
+
+    @Test
+    public void testChunksAreCreatedOnlyForUsedCards() {
+        VelocityLimiter limiter = new VelocityLimiter(1000, 10, 0, 2);
+        assertTrue(limiter.tryAcquire(1_000_000, NOW, 1));
+        assertEquals(1, limiter.getChunkCount());
+        assertTrue(limiter.tryAcquire(1_000_001, NOW, 1));
+        assertTrue(limiter.tryAcquire(5, NOW, 1));
+        assertEquals(2, limiter.getChunkCount());
+    }
+
+    @Test
+    public void testForkKeepsWindowAndCountsSeparately() {
+        VelocityLimiter limiter = new VelocityLimiter(1000, 10, 0, 2);
+        assertTrue(limiter.tryAcquire(7, NOW, 1));
+        VelocityLimiter fork = limiter.fork();
+        assertTrue(fork.tryAcquire(7, NOW, 1));
+        assertFalse(fork.tryAcquire(7, NOW, 1));
+        assertTrue(limiter.tryAcquire(7, NOW, 1));
+        assertFalse(limiter.tryAcquire(7, NOW, 1));
+    }
+
+    @Test
+    public void testBankLimitsUnidentifiedUser() throws Exception {
+        Bank sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        User petr = new UserBuilder("Petr", "Sidorov", 1000).withAddress("Green Street").build();
+        sber.addUser(petr);
+        sber.addDebitCard(DATE, 50000, petr.getUserId());
+        sber.setVelocityLimits(DAY, 24, 1000, 3);
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(sber);
+        time.addDay();
+        DebitCard card = sber.getListDebitCards().get(0);
+        card.withdrawMoney(400);
+        card.withdrawMoney(400);
+        assertThrows(DebitCardException.class, () -> card.withdrawMoney(400));
+        card.withdrawMoney(100);
+        assertThrows(DebitCardException.class, () -> card.withdrawMoney(1));
+        assertEquals(49100, card.getBalance(), 0.001);
+
+        time.addDay();
+        card.withdrawMoney(400);
+        assertEquals(48700, card.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testBankDoesNotLimitIdentifiedUser() throws Exception {
+        Bank sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        sber.setVelocityLimits(DAY, 24, 1000, 3);
+        DebitCard card = sber.getListDebitCards().get(0);
+        for (int i = 0; i < 10; i++) {
+            card.withdrawMoney(900);
+        }
+        assertEquals(41000, card.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testBankRejectsIncorrectLimits() throws Exception {
+        Bank sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        assertThrows(BankException.class, () -> sber.setVelocityLimits(DAY, 0, 1000, 3));
+        assertThrows(BankException.class, () -> sber.setVelocityLimits(10, 24, 1000, 3));
+        assertThrows(BankException.class, () -> sber.setVelocityLimits(DAY, 24, -1, 3));
+        assertThrows(BankException.class, () -> sber.setVelocityLimits(DAY, 24, 1000, 4096));
+    }
+
+    private static int acquireConcurrently(VelocityLimiter limiter, int threads, int attempts, double money)
+            throws Exception {
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < attempts; j++) {
+                    if (limiter.tryAcquire(42, NOW, money)) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return acquired.get();
+    }
+}
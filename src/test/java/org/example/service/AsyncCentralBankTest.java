@@ -0,0 +1,156 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.AsyncCentralBankException;
+import org.example.exception.DebitCardException;
+import org.example.exception.UncommittedOperationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncCentralBankTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private UUID cardId;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        cardId = sber.getListDebitCards().get(0).getCardId();
+    }
+
+    @Test
+    public void testOperationsCompleteAfterGroupCommit() throws Exception {
+        AtomicInteger committed = new AtomicInteger();
+        try (AsyncCentralBank async = new AsyncCentralBank(centralBank, committed::addAndGet, 16)) {
+            CompletableFuture<Void> topUp = async.topUpCard(cardId, 500);
+            CompletableFuture<Void> withdraw = async.withdrawMoney(cardId, 5000);
+            topUp.get(5, TimeUnit.SECONDS);
+            ExecutionException error = assertThrows(ExecutionException.class, () -> withdraw.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof DebitCardException);
+        }
+        assertEquals(2, committed.get());
+        assertEquals(1500, sber.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testFailedCommitReportsAppliedOperationsAsUncommitted() throws Exception {
+        IOException diskError = new IOException("disk full");
+        try (AsyncCentralBank async = new AsyncCentralBank(centralBank, operations -> {
+            throw diskError;
+        }, 16)) {
+            CompletableFuture<Void> topUp = async.topUpCard(cardId, 500);
+            CompletableFuture<Void> withdraw = async.withdrawMoney(cardId, 5000);
+
+            ExecutionException uncommitted = assertThrows(ExecutionException.class,
+                    () -> topUp.get(5, TimeUnit.SECONDS));
+            assertTrue(uncommitted.getCause() instanceof UncommittedOperationException);
+            assertEquals(diskError, uncommitted.getCause().getCause());
+            ExecutionException rejected = assertThrows(ExecutionException.class,
+                    () -> withdraw.get(5, TimeUnit.SECONDS));
+            assertTrue(rejected.getCause() instanceof DebitCardException);
+        }
+        assertEquals(1500, sber.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testFullQueueRejectsOperation() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (AsyncCentralBank async = new AsyncCentralBank(centralBank, operations -> {
+            entered.countDown();
+            release.await();
+        }, 16, 1)) {
+            CompletableFuture<Void> first = async.topUpCard(cardId, 1);
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Void> queued = async.topUpCard(cardId, 1);
+            CompletableFuture<Void> rejected = async.topUpCard(cardId, 1);
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof AsyncCentralBankException);
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1002, sber.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testCloseCompletesQueuedOperationsAndRejectsNewOnes() throws Exception {
+        AsyncCentralBank async = new AsyncCentralBank(centralBank);
+        CompletableFuture<Void> topUp = async.topUpCard(cardId, 100);
+        async.close();
+        assertTrue(topUp.isDone());
+        topUp.get();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> async.topUpCard(cardId, 1).get());
+        assertTrue(error.getCause() instanceof AsyncCentralBankException);
+        assertEquals(1100, sber.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testCloseLetsRunningCommitFinish() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncCentralBank async = new AsyncCentralBank(centralBank, operations -> {
+            entered.countDown();
+            release.await();
+        }, 16);
+        CompletableFuture<Void> topUp = async.topUpCard(cardId, 100);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread closing = new Thread(async::close);
+        closing.start();
+        closing.join(200);
+        assertTrue(closing.isAlive());
+        release.countDown();
+        closing.join(5000);
+        assertFalse(closing.isAlive());
+        topUp.get();
+        assertEquals(1100, sber.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testErrorInOperationCompletesItsFuture() throws Exception {
+        AssertionError crash = new AssertionError("crash");
+        CentralBank failing = new CentralBank() {
+            @Override
+            public void withdrawMoney(UUID cardId, double money) {
+                throw crash;
+            }
+        };
+        Bank tinkoff = new Bank("Tinkoff", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        failing.addBank(tinkoff);
+        User ivan = new UserBuilder("Ivan", "Ivanov", 0).withAddress("Green Street").withPassportId(123).build();
+        tinkoff.addUser(ivan);
+        tinkoff.addDebitCard(DATE, 1000, ivan.getUserId());
+        UUID card = tinkoff.getListDebitCards().get(0).getCardId();
+        try (AsyncCentralBank async = new AsyncCentralBank(failing)) {
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> async.withdrawMoney(card, 100).get(5, TimeUnit.SECONDS));
+            assertEquals(crash, error.getCause());
+            async.topUpCard(card, 100).get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1100, tinkoff.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+}
@@ -0,0 +1,291 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.DebitCard;
+import org.example.entities.ITickProgress;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.BankLanesException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BankLanesTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private Bank tinkoff;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = bank("SberBank", "Sasha", 124);
+        tinkoff = bank("Tinkoff", "Ivan", 123);
+    }
+
+    @Test
+    public void testFullQueueOfOneBankDoesNotBlockOthers() throws Exception {
+        DebitCard sberCard = sber.getListDebitCards().get(0);
+        UUID tinkoffCard = debit(tinkoff);
+        TimeManager timeManager = new TimeManager(DATE);
+        try (BankLanes lanes = new BankLanes(centralBank, 2, 16)) {
+            lanes.configureLane(sber, 1, 1);
+            CompletableFuture<Void> busy;
+            CompletableFuture<Void> queued;
+            CompletableFuture<Void> rejected;
+            synchronized (sberCard) {
+                busy = lanes.topUpCard(sberCard.getCardId(), 100);
+                while (lanes.getMetrics(sber).getQueueDepth() > 0) {
+                    Thread.sleep(1);
+                }
+                queued = lanes.transferMoney(300, sberCard.getCardId(), tinkoffCard);
+                rejected = lanes.withdrawMoney(sberCard.getCardId(), 100);
+                lanes.topUpCard(tinkoffCard, 50).get(5, TimeUnit.SECONDS);
+                assertEquals(1, lanes.getMetrics(sber).getQueueDepth());
+            }
+            ExecutionException full = assertThrows(ExecutionException.class, rejected::get);
+            assertEquals("Queue of bank SberBank is full", full.getCause().getMessage());
+            busy.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+            assertEquals(800, sberCard.getBalance(), 0.001);
+            assertEquals(1050, centralBank.getCard(tinkoffCard).getBalance(), 0.001);
+
+            timeManager.addObserver(lanes);
+            timeManager.addDay();
+            assertEquals(1350, centralBank.getCard(tinkoffCard).getBalance(), 0.001);
+            BankLaneMetrics metrics = lanes.getMetrics(sber);
+            assertEquals(1, metrics.getRejected());
+            assertEquals(3, metrics.getCompleted());
+            assertTrue(metrics.getMaxLatencyNanos() >= metrics.getMeanLatencyNanos());
+            assertEquals(0, lanes.getMetrics(tinkoff).getRejected());
+            assertThrows(BankLanesException.class, () -> lanes.configureLane(sber, 2, 2));
+        }
+    }
+
+    @Test
+    public void testResumedTickSkipsBanksThatCompleted() throws Exception {
+        TickCheckpoint checkpoint = new TickCheckpoint();
+        try (BankLanes lanes = new BankLanes(centralBank, 1, 4)) {
+            lanes.transferMoney(300, debit(sber), debit(tinkoff)).get(5, TimeUnit.SECONDS);
+            assertThrows(IllegalStateException.class,
+                    () -> lanes.update(DATE.plusDays(1),
+                            new FailingProgress(checkpoint, 1, new IllegalStateException("crash"))));
+            assertEquals(-2900, credit(sber), 0.001);
+            assertEquals(-2900, credit(tinkoff), 0.001);
+            assertEquals(1000, centralBank.getCard(debit(tinkoff)).getBalance(), 0.001);
+
+            lanes.update(DATE.plusDays(1), checkpoint);
+            assertEquals(-2900, credit(sber), 0.001);
+            assertEquals(-2900, credit(tinkoff), 0.001);
+            assertEquals(1300, centralBank.getCard(debit(tinkoff)).getBalance(), 0.001);
+            assertEquals(BankLanes.BANK_COMPLETED, checkpoint.part(0).getPosition());
+            assertEquals(BankLanes.BANK_COMPLETED, checkpoint.part(1).getPosition());
+        }
+    }
+
+    @Test
+    public void testErrorInTickIsRethrownAsIs() throws Exception {
+        try (BankLanes lanes = new BankLanes(centralBank, 1, 4)) {
+            AssertionError error = new AssertionError("crash");
+            assertEquals(error, assertThrows(AssertionError.class,
+                    () -> lanes.update(DATE.plusDays(1), new FailingProgress(new TickCheckpoint(), 0, error))));
+            lanes.withdrawMoney(debit(sber), 100).get(5, TimeUnit.SECONDS);
+            assertEquals(900, centralBank.getCard(debit(sber)).getBalance(), 0.001);
+        }
+    }
+
+    @Test
+    public void testCancellationWaitsForTickOfReceiverBank() throws Exception {
+        try (BankLanes lanes = new BankLanes(centralBank, 1, 4)) {
+            lanes.transferMoney(300, debit(sber), debit(tinkoff)).get(5, TimeUnit.SECONDS);
+            lanes.update(DATE.plusDays(1));
+            assertEquals(1300, centralBank.getCard(debit(tinkoff)).getBalance(), 0.001);
+
+            Lock tick = lanes.tickLock(tinkoff).writeLock();
+            CompletableFuture<Void> cancellation;
+            tick.lock();
+            try {
+                cancellation = lanes.transactionCancellation(debit(sber), 0);
+                assertThrows(TimeoutException.class, () -> cancellation.get(100, TimeUnit.MILLISECONDS));
+                assertEquals(1300, centralBank.getCard(debit(tinkoff)).getBalance(), 0.001);
+            } finally {
+                tick.unlock();
+            }
+            cancellation.get(5, TimeUnit.SECONDS);
+            assertEquals(1000, centralBank.getCard(debit(sber)).getBalance(), 0.001);
+            assertEquals(1000, centralBank.getCard(debit(tinkoff)).getBalance(), 0.001);
+        }
+    }
+
+    @Test
+    public void testCloseLetsRunningTickFinish() throws Exception {
+        TickCheckpoint checkpoint = new TickCheckpoint();
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        BankLanes lanes = new BankLanes(centralBank, 1, 4);
+        Thread ticking = new Thread(() -> {
+            try {
+                lanes.update(DATE.plusDays(1), new BlockingProgress(checkpoint, entered, release));
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        ticking.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread closing = new Thread(lanes::close);
+        closing.start();
+        closing.join(200);
+        assertTrue(closing.isAlive());
+        release.countDown();
+        closing.join(5000);
+        ticking.join(5000);
+        assertFalse(closing.isAlive());
+        assertNull(error.get());
+        assertEquals(BankLanes.BANK_COMPLETED, checkpoint.part(0).getPosition());
+        assertEquals(BankLanes.BANK_COMPLETED, checkpoint.part(1).getPosition());
+        assertEquals(-2900, credit(sber), 0.001);
+    }
+
+    private Bank bank(String title, String name, int passport) throws Exception {
+        Bank bank = new Bank(title, 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(bank);
+        User user = new UserBuilder(name, "Ivanov", 0).withAddress("Green Street").withPassportId(passport).build();
+        bank.addUser(user);
+        bank.addCreditCard(DATE, 100, user.getUserId());
+        bank.addDebitCard(DATE, 1000, user.getUserId());
+        bank.getListCreditCards().get(0).withdrawMoney(2000);
+        return bank;
+    }
+
+    private double credit(Bank bank) {
+        return bank.getListCreditCards().get(0).getBalance();
+    }
+
+    private UUID debit(Bank bank) {
+        return bank.getListDebitCards().get(0).getCardId();
+    }
+
+    /**
+     * Прогресс, в котором первое продвижение указанного банка завершается ошибкой.
+     */
+    private static final class FailingProgress implements ITickProgress {
+        private final ITickProgress progress;
+        private final int failingPart;
+        private final Throwable failure;
+        private boolean failed;
+
+        private FailingProgress(ITickProgress progress, int failingPart, Throwable failure) {
+            this.progress = progress;
+            this.failingPart = failingPart;
+            this.failure = failure;
+        }
+
+        @Override
+        public long getPosition() {
+            return progress.getPosition();
+        }
+
+        @Override
+        public void advance(long position) throws Exception {
+            progress.advance(position);
+        }
+
+        @Override
+        public ITickProgress part(int part) {
+            ITickProgress delegate = progress.part(part);
+            if (part != failingPart) {
+                return delegate;
+            }
+            return new ITickProgress() {
+                @Override
+                public long getPosition() {
+                    return delegate.getPosition();
+                }
+
+                @Override
+                public void advance(long position) throws Exception {
+                    synchronized (FailingProgress.this) {
+                        if (!failed) {
+                            failed = true;
+                            if (failure instanceof Error) {
+                                throw (Error) failure;
+                            }
+                            throw (Exception) failure;
+                        }
+                    }
+                    delegate.advance(position);
+                }
+
+                @Override
+                public ITickProgress part(int part) {
+                    return delegate.part(part);
+                }
+            };
+        }
+    }
+
+    /**
+     * Прогресс, в котором продвижение каждого банка ждет, пока тест не отпустит тики.
+     */
+    private static final class BlockingProgress implements ITickProgress {
+        private final ITickProgress progress;
+        private final CountDownLatch entered;
+        private final CountDownLatch release;
+
+        private BlockingProgress(ITickProgress progress, CountDownLatch entered, CountDownLatch release) {
+            this.progress = progress;
+            this.entered = entered;
+            this.release = release;
+        }
+
+        @Override
+        public long getPosition() {
+            return progress.getPosition();
+        }
+
+        @Override
+        public void advance(long position) throws Exception {
+            progress.advance(position);
+        }
+
+        @Override
+        public ITickProgress part(int part) {
+            ITickProgress delegate = progress.part(part);
+            return new ITickProgress() {
+                @Override
+                public long getPosition() {
+                    return delegate.getPosition();
+                }
+
+                @Override
+                public void advance(long position) throws Exception {
+                    entered.countDown();
+                    release.await();
+                    delegate.advance(position);
+                }
+
+                @Override
+                public ITickProgress part(int part) {
+                    return delegate.part(part);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.DebitCard;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.BankException;
+import org.example.exception.CentralBankException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CentralBankIdSpaceTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    @Test
+    public void testCentralBanksIssueIdsIndependently() throws Exception {
+        CentralBank first = new CentralBank();
+        CentralBank second = new CentralBank();
+        Bank sber = bank("SberBank");
+        Bank tinkoff = bank("Tinkoff");
+        first.addBank(sber);
+        second.addBank(tinkoff);
+        User sasha = user(124);
+        User ivan = user(123);
+        sber.addUser(sasha);
+        tinkoff.addUser(ivan);
+        sber.addDebitCard(DATE, 100, sasha.getUserId());
+        tinkoff.addDebitCard(DATE, 200, ivan.getUserId());
+        DebitCard sberCard = sber.getListDebitCards().get(0);
+        DebitCard tinkoffCard = tinkoff.getListDebitCards().get(0);
+
+        assertEquals(0, sberCard.getIndex());
+        assertEquals(0, tinkoffCard.getIndex());
+        assertEquals(0, sasha.getUserIndex());
+        assertEquals(0, ivan.getUserIndex());
+        assertEquals(1, first.getIdSpace().getCards().size());
+        assertSame(sberCard, first.getCard(sberCard.getCardId()));
+        assertThrows(CentralBankException.class, () -> first.getCard(tinkoffCard.getCardId()));
+        assertNull(sber.findUser(ivan.getUserId()));
+        assertEquals(sberCard.getCardId(), sasha.getListCardId().get(0));
+    }
+
+    @Test
+    public void testUserStaysInOneCentralBank() throws Exception {
+        CentralBank first = new CentralBank();
+        CentralBank second = new CentralBank();
+        Bank sber = bank("SberBank");
+        Bank tinkoff = bank("Tinkoff");
+        first.addBank(sber);
+        second.addBank(tinkoff);
+        User sasha = user(124);
+        sber.addUser(sasha);
+        assertThrows(BankException.class, () -> tinkoff.addUser(sasha));
+        assertEquals(0, tinkoff.getListUsers().size());
+    }
+
+    @Test
+    public void testCentralBankAdoptsIdsOfFirstFilledBank() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        Bank tinkoff = bank("Tinkoff");
+        centralBank.addBank(tinkoff);
+        Bank sber = bank("SberBank");
+        User sasha = user(124);
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 100, sasha.getUserId());
+        centralBank.addBank(sber);
+
+        assertSame(sber.getIdSpace(), centralBank.getIdSpace());
+        assertSame(sber.getIdSpace(), tinkoff.getIdSpace());
+        tinkoff.addUser(sasha);
+        tinkoff.addDebitCard(DATE, 50, sasha.getUserId());
+        assertEquals(1, tinkoff.getListDebitCards().get(0).getIndex());
+        assertEquals(2, sasha.getListCardId().size());
+    }
+
+    @Test
+    public void testFilledBankCannotJoinAnotherFilledCentralBank() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        Bank sber = bank("SberBank");
+        centralBank.addBank(sber);
+        sber.addUser(user(124));
+        Bank tinkoff = bank("Tinkoff");
+        tinkoff.addUser(user(123));
+        assertThrows(CentralBankException.class, () -> centralBank.addBank(tinkoff));
+        assertEquals(1, centralBank.getListBanks().size());
+    }
+
+    @Test
+    public void testForkSharesIdsWithSource() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        Bank sber = bank("SberBank");
+        centralBank.addBank(sber);
+        User sasha = user(124);
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 100, sasha.getUserId());
+        CentralBank scenario = centralBank.fork();
+
+        assertSame(centralBank.getIdSpace(), scenario.getIdSpace());
+        assertSame(sber.getIdSpace(), scenario.getBank("SberBank").getIdSpace());
+        scenario.getBank("SberBank").addDebitCard(DATE, 10, sasha.getUserId());
+        assertEquals(1, scenario.getBank("SberBank").getListDebitCards().get(1).getIndex());
+    }
+
+    private static Bank bank(String title) throws Exception {
+        return new Bank(title, 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+    }
+
+    private static User user(int passportId) throws Exception {
+        return new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(passportId).build();
+    }
+}
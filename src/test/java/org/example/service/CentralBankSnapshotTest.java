@@ -0,0 +1,167 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CentralBankSnapshotTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private User sasha;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        sber.addDebitCard(DATE, 0, sasha.getUserId());
+    }
+
+    @Test
+    public void testHistoryChangedBeforeFirstReadKeepsPinnedState() throws Exception {
+        centralBank.transferMoney(100, debit(0), debit(1));
+        CentralBankSnapshot snapshot = centralBank.snapshot();
+        centralBank.transferMoney(200, debit(0), debit(1));
+        centralBank.transactionCancellation(debit(0), 0);
+
+        assertEquals(1, sber.getListDebitCards().get(0).getTransactionHistory().size());
+        assertEquals(200, sber.getListDebitCards().get(0).getTransactionHistory().get(0).getMoney(), 0.001);
+        assertEquals(1, snapshot.getCard(debit(0)).getTransactionHistory().size());
+        assertEquals(100, snapshot.getCard(debit(0)).getTransactionHistory().get(0).getMoney(), 0.001);
+        assertEquals(900, snapshot.getCard(debit(0)).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testCardsOpenedAfterSnapshotAreNotVisible() throws Exception {
+        CentralBankSnapshot snapshot = centralBank.snapshot();
+        sber.addDebitCard(DATE, 500, sasha.getUserId());
+        User ivan = new UserBuilder("Ivan", "Petrov", 0).withAddress("Green Street").withPassportId(123).build();
+        sber.addUser(ivan);
+        UUID opened = sber.getListDebitCards().get(2).getCardId();
+
+        Bank view = snapshot.getBank("SberBank");
+        assertEquals(2, view.getListDebitCards().size());
+        assertEquals(2, view.getListCards().size());
+        assertNull(view.findCard(opened));
+        assertNull(view.findUser(ivan.getUserId()));
+        assertSame(sasha, view.findUser(sasha.getUserId()));
+        assertThrows(Exception.class, () -> snapshot.getCard(opened));
+        assertEquals(1000, snapshot.getTotalBalance(), 0.001);
+    }
+
+    @Test
+    public void testCardIsCopiedOnceForListsAndLookup() throws Exception {
+        CentralBankSnapshot snapshot = centralBank.snapshot();
+        Bank view = snapshot.getBank("SberBank");
+        assertSame(view.getListDebitCards().get(1), snapshot.getCard(debit(1)));
+        assertSame(view.getListCards().get(0), view.findCard(debit(0)));
+    }
+
+    @Test
+    public void testBalanceCellsAreFoldedIntoSnapshot() throws Exception {
+        sber.useBalanceCells(debit(1), 4);
+        centralBank.transferMoney(300, debit(0), debit(1));
+        CentralBankSnapshot snapshot = centralBank.snapshot();
+        centralBank.transferMoney(200, debit(0), debit(1));
+
+        assertEquals(500, sber.getListDebitCards().get(1).getBalance(), 0.001);
+        assertEquals(300, snapshot.getCard(debit(1)).getBalance(), 0.001);
+        assertEquals(1000, snapshot.getTotalBalance(), 0.001);
+    }
+
+    @Test
+    public void testSnapshotOfForkKeepsForkState() throws Exception {
+        CentralBank scenario = centralBank.fork();
+        scenario.transferMoney(100, debit(0), debit(1));
+        CentralBankSnapshot snapshot = scenario.snapshot();
+        scenario.transferMoney(200, debit(0), debit(1));
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.getListCreditCards().get(0).withdrawMoney(50);
+
+        assertEquals(700, scenario.getCard(debit(0)).getBalance(), 0.001);
+        assertEquals(900, snapshot.getCard(debit(0)).getBalance(), 0.001);
+        assertEquals(1, snapshot.getCard(debit(0)).getTransactionHistory().size());
+        assertEquals(0, snapshot.getBank("SberBank").getListCreditCards().size());
+        assertEquals(1000, sber.getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(0, sber.getListDebitCards().get(0).getTransactionHistory().size());
+    }
+
+    @Test
+    public void testRankingsAndMaturitiesAreBuiltOnFirstUse() throws Exception {
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.addDepositCard(DATE, DATE.plusDays(3), 1000, sasha.getUserId());
+        sber.getListCreditCards().get(0).withdrawMoney(100);
+        sber.getListCreditCards().get(1).withdrawMoney(300);
+        CentralBank scenario = centralBank.fork();
+        Bank bank = scenario.getBank("SberBank");
+        sber.getListCreditCards().get(0).withdrawMoney(500);
+
+        assertEquals(bank.getListCreditCards().get(1), bank.getMostOverdrawnCreditCards(1).get(0));
+        bank.getListCreditCards().get(0).withdrawMoney(1000);
+        assertEquals(bank.getListCreditCards().get(0), bank.getMostOverdrawnCreditCards(1).get(0));
+        assertEquals(2, bank.getMostOverdrawnCreditCards(5).size());
+
+        assertEquals(1, bank.getPendingMaturitiesCount());
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(bank);
+        for (int day = 0; day < 3; day++) {
+            time.addDay();
+        }
+        assertEquals(0, bank.getPendingMaturitiesCount());
+        assertEquals(1, sber.getPendingMaturitiesCount());
+        assertEquals(bank.getListDepositCards().get(0), bank.getLargestDeposits(1).get(0));
+    }
+
+    @Test
+    public void testCustomerDirectoryOfForkIsFilledOnFirstUse() throws Exception {
+        CentralBank scenario = centralBank.fork();
+        scenario.getBank("SberBank").addDebitCard(DATE, 10, sasha.getUserId());
+        assertEquals(3, scenario.getCustomerDirectory().getCards(124).size());
+        assertEquals(1010, scenario.getCustomerDirectory().getPortfolioBalance(124), 0.001);
+        assertEquals(2, centralBank.getCustomerDirectory().getCards(124).size());
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterTransfers() throws Exception {
+        CentralBankSnapshot snapshot = centralBank.snapshot();
+        centralBank.transferMoney(300, debit(0), debit(1));
+        assertEquals(700, sber.getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(1000, snapshot.getBank("SberBank").getListDebitCards().get(0).getBalance(), 0.001);
+        assertEquals(0, snapshot.getCard(debit(1)).getBalance(), 0.001);
+        assertEquals(1000, snapshot.getTotalBalance(), 0.001);
+    }
+
+    @Test
+    public void testForkTicksIndependently() throws Exception {
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        CentralBank scenario = centralBank.fork();
+        TimeManager scenarioTime = new TimeManager(DATE);
+        scenarioTime.addObserver(scenario.getBank("SberBank"));
+        scenarioTime.addMonth();
+        scenario.getCard(debit(2)).withdrawMoney(100);
+        assertEquals(50000, sber.getListDebitCards().get(2).getBalance(), 0.001);
+        assertEquals(0, sber.getListDebitCards().get(2).getTransactionHistory().size());
+        assertEquals(51000, sber.getTotalBalance(), 0.001);
+        assertEquals(79900, scenario.getCard(debit(2)).getBalance(), 0.001);
+    }
+
+    private UUID debit(int position) {
+        return sber.getListDebitCards().get(position).getCardId();
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.DebitCard;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClearingHouseTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private Bank tinkoff;
+    private DebitCard sberCard;
+    private DebitCard tinkoffCard;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        tinkoff = new Bank("Tinkoff", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank = new CentralBank();
+        centralBank.addBank(sber);
+        centralBank.addBank(tinkoff);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        tinkoff.addUser(sasha);
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        tinkoff.addDebitCard(DATE, 1000, sasha.getUserId());
+        sberCard = sber.getListDebitCards().get(0);
+        tinkoffCard = tinkoff.getListDebitCards().get(0);
+    }
+
+    @Test
+    public void testClearingNetsTransfersBetweenBanksUntilTick() throws Exception {
+        UUID sberId = sberCard.getCardId();
+        UUID tinkoffId = tinkoffCard.getCardId();
+        ClearingHouse clearing = centralBank.enableClearing();
+        TimeManager timeManager = new TimeManager(DATE);
+        timeManager.addObserver(clearing);
+
+        centralBank.transferMoney(300, sberId, tinkoffId);
+        centralBank.transferMoney(100, tinkoffId, sberId);
+        centralBank.transferMoney(50, sberId, tinkoffId);
+        assertEquals(650, sberCard.getBalance(), 0.001);
+        assertEquals(900, tinkoffCard.getBalance(), 0.001);
+        assertEquals(250, clearing.getNetPosition(tinkoff), 0.001);
+        assertEquals(-250, clearing.getNetPosition(sber), 0.001);
+        assertTrue(new ReconciliationEngine().reconcile(centralBank).isBalanced());
+
+        centralBank.transactionCancellation(sberId, 1);
+        assertEquals(200, clearing.getNetPosition(tinkoff), 0.001);
+        timeManager.addDay();
+        assertEquals(800, sberCard.getBalance(), 0.001);
+        assertEquals(1200, tinkoffCard.getBalance(), 0.001);
+        assertEquals(-200, clearing.getSettlementBalance(sber), 0.001);
+        assertEquals(1, clearing.getLastNetObligations());
+        assertEquals(2, clearing.getSettledTransfers());
+        assertEquals(0, clearing.getPendingTransfers());
+    }
+
+    @Test
+    public void testTransfersInsideOneBankBypassClearing() throws Exception {
+        sber.addDebitCard(DATE, 0, sber.getListUsers().get(0).getUserId());
+        ClearingHouse clearing = centralBank.enableClearing();
+        centralBank.transferMoney(300, sberCard.getCardId(), sber.getListDebitCards().get(1).getCardId());
+        assertEquals(300, sber.getListDebitCards().get(1).getBalance(), 0.001);
+        assertEquals(0, clearing.getPendingTransfers());
+        assertEquals(0, clearing.getNetPosition(sber), 0.001);
+        assertEquals(0, clearing.settle());
+    }
+
+    @Test
+    public void testOppositeTransfersNetToZero() throws Exception {
+        ClearingHouse clearing = centralBank.enableClearing();
+        centralBank.transferMoney(200, sberCard.getCardId(), tinkoffCard.getCardId());
+        centralBank.transferMoney(200, tinkoffCard.getCardId(), sberCard.getCardId());
+        assertEquals(0, clearing.getNetPosition(sber), 0.001);
+        assertEquals(2, clearing.settle());
+        assertEquals(0, clearing.getLastNetObligations());
+        assertEquals(1000, sberCard.getBalance(), 0.001);
+        assertEquals(1000, tinkoffCard.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testFailedSettlementCreditsNothingAndRetryCreditsOnce() throws Exception {
+        CentralBank withoutTinkoff = new CentralBank();
+        withoutTinkoff.addBank(sber);
+        ClearingHouse clearing = new ClearingHouse(withoutTinkoff, new ReentrantLock());
+        clearing.transfer(50, tinkoffCard, 1, 0, sberCard);
+        clearing.transfer(100, sberCard, 0, 1, tinkoffCard);
+
+        assertThrows(Exception.class, clearing::settle);
+        assertEquals(900, sberCard.getBalance(), 0.001);
+        assertEquals(50, clearing.getPendingCredit(sberCard.getIndex()), 0.001);
+        assertEquals(2, clearing.getPendingTransfers());
+
+        withoutTinkoff.addBank(tinkoff);
+        assertEquals(2, clearing.settle());
+        assertEquals(950, sberCard.getBalance(), 0.001);
+        assertEquals(1050, tinkoffCard.getBalance(), 0.001);
+        assertEquals(0, clearing.settle());
+        assertEquals(950, sberCard.getBalance(), 0.001);
+        assertEquals(1050, tinkoffCard.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testCancellingSettledTransferKeepsOtherPendingTransfer() throws Exception {
+        sber.addDebitCard(DATE, 1000, sber.getListUsers().get(0).getUserId());
+        DebitCard secondSberCard = sber.getListDebitCards().get(1);
+        ClearingHouse clearing = centralBank.enableClearing();
+        centralBank.transferMoney(300, sberCard.getCardId(), tinkoffCard.getCardId());
+        clearing.settle();
+        assertEquals(1300, tinkoffCard.getBalance(), 0.001);
+
+        centralBank.transferMoney(400, secondSberCard.getCardId(), tinkoffCard.getCardId());
+        centralBank.transactionCancellation(sberCard.getCardId(), 0);
+        assertEquals(1000, sberCard.getBalance(), 0.001);
+        assertEquals(1000, tinkoffCard.getBalance(), 0.001);
+        assertEquals(400, clearing.getPendingCredit(tinkoffCard.getIndex()), 0.001);
+        assertEquals(1, clearing.getPendingTransfers());
+        assertEquals(400, clearing.getNetPosition(tinkoff), 0.001);
+
+        assertEquals(1, clearing.settle());
+        assertEquals(1400, tinkoffCard.getBalance(), 0.001);
+        assertEquals(600, secondSberCard.getBalance(), 0.001);
+        assertEquals(3000, sber.getTotalBalance() + tinkoff.getTotalBalance(), 0.001);
+    }
+
+    @Test
+    public void testCancellingPendingTransferRemovesOnlyIt() throws Exception {
+        sber.addDebitCard(DATE, 1000, sber.getListUsers().get(0).getUserId());
+        DebitCard secondSberCard = sber.getListDebitCards().get(1);
+        ClearingHouse clearing = centralBank.enableClearing();
+        centralBank.transferMoney(300, sberCard.getCardId(), tinkoffCard.getCardId());
+        centralBank.transferMoney(300, secondSberCard.getCardId(), tinkoffCard.getCardId());
+        centralBank.transactionCancellation(secondSberCard.getCardId(), 0);
+        assertEquals(1, clearing.getPendingTransfers());
+        assertEquals(300, clearing.getPendingCredit(tinkoffCard.getIndex()), 0.001);
+
+        assertEquals(1, clearing.settle());
+        assertEquals(1300, tinkoffCard.getBalance(), 0.001);
+        assertEquals(700, sberCard.getBalance(), 0.001);
+        assertEquals(1000, secondSberCard.getBalance(), 0.001);
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class CustomerDirectoryTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private Bank tinkoff;
+    private User sasha;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        tinkoff = new Bank("Tinkoff", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        centralBank.addBank(sber);
+        centralBank.addBank(tinkoff);
+    }
+
+    @Test
+    public void testCustomerDirectoryJoinsBanksByPassport() throws Exception {
+        UserBuilder builder = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street");
+        User sashaInTinkoff = builder.build();
+        tinkoff.addUser(sashaInTinkoff);
+        tinkoff.addCreditCard(DATE, 500, sashaInTinkoff.getUserId());
+        assertEquals(1, centralBank.getCustomerDirectory().getCards(124).size());
+        builder.withPassportId(124);
+        assertEquals(2, centralBank.getCustomerDirectory().getUsers(124).size());
+        assertEquals(1500, centralBank.getCustomerDirectory().getPortfolioBalance(124), 0.001);
+    }
+
+    @Test
+    public void testSameUserInTwoBanksIsOneCustomer() throws Exception {
+        tinkoff.addUser(sasha);
+        tinkoff.addDepositCard(DATE, DATE.plusDays(30), 2000, sasha.getUserId());
+        CustomerDirectory directory = centralBank.getCustomerDirectory();
+        assertEquals(1, directory.getCustomerCount());
+        assertEquals(1, directory.getUsers(124).size());
+        assertEquals(2, directory.getCards(124).size());
+        assertEquals(3000, directory.getPortfolioBalance(124), 0.001);
+    }
+
+    @Test
+    public void testPassportChangeMovesUserToAnotherCustomer() throws Exception {
+        UserBuilder builder = new UserBuilder("Ivan", "Petrov", 0).withAddress("Green Street").withPassportId(124);
+        User ivan = builder.build();
+        tinkoff.addUser(ivan);
+        tinkoff.addDebitCard(DATE, 300, ivan.getUserId());
+        assertEquals(2, centralBank.getCustomerDirectory().getUsers(124).size());
+
+        builder.withPassportId(125);
+        CustomerDirectory directory = centralBank.getCustomerDirectory();
+        assertEquals(1, directory.getUsers(124).size());
+        assertEquals(1000, directory.getPortfolioBalance(124), 0.001);
+        assertEquals(300, directory.getPortfolioBalance(125), 0.001);
+        assertEquals(2, directory.getCustomerCount());
+    }
+
+    @Test
+    public void testBalanceIsReadAtQueryTime() throws Exception {
+        sber.getListDebitCards().get(0).withdrawMoney(400);
+        assertEquals(600, centralBank.getCustomerDirectory().getPortfolioBalance(124), 0.001);
+    }
+
+    @Test
+    public void testUnknownAndUnidentifiedCustomersAreNotListed() throws Exception {
+        User petr = new UserBuilder("Petr", "Sidorov", 0).withAddress("Green Street").build();
+        tinkoff.addUser(petr);
+        tinkoff.addDebitCard(DATE, 700, petr.getUserId());
+        CustomerDirectory directory = centralBank.getCustomerDirectory();
+        assertTrue(directory.getUsers(999).isEmpty());
+        assertTrue(directory.getCards(999).isEmpty());
+        assertEquals(0, directory.getPortfolioBalance(999), 0.001);
+        assertTrue(directory.getUsers(0).isEmpty());
+        assertEquals(1, directory.getCustomerCount());
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.CreditCard;
+import org.example.entities.DebitCard;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.ReconciliationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReconciliationEngineTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+    private DebitCard sberCard;
+    private DebitCard tinkoffCard;
+    private User sasha;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        Bank tinkoff = new Bank("Tinkoff", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        centralBank.addBank(tinkoff);
+        sasha = new UserBuilder("Sasha", "Ivanov", 0).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        tinkoff.addUser(sasha);
+        for (int i = 0; i < 3; i++) {
+            tinkoff.addDebitCard(DATE, 0, sasha.getUserId());
+        }
+        sber.addDebitCard(DATE, 1000, sasha.getUserId());
+        sberCard = sber.getListDebitCards().get(0);
+        tinkoffCard = tinkoff.getListDebitCards().get(2);
+        centralBank.transferMoney(300, sberCard.getCardId(), tinkoffCard.getCardId());
+        centralBank.transferMoney(100, tinkoffCard.getCardId(), sberCard.getCardId());
+    }
+
+    @Test
+    public void testIncomingTransfersAreMatchedToReceivers() throws Exception {
+        ReconciliationReport report = new ReconciliationEngine().reconcile(centralBank);
+        assertTrue(report.isBalanced());
+        assertEquals(4, report.getCardsChecked());
+        assertEquals(2, report.getTransactionsScanned());
+    }
+
+    @Test
+    public void testMismatchIsReportedForChangedCardOnly() throws Exception {
+        tinkoffCard.topUpCardWithOutHistory(50);
+        ReconciliationReport report = new ReconciliationEngine().reconcile(centralBank);
+        assertEquals(1, report.getMismatches().size());
+        assertEquals(tinkoffCard.getCardId(), report.getMismatches().get(0).getCardId());
+        assertEquals(200, report.getMismatches().get(0).getExpected(), 0.001);
+        assertEquals(250, report.getMismatches().get(0).getActual(), 0.001);
+    }
+
+    @Test
+    public void testTicksAndCardOperationsStayBalanced() throws Exception {
+        sber.addCreditCard(DATE, 1000, sasha.getUserId());
+        CreditCard credit = sber.getListCreditCards().get(0);
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(sber);
+        time.addMonth();
+        centralBank.transferMoney(500, sberCard.getCardId(), credit.getCardId());
+        credit.withdrawMoney(2000);
+        ReconciliationEngine engine = new ReconciliationEngine();
+        assertTrue(engine.reconcile(centralBank).isBalanced());
+
+        credit.topUpCardWithOutHistory(100);
+        ReconciliationReport report = engine.reconcile(centralBank);
+        assertEquals(1, report.getMismatches().size());
+        assertEquals(credit.getCardId(), report.getMismatches().get(0).getCardId());
+    }
+
+    @Test
+    public void testTransferToCardOutsideReconciliationFails() throws Exception {
+        CentralBank onlySber = new CentralBank();
+        onlySber.addBank(sber);
+        ReconciliationException error = assertThrows(ReconciliationException.class,
+                () -> new ReconciliationEngine().reconcile(onlySber));
+        assertTrue(error.getMessage().contains(tinkoffCard.getCardId().toString()));
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.CentralBankException;
+import org.example.exception.StandingOrderException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StandingOrderEngineTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private Bank sber;
+    private User sasha;
+    private TimeManager time;
+    private StandingOrderEngine engine;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        CentralBank centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addCreditCard(DATE, 1000, sasha.getUserId());
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        time = new TimeManager(DATE);
+        engine = new StandingOrderEngine(centralBank, time.getTimeStamp());
+        time.addObserver(engine);
+    }
+
+    @Test
+    public void testStandingOrderFiresOnlyOnDueDays() throws Exception {
+        engine.addStandingOrder(credit(0), credit(1), 100, LocalDate.of(2022, 9, 3), 7);
+        time.addMonth();
+        // 3, 10, 17, 24 сентября и 1 октября
+        assertEquals(500, sber.getListCreditCards().get(1).getBalance(), 0.001);
+        assertEquals(5, engine.getExecutedCount());
+    }
+
+    @Test
+    public void testOneTimeOrderIsRemovedAfterExecution() throws Exception {
+        long orderId = engine.addStandingOrder(credit(0), credit(1), 250, LocalDate.of(2022, 9, 5), 0);
+        assertEquals(1, engine.getActiveOrdersCount());
+        time.addMonth();
+        assertEquals(250, sber.getListCreditCards().get(1).getBalance(), 0.001);
+        assertEquals(1, engine.getExecutedCount());
+        assertEquals(0, engine.getActiveOrdersCount());
+        assertNull(engine.getStandingOrder(orderId));
+    }
+
+    @Test
+    public void testFailedExecutionIsCountedAndRetriedNextPeriod() throws Exception {
+        sber.addDebitCard(DATE, 150, sasha.getUserId());
+        UUID debit = sber.getListDebitCards().get(0).getCardId();
+        long orderId = engine.addStandingOrder(debit, credit(1), 100, LocalDate.of(2022, 9, 2), 1);
+        for (int day = 0; day < 3; day++) {
+            time.addDay();
+        }
+        assertEquals(1, engine.getExecutedCount());
+        assertEquals(2, engine.getFailedCount());
+        assertEquals(2, engine.getStandingOrder(orderId).getFailures());
+        assertEquals(50, sber.getListDebitCards().get(0).getBalance(), 0.001);
+
+        sber.getListDebitCards().get(0).topUpCard(50);
+        time.addDay();
+        assertEquals(2, engine.getExecutedCount());
+        assertEquals(0, sber.getListDebitCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testCancelledOrderStopsFiring() throws Exception {
+        long orderId = engine.addStandingOrder(credit(0), credit(1), 100, LocalDate.of(2022, 9, 2), 1);
+        time.addDay();
+        time.addDay();
+        engine.cancelStandingOrder(orderId);
+        time.addMonth();
+        assertEquals(200, sber.getListCreditCards().get(1).getBalance(), 0.001);
+        assertEquals(0, engine.getActiveOrdersCount());
+        assertThrows(StandingOrderException.class, () -> engine.cancelStandingOrder(orderId));
+    }
+
+    @Test
+    public void testFirstDateInThePastStartsTomorrow() throws Exception {
+        engine.addStandingOrder(credit(0), credit(1), 100, LocalDate.of(2022, 8, 1), 30);
+        time.addDay();
+        assertEquals(100, sber.getListCreditCards().get(1).getBalance(), 0.001);
+        time.addMonth();
+        assertEquals(200, sber.getListCreditCards().get(1).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testIncorrectOrdersAreRejected() throws Exception {
+        LocalDate date = LocalDate.of(2022, 9, 2);
+        assertThrows(StandingOrderException.class, () -> engine.addStandingOrder(credit(0), credit(1), 0, date, 1));
+        assertThrows(StandingOrderException.class,
+                () -> engine.addStandingOrder(credit(0), credit(1), 100, date, -1));
+        assertThrows(CentralBankException.class,
+                () -> engine.addStandingOrder(credit(0), UUID.randomUUID(), 100, date, 1));
+        assertEquals(0, engine.getActiveOrdersCount());
+    }
+
+    private UUID credit(int position) {
+        return sber.getListCreditCards().get(position).getCardId();
+    }
+}
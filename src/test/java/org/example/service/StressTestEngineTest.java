@@ -0,0 +1,88 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.StressTestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StressTestEngineTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private CentralBank centralBank;
+    private Bank sber;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        centralBank = new CentralBank();
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        centralBank.addBank(sber);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        sber.addUser(sasha);
+        sber.addDebitCard(DATE, 50000, sasha.getUserId());
+        sber.addCreditCard(DATE, 0, sasha.getUserId());
+        sber.addDepositCard(DATE, LocalDateTime.of(2022, 11, 15, 0, 0, 0), 20000, sasha.getUserId());
+        sber.getListCreditCards().get(0).withdrawMoney(500);
+    }
+
+    @Test
+    public void testStressTestBaselineMatchesBankTicks() throws Exception {
+        StressTestResult result = new StressTestEngine(0.1, 0, 0.5).run(centralBank, DATE, 90, 500, 42);
+
+        TimeManager time = new TimeManager(DATE);
+        time.addObserver(sber);
+        for (int day = 0; day < 90; day++) {
+            time.addDay();
+        }
+        assertEquals(sber.getTotalBalance(), result.getBaselineBalance(), 0.01);
+        assertEquals(500, result.getScenarioCount());
+        assertTrue(result.getMeanLoss() > 0);
+        assertTrue(result.getValueAtRisk(0.99) >= result.getMeanLoss());
+        assertTrue(result.getExpectedShortfall(0.99) >= result.getValueAtRisk(0.99));
+        assertTrue(result.getMaxLoss() >= result.getExpectedShortfall(0.99));
+    }
+
+    @Test
+    public void testSameSeedGivesSameLossesOnAnyPool() throws Exception {
+        StressTestResult first = new StressTestEngine(new ForkJoinPool(1), 0.2, 0.1, 0.5)
+                .run(centralBank, DATE, 30, 200, 7);
+        StressTestResult second = new StressTestEngine(new ForkJoinPool(4), 0.2, 0.1, 0.5)
+                .run(centralBank, DATE, 30, 200, 7);
+        assertEquals(first.getMeanLoss(), second.getMeanLoss(), 1e-9);
+        assertEquals(first.getMaxLoss(), second.getMaxLoss(), 1e-9);
+    }
+
+    @Test
+    public void testNoOperationsMeansNoLoss() throws Exception {
+        StressTestResult result = new StressTestEngine(0, 0, 0.5).run(centralBank, DATE, 30, 50, 1);
+        assertEquals(0, result.getMaxLoss(), 0.001);
+        assertEquals(sber.getTotalBalance(), result.getInitialBalance(), 0.001);
+    }
+
+    @Test
+    public void testSnapshotRunDoesNotSeeLaterOperations() throws Exception {
+        CentralBankSnapshot snapshot = centralBank.snapshot();
+        double initial = sber.getTotalBalance();
+        sber.getListDebitCards().get(0).withdrawMoney(10000);
+        StressTestResult result = new StressTestEngine(0.1, 0, 0.5).run(snapshot, DATE, 30, 10, 1);
+        assertEquals(initial, result.getInitialBalance(), 0.001);
+    }
+
+    @Test
+    public void testIncorrectParametersAreRejected() throws Exception {
+        assertThrows(StressTestException.class, () -> new StressTestEngine(1.5, 0, 0.5));
+        assertThrows(StressTestException.class, () -> new StressTestEngine(0.1, -0.1, 0.5));
+        assertThrows(StressTestException.class, () -> new StressTestEngine(0.1, 0, 2));
+        StressTestEngine engine = new StressTestEngine(0.1, 0, 0.5);
+        assertThrows(StressTestException.class, () -> engine.run(centralBank, DATE, -1, 10, 1));
+        assertThrows(StressTestException.class, () -> engine.run(centralBank, DATE, 10, 0, 1));
+    }
+}
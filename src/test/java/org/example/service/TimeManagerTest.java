@@ -0,0 +1,158 @@
+package org.example.service;
+
+import org.example.entities.Bank;
+import org.example.entities.CachedSystemClock;
+import org.example.entities.CardStateTable;
+import org.example.entities.IObserver;
+import org.example.entities.SimulatedClock;
+import org.example.entities.User;
+import org.example.entities.UserBuilder;
+import org.example.exception.TimeManagerException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TimeManagerTest {
+    private static final LocalDateTime DATE = LocalDateTime.of(2022, 9, 1, 0, 0, 0);
+
+    private TimeManager timeManager;
+    private Bank sber;
+    private Bank alfa;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        timeManager = new TimeManager(DATE);
+        sber = new Bank("SberBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        alfa = new Bank("AlfaBank", 1, 2, 5, 5000, 10000, 2, -1000000, 1000, 999999999);
+        User sasha = new UserBuilder("Sasha", "Ivanov", 100000).withAddress("Green Street").withPassportId(124).build();
+        User ivan = new UserBuilder("Ivan", "Petrov", 10000).withAddress("Green Street").withPassportId(123).build();
+        sber.addUser(sasha);
+        alfa.addUser(ivan);
+        sber.addCreditCard(DATE, 100, sasha.getUserId());
+        sber.addCreditCard(DATE, 100, sasha.getUserId());
+        alfa.addCreditCard(DATE, 100, ivan.getUserId());
+        sber.getListCreditCards().get(0).withdrawMoney(2000);
+        sber.getListCreditCards().get(1).withdrawMoney(2000);
+        alfa.getListCreditCards().get(0).withdrawMoney(2000);
+    }
+
+    @Test
+    public void testCardOperationsUseTimeManagerClock() throws Exception {
+        sber.setClock(timeManager.getClock());
+        timeManager.addObserver(sber);
+        timeManager.addDay();
+        sber.getListCreditCards().get(0).topUpCard(100);
+        assertEquals(LocalDateTime.of(2022, 9, 2, 0, 0, 0),
+                sber.getListCreditCards().get(0).getTransaction(1).getDateTransaction());
+    }
+
+    @Test
+    public void testBankAddedAsObserverUsesTimeManagerClock() throws Exception {
+        TimeManager external = new TimeManager(DATE, new SimulatedClock(DATE.plusYears(1)));
+        external.addObserver(sber);
+        sber.getListCreditCards().get(0).topUpCard(100);
+        assertEquals(DATE.plusYears(1), sber.getListCreditCards().get(0).getTransaction(1).getDateTransaction());
+    }
+
+    @Test
+    public void testCachedSystemClockUsesCardDateEncoding() throws Exception {
+        TimeZone zone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Vladivostok"));
+        try (CachedSystemClock clock = new CachedSystemClock(10)) {
+            long expected = CardStateTable.toMillis(LocalDateTime.now());
+            assertTrue(Math.abs(clock.millis() - expected) < 60000);
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+    }
+
+    @Test
+    public void testExternalClockIsNotMovedByTicks() throws Exception {
+        SimulatedClock clock = new SimulatedClock(DATE.plusYears(1));
+        TimeManager external = new TimeManager(DATE, clock);
+        sber.setClock(external.getClock());
+        external.addObserver(sber);
+        external.addDay();
+        sber.getListCreditCards().get(0).topUpCard(100);
+        assertEquals(DATE.plusDays(1), external.getTimeStamp());
+        assertEquals(DATE.plusYears(1), sber.getListCreditCards().get(0).getTransaction(1).getDateTransaction());
+    }
+
+    @Test
+    public void testInterruptedTickResumesFromCheckpoint() throws Exception {
+        IObserver crashing = crashing(1);
+        Path file = Files.createTempDirectory("tick").resolve("checkpoint");
+        timeManager.setCheckpoint(new TickCheckpoint(file));
+        timeManager.addObserver(sber);
+        timeManager.addObserver(crashing);
+        timeManager.addObserver(alfa);
+        assertThrows(IllegalStateException.class, () -> timeManager.addDay());
+        assertThrows(TimeManagerException.class, () -> timeManager.addDay());
+        assertEquals(-2900, sber.getListCreditCards().get(0).getBalance(), 0.001);
+        assertEquals(-1900, alfa.getListCreditCards().get(0).getBalance(), 0.001);
+
+        TickCheckpoint restored = new TickCheckpoint(file);
+        assertTrue(restored.isInterrupted());
+        assertEquals(1, restored.getObserver());
+        TimeManager restarted = new TimeManager(DATE);
+        restarted.addObserver(sber);
+        restarted.addObserver(crashing);
+        restarted.addObserver(alfa);
+        restarted.setCheckpoint(restored);
+        assertTrue(restarted.resume());
+        assertFalse(restarted.resume());
+        assertEquals(DATE.plusDays(1), restarted.getTimeStamp());
+        assertEquals(-2900, sber.getListCreditCards().get(0).getBalance(), 0.001);
+        assertEquals(-2900, alfa.getListCreditCards().get(0).getBalance(), 0.001);
+        assertTrue(new TickCheckpoint(file).isCompleted());
+    }
+
+    @Test
+    public void testBankTickResumesFromSavedPosition() throws Exception {
+        TickCheckpoint partial = new TickCheckpoint();
+        partial.advance(1);
+        sber.update(DATE.plusDays(1), partial);
+        assertEquals(-1900, sber.getListCreditCards().get(0).getBalance(), 0.001);
+        assertEquals(-2900, sber.getListCreditCards().get(1).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testResumeWithoutInterruptionDoesNothing() throws Exception {
+        timeManager.addObserver(sber);
+        assertFalse(timeManager.resume());
+        timeManager.addDay();
+        assertFalse(timeManager.resume());
+        assertEquals(DATE.plusDays(1), timeManager.getTimeStamp());
+        assertEquals(-2900, sber.getListCreditCards().get(0).getBalance(), 0.001);
+    }
+
+    @Test
+    public void testCorruptedCheckpointAndNullArgumentsAreRejected() throws Exception {
+        Path file = Files.createTempDirectory("tick").resolve("checkpoint");
+        Files.write(file, "2022-09-02T00:00 x".getBytes(StandardCharsets.UTF_8));
+        assertThrows(TimeManagerException.class, () -> new TickCheckpoint(file));
+        Files.write(file, "2022-09-02T00:00 x 0 false".getBytes(StandardCharsets.UTF_8));
+        assertThrows(TimeManagerException.class, () -> new TickCheckpoint(file));
+        assertThrows(TimeManagerException.class, () -> timeManager.setCheckpoint(null));
+        assertThrows(TimeManagerException.class, () -> timeManager.addObserver(null));
+    }
+
+    private static IObserver crashing(int times) {
+        int[] failures = {times};
+        return timeStamp -> {
+            if (failures[0]-- > 0) {
+                throw new IllegalStateException("crash");
+            }
+        };
+    }
+}
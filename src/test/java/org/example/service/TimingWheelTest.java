@@ -0,0 +1,103 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TimingWheelTest {
+    private static final long START = LocalDate.of(2022, 9, 1).toEpochDay();
+
+    @Test
+    public void testOrdersAreDueExactlyOnTheirDayOnEveryLevel() {
+        long[] offsets = {1, 2, 63, 64, 65, 127, 4095, 4096, 4097, 5000, 262143, 262144, 300000};
+        TimingWheel wheel = new TimingWheel(START);
+        for (int i = 0; i < offsets.length; i++) {
+            wheel.schedule(order(i, START + offsets[i]));
+        }
+        assertEquals(offsets.length, wheel.size());
+
+        List<StandingOrder> due = new ArrayList<>();
+        int next = 0;
+        for (long day = START + 1; day <= START + offsets[offsets.length - 1]; day++) {
+            wheel.advance(day, due);
+            if (!due.isEmpty()) {
+                assertEquals(1, due.size());
+                assertEquals(START + offsets[next], day);
+                assertEquals(next, due.get(0).getOrderId());
+                next++;
+                due.clear();
+            }
+        }
+        assertEquals(offsets.length, next);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testJumpCollectsAllOrdersDueBeforeTargetDay() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule(order(1, START + 3));
+        wheel.schedule(order(2, START + 100));
+        wheel.schedule(order(3, START + 5000));
+        wheel.schedule(order(4, START + 5001));
+
+        List<StandingOrder> due = new ArrayList<>();
+        wheel.advance(START + 5000, due);
+        assertEquals(3, due.size());
+        assertEquals(1, due.get(0).getOrderId());
+        assertEquals(3, due.get(2).getOrderId());
+        assertEquals(START + 5000, wheel.getCurrentDay());
+        assertEquals(1, wheel.size());
+
+        due.clear();
+        wheel.advance(START + 5000, due);
+        assertTrue(due.isEmpty());
+    }
+
+    @Test
+    public void testCancelledOrdersAreDroppedWhenTheirSlotIsPassed() {
+        TimingWheel wheel = new TimingWheel(START);
+        StandingOrder near = order(1, START + 5);
+        StandingOrder far = order(2, START + 1000);
+        wheel.schedule(near);
+        wheel.schedule(far);
+        wheel.schedule(order(3, START + 1000));
+        near.cancel();
+        far.cancel();
+
+        List<StandingOrder> due = new ArrayList<>();
+        wheel.advance(START + 1000, due);
+        assertEquals(1, due.size());
+        assertEquals(3, due.get(0).getOrderId());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduledOrderIsDueAgain() {
+        TimingWheel wheel = new TimingWheel(START);
+        StandingOrder order = order(1, START + 1);
+        wheel.schedule(order);
+        List<StandingOrder> due = new ArrayList<>();
+        int executions = 0;
+        for (long day = START + 1; day <= START + 70; day++) {
+            wheel.advance(day, due);
+            for (StandingOrder current : due) {
+                executions++;
+                current.setNextDay(current.getNextDay() + 7);
+                wheel.schedule(current);
+            }
+            due.clear();
+        }
+        assertEquals(10, executions);
+        assertEquals(START + 71, order.getNextDay());
+        assertEquals(1, wheel.size());
+    }
+
+    private static StandingOrder order(long orderId, long day) {
+        return new StandingOrder(orderId, 0, 1, 10, 0, day);
+    }
+}